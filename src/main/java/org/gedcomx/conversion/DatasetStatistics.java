@@ -0,0 +1,321 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Document;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.fileformat.GedcomxEntrySerializer;
+import org.gedcomx.source.SourceDescription;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * How many entities of each kind a converted dataset holds, and how large its entry is once uncompressed. The
+ * figures are written as main attributes of the manifest, which a reader gets before inflating any entry, so that it
+ * can presize its collections and buffers and plan how to split the work.
+ *
+ * The attributes describe the dataset entry of a file with a single dataset, which is what the converter writes.
+ * They are hints: a reader must not fail on a file without them, or on figures that turn out to be off.
+ */
+public class DatasetStatistics {
+
+  public static final String PERSONS = "X-Gedcomx-Persons";
+  public static final String RELATIONSHIPS = "X-Gedcomx-Relationships";
+  public static final String SOURCE_DESCRIPTIONS = "X-Gedcomx-SourceDescriptions";
+  public static final String AGENTS = "X-Gedcomx-Agents";
+  public static final String PLACES = "X-Gedcomx-Places";
+  public static final String DOCUMENTS = "X-Gedcomx-Documents";
+  public static final String FACTS = "X-Gedcomx-Facts";
+  public static final String UNCOMPRESSED_SIZE = "X-Gedcomx-Uncompressed-Size";
+
+  private long personCount = 0;
+  private long relationshipCount = 0;
+  private long sourceDescriptionCount = 0;
+  private long agentCount = 0;
+  private long placeCount = 0;
+  private long documentCount = 0;
+  private long factCount = 0;
+  private long uncompressedSize = -1;
+
+  /**
+   * Counts the entities of a dataset that is already in memory.
+   */
+  public static DatasetStatistics of(Gedcomx dataset) {
+    DatasetStatistics statistics = new DatasetStatistics();
+    if (dataset.getPersons() != null) {
+      for (Person person : dataset.getPersons()) {
+        statistics.add(person);
+      }
+    }
+    if (dataset.getRelationships() != null) {
+      for (Relationship relationship : dataset.getRelationships()) {
+        statistics.add(relationship);
+      }
+    }
+    statistics.sourceDescriptionCount = size(dataset.getSourceDescriptions());
+    statistics.agentCount = size(dataset.getAgents());
+    statistics.placeCount = size(dataset.getPlaces());
+    statistics.documentCount = size(dataset.getDocuments());
+    return statistics;
+  }
+
+  /**
+   * Reads the figures back from the main attributes of a manifest; those that are missing or malformed are -1.
+   */
+  public static DatasetStatistics fromAttributes(Map<String, String> attributes) {
+    DatasetStatistics statistics = new DatasetStatistics();
+    statistics.personCount = parse(attributes.get(PERSONS));
+    statistics.relationshipCount = parse(attributes.get(RELATIONSHIPS));
+    statistics.sourceDescriptionCount = parse(attributes.get(SOURCE_DESCRIPTIONS));
+    statistics.agentCount = parse(attributes.get(AGENTS));
+    statistics.placeCount = parse(attributes.get(PLACES));
+    statistics.documentCount = parse(attributes.get(DOCUMENTS));
+    statistics.factCount = parse(attributes.get(FACTS));
+    statistics.uncompressedSize = parse(attributes.get(UNCOMPRESSED_SIZE));
+    return statistics;
+  }
+
+  public void add(Person person) {
+    personCount++;
+    factCount += size(person.getFacts());
+  }
+
+  public void add(Relationship relationship) {
+    relationshipCount++;
+    factCount += size(relationship.getFacts());
+  }
+
+  public void add(SourceDescription description) {
+    sourceDescriptionCount++;
+  }
+
+  public void add(Agent organization) {
+    agentCount++;
+  }
+
+  public void add(PlaceDescription place) {
+    placeCount++;
+  }
+
+  public void add(Document document) {
+    documentCount++;
+  }
+
+  /**
+   * Wraps a conversion result so that the entities added to it are counted. A mapper may still add facts to an
+   * entity after handing it over, so persons and relationships are counted when their record is complete; the end of
+   * a record is passed on to the wrapped result if it wants to know.
+   */
+  public RecordAwareConversionResult counting(final GedcomxConversionResult result) {
+    return new RecordAwareConversionResult() {
+      private final List<Object> recordEntities = new ArrayList<Object>();
+
+      @Override
+      public Gedcomx getDataset() {
+        return result.getDataset();
+      }
+
+      @Override
+      public Agent getDatasetContributor() {
+        return result.getDatasetContributor();
+      }
+
+      @Override
+      public void setDatasetContributor(Agent person) throws IOException {
+        result.setDatasetContributor(person);
+      }
+
+      @Override
+      public void addPerson(Person person) throws IOException {
+        recordEntities.add(person);
+        result.addPerson(person);
+      }
+
+      @Override
+      public void addRelationship(Relationship relationship) throws IOException {
+        recordEntities.add(relationship);
+        result.addRelationship(relationship);
+      }
+
+      @Override
+      public void addSourceDescription(SourceDescription description) throws IOException {
+        add(description);
+        result.addSourceDescription(description);
+      }
+
+      @Override
+      public void addOrganization(Agent organization) throws IOException {
+        add(organization);
+        result.addOrganization(organization);
+      }
+
+      @Override
+      public void addPlaceDescription(PlaceDescription place) throws IOException {
+        add(place);
+        result.addPlaceDescription(place);
+      }
+
+      @Override
+      public void addDocument(Document document) throws IOException {
+        add(document);
+        result.addDocument(document);
+      }
+
+      @Override
+      public void addLanguage(String langCode) {
+        result.addLanguage(langCode);
+      }
+
+      @Override
+      public void endRecord() throws IOException {
+        for (Object entity : recordEntities) {
+          if (entity instanceof Person) {
+            add((Person) entity);
+          } else {
+            add((Relationship) entity);
+          }
+        }
+        recordEntities.clear();
+        if (result instanceof RecordAwareConversionResult) {
+          ((RecordAwareConversionResult) result).endRecord();
+        }
+      }
+    };
+  }
+
+  /**
+   * Wraps an entry serializer so that the bytes it writes for the dataset, before compression, are counted. Other
+   * resources, such as an {@link EntityIndex}, are not.
+   */
+  public GedcomxEntrySerializer measuring(final GedcomxEntrySerializer serializer) {
+    return new GedcomxEntrySerializer() {
+      @Override
+      public void serialize(Object resource, OutputStream out) throws IOException {
+        if (!(resource instanceof Gedcomx || resource instanceof StreamingDataset)) {
+          serializer.serialize(resource, out);
+          return;
+        }
+
+        final long[] count = {0};
+        serializer.serialize(resource, new FilterOutputStream(out) {
+          @Override
+          public void write(int b) throws IOException {
+            out.write(b);
+            count[0]++;
+          }
+
+          @Override
+          public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count[0] += len;
+          }
+
+          @Override
+          public void close() throws IOException {
+            // the entry is closed by the output stream of the file
+            flush();
+          }
+        });
+        uncompressedSize = count[0];
+      }
+
+      @Override
+      public boolean isKnownContentType(String contentType) {
+        return serializer.isKnownContentType(contentType);
+      }
+    };
+  }
+
+  /**
+   * @return the figures as manifest attributes; the uncompressed size only once the dataset has been measured
+   */
+  public Map<String, String> toAttributes() {
+    Map<String, String> attributes = new LinkedHashMap<String, String>();
+    attributes.put(PERSONS, String.valueOf(personCount));
+    attributes.put(RELATIONSHIPS, String.valueOf(relationshipCount));
+    attributes.put(SOURCE_DESCRIPTIONS, String.valueOf(sourceDescriptionCount));
+    attributes.put(AGENTS, String.valueOf(agentCount));
+    attributes.put(PLACES, String.valueOf(placeCount));
+    attributes.put(DOCUMENTS, String.valueOf(documentCount));
+    attributes.put(FACTS, String.valueOf(factCount));
+    if (uncompressedSize >= 0) {
+      attributes.put(UNCOMPRESSED_SIZE, String.valueOf(uncompressedSize));
+    }
+    return attributes;
+  }
+
+  public long getPersonCount() {
+    return personCount;
+  }
+
+  public long getRelationshipCount() {
+    return relationshipCount;
+  }
+
+  public long getSourceDescriptionCount() {
+    return sourceDescriptionCount;
+  }
+
+  public long getAgentCount() {
+    return agentCount;
+  }
+
+  public long getPlaceCount() {
+    return placeCount;
+  }
+
+  public long getDocumentCount() {
+    return documentCount;
+  }
+
+  public long getFactCount() {
+    return factCount;
+  }
+
+  /**
+   * @return the size of the uncompressed dataset entry in bytes, or -1 if it is not known
+   */
+  public long getUncompressedSize() {
+    return uncompressedSize;
+  }
+
+  private static long size(Collection<?> collection) {
+    return collection == null ? 0 : collection.size();
+  }
+
+  private static long parse(String value) {
+    if (value == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,356 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.common.Note;
+import org.gedcomx.common.ResourceReference;
+import org.gedcomx.conclusion.Document;
+import org.gedcomx.conclusion.Fact;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.source.SourceDescription;
+import org.gedcomx.source.SourceReference;
+import org.gedcomx.types.RelationshipType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.familysearch.platform.ordinances.Ordinance;
+
+
+/**
+ * A conversion result that drops duplicate couple and parent-child relationships, such as those produced by several
+ * FAM records for the same couple in a merged tree, before passing the rest on to another result.
+ *
+ * Relationships are keyed on a 64-bit hash of (type, person1, person2), with the two persons of a couple relationship
+ * taken in either order. Only the hash and the position of the first relationship with each key in the wrapped
+ * result's dataset are kept, so the wrapped result must hold its dataset in memory, as
+ * {@link DefaultGedcomxConversionResult} does. The facts, sources, notes and extension elements of a duplicate are
+ * merged into that first relationship at {@link #endRecord()}, once the mapper is done adding to the duplicate.
+ */
+public class DeduplicatingGedcomxConversionResult implements RecordAwareConversionResult {
+
+  private final GedcomxConversionResult delegate;
+  private final RelationshipTable relationships = new RelationshipTable();
+  private final List<Relationship> pendingDuplicates = new ArrayList<Relationship>();
+  private int[] pendingOrdinals = new int[16];
+  private int relationshipCount = 0;
+  private int duplicateCount = 0;
+
+  public DeduplicatingGedcomxConversionResult(GedcomxConversionResult delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public Gedcomx getDataset() {
+    mergeDuplicates();
+    return delegate.getDataset();
+  }
+
+  @Override
+  public Agent getDatasetContributor() {
+    return delegate.getDatasetContributor();
+  }
+
+  @Override
+  public void setDatasetContributor(Agent person) throws IOException {
+    delegate.setDatasetContributor(person);
+  }
+
+  @Override
+  public void addPerson(Person person) throws IOException {
+    delegate.addPerson(person);
+  }
+
+  @Override
+  public void addRelationship(Relationship relationship) throws IOException {
+    int original = relationships.putIfAbsent(relationship, relationshipCount);
+    if (original < 0) {
+      delegate.addRelationship(relationship);
+      relationshipCount++;
+    } else {
+      if (pendingDuplicates.size() == pendingOrdinals.length) {
+        pendingOrdinals = Arrays.copyOf(pendingOrdinals, pendingOrdinals.length * 2);
+      }
+      pendingOrdinals[pendingDuplicates.size()] = original;
+      pendingDuplicates.add(relationship);
+      duplicateCount++;
+    }
+  }
+
+  @Override
+  public void addSourceDescription(SourceDescription description) throws IOException {
+    delegate.addSourceDescription(description);
+  }
+
+  @Override
+  public void addOrganization(Agent organization) throws IOException {
+    delegate.addOrganization(organization);
+  }
+
+  @Override
+  public void addPlaceDescription(PlaceDescription place) throws IOException {
+    delegate.addPlaceDescription(place);
+  }
+
+  @Override
+  public void addDocument(Document document) throws IOException {
+    delegate.addDocument(document);
+  }
+
+  @Override
+  public void addLanguage(String langCode) {
+    delegate.addLanguage(langCode);
+  }
+
+  @Override
+  public void endRecord() throws IOException {
+    mergeDuplicates();
+    if (delegate instanceof RecordAwareConversionResult) {
+      ((RecordAwareConversionResult) delegate).endRecord();
+    }
+  }
+
+  /**
+   * @return the number of duplicate relationships that were merged into another relationship
+   */
+  public int getDuplicateCount() {
+    return duplicateCount;
+  }
+
+  private void mergeDuplicates() {
+    for (int i = 0; i < pendingDuplicates.size(); i++) {
+      merge(relationshipAt(pendingOrdinals[i]), pendingDuplicates.get(i));
+    }
+    pendingDuplicates.clear();
+  }
+
+  private Relationship relationshipAt(int ordinal) {
+    Gedcomx dataset = delegate.getDataset();
+    List<Relationship> added = dataset == null ? null : dataset.getRelationships();
+    if (added == null || added.size() != relationshipCount) {
+      throw new IllegalStateException("The wrapped result does not hold the relationships it was given in its dataset.");
+    }
+    return added.get(ordinal);
+  }
+
+  private static void merge(Relationship target, Relationship duplicate) {
+    if (duplicate.getFacts() != null) {
+      for (Fact fact : duplicate.getFacts()) {
+        if (!containsFact(target.getFacts(), fact)) {
+          target.addFact(fact);
+        }
+      }
+    }
+
+    if (duplicate.getSources() != null) {
+      if (target.getSources() == null) {
+        target.setSources(new ArrayList<SourceReference>());
+      }
+      for (SourceReference source : duplicate.getSources()) {
+        if (!containsSource(target.getSources(), source)) {
+          target.getSources().add(source);
+        }
+      }
+    }
+
+    if (duplicate.getNotes() != null) {
+      if (target.getNotes() == null) {
+        target.setNotes(new ArrayList<Note>());
+      }
+      for (Note note : duplicate.getNotes()) {
+        if (!containsNote(target.getNotes(), note)) {
+          target.getNotes().add(note);
+        }
+      }
+    }
+
+    if (duplicate.getExtensionElements() != null) {
+      for (Object extensionElement : duplicate.getExtensionElements()) {
+        if (!containsExtensionElement(target.getExtensionElements(), extensionElement)) {
+          target.addExtensionElement(extensionElement);
+        }
+      }
+    }
+  }
+
+  private static boolean containsFact(List<Fact> facts, Fact fact) {
+    if (facts == null) {
+      return false;
+    }
+    for (Fact candidate : facts) {
+      if (equal(candidate.getType(), fact.getType())
+        && equal(candidate.getValue(), fact.getValue())
+        && equal(candidate.getDate() == null ? null : candidate.getDate().getOriginal(), fact.getDate() == null ? null : fact.getDate().getOriginal())
+        && equal(candidate.getPlace() == null ? null : candidate.getPlace().getOriginal(), fact.getPlace() == null ? null : fact.getPlace().getOriginal())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean containsExtensionElement(List<Object> extensionElements, Object extensionElement) {
+    if (extensionElements == null) {
+      return false;
+    }
+    for (Object candidate : extensionElements) {
+      if (candidate instanceof Ordinance && extensionElement instanceof Ordinance) {
+        Ordinance candidateOrdinance = (Ordinance) candidate;
+        Ordinance ordinance = (Ordinance) extensionElement;
+        if (equal(candidateOrdinance.getType(), ordinance.getType())
+          && equal(candidateOrdinance.getCompleteDate() == null ? null : candidateOrdinance.getCompleteDate().getOriginal(), ordinance.getCompleteDate() == null ? null : ordinance.getCompleteDate().getOriginal())
+          && equal(candidateOrdinance.getTempleCode(), ordinance.getTempleCode())) {
+          return true;
+        }
+      } else if (candidate.equals(extensionElement)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean containsSource(List<SourceReference> sources, SourceReference source) {
+    for (SourceReference candidate : sources) {
+      if (equal(candidate.getDescriptionRef(), source.getDescriptionRef())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Notes linking to a document are the same if they link to the same document; others if they have the same text.
+   */
+  private static boolean containsNote(List<Note> notes, Note note) {
+    String document = documentOf(note);
+    for (Note candidate : notes) {
+      String candidateDocument = documentOf(candidate);
+      if (document != null || candidateDocument != null ? equal(candidateDocument, document) : equal(candidate.getText(), note.getText())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String documentOf(Note note) {
+    return note.getLinks() == null || note.getLinks().isEmpty() || note.getLinks().get(0).getHref() == null ? null : note.getLinks().get(0).getHref().toString();
+  }
+
+  private static boolean equal(Object o1, Object o2) {
+    return o1 == null ? o2 == null : o1.equals(o2);
+  }
+
+  private static String resourceOf(ResourceReference reference) {
+    return reference == null || reference.getResource() == null ? null : reference.getResource().toString();
+  }
+
+  /**
+   * An open-addressing hash table from the 64-bit (type, person1, person2) hash of a relationship to its position in
+   * the wrapped result's dataset. The relationship itself is looked up only to confirm a matching hash.
+   */
+  private final class RelationshipTable {
+
+    private long[] hashes = new long[1024];
+    private int[] ordinals = new int[1024];
+    private int size = 0;
+
+    /**
+     * @return the position of the relationship with the same key, or -1 if there is none and the given position was
+     * recorded for this one
+     */
+    int putIfAbsent(Relationship relationship, int ordinal) {
+      String type = relationship.getType() == null ? null : relationship.getType().toString();
+      String person1 = resourceOf(relationship.getPerson1());
+      String person2 = resourceOf(relationship.getPerson2());
+      if (RelationshipType.Couple == relationship.getKnownType() && person1 != null && person2 != null && person1.compareTo(person2) > 0) {
+        String swap = person1;
+        person1 = person2;
+        person2 = swap;
+      }
+
+      long hash = hash(hash(hash(0xcbf29ce484222325L, type), person1), person2);
+      if (hash == 0) {
+        hash = 1; // zero marks an empty slot
+      }
+
+      int mask = hashes.length - 1;
+      int slot = (int) (hash ^ (hash >>> 32)) & mask;
+      while (hashes[slot] != 0) {
+        if (hashes[slot] == hash && sameKey(relationshipAt(ordinals[slot]), type, person1, person2)) {
+          return ordinals[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+
+      hashes[slot] = hash;
+      ordinals[slot] = ordinal;
+      if (++size * 2 > hashes.length) {
+        grow();
+      }
+      return -1;
+    }
+
+    private boolean sameKey(Relationship relationship, String type, String person1, String person2) {
+      String existingType = relationship.getType() == null ? null : relationship.getType().toString();
+      String existing1 = resourceOf(relationship.getPerson1());
+      String existing2 = resourceOf(relationship.getPerson2());
+      if (!equal(existingType, type)) {
+        return false;
+      }
+      return (equal(existing1, person1) && equal(existing2, person2))
+        || (RelationshipType.Couple == relationship.getKnownType() && equal(existing1, person2) && equal(existing2, person1));
+    }
+
+    private void grow() {
+      long[] oldHashes = hashes;
+      int[] oldOrdinals = ordinals;
+      hashes = new long[oldHashes.length * 2];
+      ordinals = new int[oldOrdinals.length * 2];
+      int mask = hashes.length - 1;
+      for (int i = 0; i < oldHashes.length; i++) {
+        long hash = oldHashes[i];
+        if (hash != 0) {
+          int slot = (int) (hash ^ (hash >>> 32)) & mask;
+          while (hashes[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+          hashes[slot] = hash;
+          ordinals[slot] = oldOrdinals[i];
+        }
+      }
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters of the value, with a separator so that ("ab", "c") and ("a", "bc") differ.
+     */
+    private long hash(long hash, String value) {
+      if (value != null) {
+        for (int i = 0; i < value.length(); i++) {
+          hash ^= value.charAt(i);
+          hash *= 0x100000001b3L;
+        }
+      }
+      hash ^= 0xFFFF;
+      hash *= 0x100000001b3L;
+      return hash;
+    }
+  }
+}
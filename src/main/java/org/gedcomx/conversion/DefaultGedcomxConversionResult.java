@@ -17,7 +17,9 @@ package org.gedcomx.conversion;
 
 import org.gedcomx.Gedcomx;
 import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Document;
 import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
 import org.gedcomx.conclusion.Relationship;
 import org.gedcomx.source.SourceDescription;
 
@@ -81,6 +83,24 @@ public class DefaultGedcomxConversionResult implements GedcomxConversionResult {
     dataset.getAgents().add(organization);
   }
 
+  @Override
+  public void addPlaceDescription(PlaceDescription place) throws IOException {
+    if (dataset.getPlaces() == null) {
+      dataset.setPlaces(new ArrayList<PlaceDescription>());
+    }
+
+    dataset.getPlaces().add(place);
+  }
+
+  @Override
+  public void addDocument(Document document) throws IOException {
+    if (dataset.getDocuments() == null) {
+      dataset.setDocuments(new ArrayList<Document>());
+    }
+
+    dataset.getDocuments().add(document);
+  }
+
   @Override
   public void addLanguage(String langCode) {
     dataset.setLang(langCode);
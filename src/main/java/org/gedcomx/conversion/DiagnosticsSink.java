@@ -0,0 +1,158 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Collects the diagnostics of one conversion in its own file without ever blocking the threads that report them.
+ * Messages go into a bounded lock-free ring buffer that a background thread drains to the file. When the buffer is
+ * full, new messages are dropped and counted; the count is written to the file at the point the messages were lost.
+ */
+public class DiagnosticsSink implements Closeable {
+
+  public static final int DEFAULT_CAPACITY = 8192;
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final AtomicReferenceArray<String> slots;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private volatile long head = 0;
+  private final AtomicLong dropped = new AtomicLong();
+
+  private final Writer writer;
+  private final Thread drainer;
+  private volatile boolean closed = false;
+  private IOException writeFailure;
+
+  /**
+   * @param logFile the file to write the diagnostics to
+   * @param capacity how many messages the buffer holds; rounded up to a power of two
+   */
+  public DiagnosticsSink(File logFile, int capacity) throws IOException {
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    this.slots = new AtomicReferenceArray<String>(size);
+    this.mask = size - 1;
+    this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile), StandardCharsets.UTF_8));
+    this.drainer = new Thread(this::drain, "diagnostics-" + logFile.getName());
+    this.drainer.setDaemon(true);
+    this.drainer.start();
+  }
+
+  /**
+   * Queues a message for the file. Never blocks.
+   * @param message the message, without a line separator
+   * @return false if the buffer was full (or the sink closed) and the message was dropped
+   */
+  public boolean offer(String message) {
+    while (true) {
+      long claimed = tail.get();
+      if (closed || claimed - head >= slots.length()) {
+        dropped.incrementAndGet();
+        return false;
+      }
+      if (tail.compareAndSet(claimed, claimed + 1)) {
+        slots.lazySet((int) claimed & mask, message);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @return how many messages have been dropped so far
+   */
+  public long getDroppedCount() {
+    return dropped.get();
+  }
+
+  /**
+   * Writes the messages still in the buffer and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    LockSupport.unpark(drainer);
+    try {
+      drainer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing the diagnostics.", e);
+    }
+    if (writeFailure != null) {
+      throw writeFailure;
+    }
+  }
+
+  private void drain() {
+    long reportedDrops = 0;
+    try {
+      while (true) {
+        // read before draining, so that nothing offered before the sink was closed is left behind
+        boolean closing = closed;
+        boolean drained = false;
+
+        String message;
+        while ((message = slots.get((int) head & mask)) != null) {
+          slots.set((int) head & mask, null);
+          head = head + 1;
+          writer.write(message);
+          writer.write('\n');
+          drained = true;
+        }
+
+        long drops = dropped.get();
+        if (drops > reportedDrops) {
+          writer.write("[" + (drops - reportedDrops) + " diagnostic message(s) dropped]\n");
+          reportedDrops = drops;
+        }
+
+        if (closing && head == tail.get()) {
+          break;
+        }
+        if (!drained) {
+          writer.flush();
+          LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+      }
+    } catch (IOException e) {
+      writeFailure = e;
+    } finally {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        if (writeFailure == null) {
+          writeFailure = e;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+
+/**
+ * Where the persons and relationships of a GEDCOM X file are: for each entity id, the entry it was written to and
+ * the byte range of its JSON object in the uncompressed entry. The index is itself stored as an entry, so that one
+ * entity can be read without parsing the whole dataset.
+ *
+ * The entry holds a small header (its size, the number of entities and the entry names) followed by one fixed-width
+ * record per entity (a 64-bit hash of the id, the offset, the length and the entry name), sorted by the hash so that
+ * a reader can binary-search it in place. While the dataset is written, the records are sorted in runs of a fixed
+ * size and spilled to a temporary file, and the runs are merged into the entry, so the index holds only one run in
+ * memory. Close the index to delete the temporary file.
+ *
+ * @see IndexedGedcomxReader
+ */
+public class EntityIndex implements Closeable {
+
+  public static final String CONTENT_TYPE = "application/x-gedcomx-entity-index";
+
+  static final int MAGIC = 0x47584958;
+  static final int RECORD_SIZE = 24;
+
+  private static final int DEFAULT_RUN_SIZE = 65536;
+
+  /**
+   * The location of an entity.
+   */
+  public static final class Location {
+    private final String entryName;
+    private final long offset;
+    private final long length;
+
+    Location(String entryName, long offset, long length) {
+      this.entryName = entryName;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    public String getEntryName() {
+      return entryName;
+    }
+
+    /**
+     * @return the offset of the entity in the uncompressed entry; a separating comma may precede the object
+     */
+    public long getOffset() {
+      return offset;
+    }
+
+    public long getLength() {
+      return length;
+    }
+  }
+
+  private final int runSize;
+  private final List<String> entryNames = new ArrayList<String>();
+  private final Map<String, Integer> entryNameIndexes = new HashMap<String, Integer>();
+  private final long[] hashes;
+  private final long[] offsets;
+  private final int[] lengths;
+  private final int[] entryNameIndexesOfRun;
+  private int runLength = 0;
+  private long size = 0;
+  private File spillFile;
+  private FileChannel spillChannel;
+  private final List<Long> runStarts = new ArrayList<Long>();
+
+  public EntityIndex() {
+    this(DEFAULT_RUN_SIZE);
+  }
+
+  /**
+   * @param runSize the number of entities sorted in memory before they are spilled
+   */
+  EntityIndex(int runSize) {
+    this.runSize = runSize;
+    this.hashes = new long[runSize];
+    this.offsets = new long[runSize];
+    this.lengths = new int[runSize];
+    this.entryNameIndexesOfRun = new int[runSize];
+  }
+
+  public void add(String id, String entryName, long offset, long length) throws IOException {
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("The entity " + id + " is too large to index.");
+    }
+    Integer entryNameIndex = entryNameIndexes.get(entryName);
+    if (entryNameIndex == null) {
+      entryNameIndex = entryNames.size();
+      entryNames.add(entryName);
+      entryNameIndexes.put(entryName, entryNameIndex);
+    }
+
+    if (runLength == runSize) {
+      spillRun();
+    }
+    hashes[runLength] = hash(id);
+    offsets[runLength] = offset;
+    lengths[runLength] = (int) length;
+    entryNameIndexesOfRun[runLength] = entryNameIndex;
+    runLength++;
+    size++;
+  }
+
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Writes the index, sorted by the hashes of the ids. Can be called only once; the stream is not closed.
+   */
+  public void write(OutputStream out) throws IOException {
+    spillRun();
+
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 65536));
+    List<byte[]> names = new ArrayList<byte[]>();
+    int headerSize = 4 + 4 + 8 + 4;
+    for (String entryName : entryNames) {
+      byte[] name = entryName.getBytes(StandardCharsets.UTF_8);
+      names.add(name);
+      headerSize += 2 + name.length;
+    }
+    data.writeInt(MAGIC);
+    data.writeInt(headerSize);
+    data.writeLong(size);
+    data.writeInt(names.size());
+    for (byte[] name : names) {
+      data.writeShort(name.length);
+      data.write(name);
+    }
+
+    PriorityQueue<RunCursor> cursors = new PriorityQueue<RunCursor>();
+    for (int i = 0; i < runStarts.size(); i++) {
+      long end = i + 1 < runStarts.size() ? runStarts.get(i + 1) : spillChannel.size();
+      RunCursor cursor = new RunCursor(runStarts.get(i), end);
+      if (cursor.next()) {
+        cursors.add(cursor);
+      }
+    }
+    while (!cursors.isEmpty()) {
+      RunCursor cursor = cursors.poll();
+      data.write(cursor.record, 0, RECORD_SIZE);
+      if (cursor.next()) {
+        cursors.add(cursor);
+      }
+    }
+    data.flush();
+  }
+
+  /**
+   * Deletes the spilled runs.
+   */
+  @Override
+  public void close() throws IOException {
+    if (spillChannel != null) {
+      try {
+        spillChannel.close();
+      } finally {
+        spillFile.delete();
+        spillChannel = null;
+      }
+    }
+  }
+
+  /**
+   * 64-bit FNV-1a over the characters of the id.
+   */
+  static long hash(String id) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < id.length(); i++) {
+      hash ^= id.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  /**
+   * Sorts the records held in memory and appends them to the spill file as a run.
+   */
+  private void spillRun() throws IOException {
+    if (runLength == 0) {
+      return;
+    }
+    if (spillChannel == null) {
+      spillFile = File.createTempFile("entities", ".idx");
+      spillChannel = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    Integer[] order = new Integer[runLength];
+    for (int i = 0; i < runLength; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+
+    long position = spillChannel.size();
+    runStarts.add(position);
+    ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+    for (Integer i : order) {
+      buffer.putLong(hashes[i]).putLong(offsets[i]).putInt(lengths[i]).putInt(entryNameIndexesOfRun[i]);
+      if (!buffer.hasRemaining()) {
+        position += writeFully(buffer, position);
+      }
+    }
+    writeFully(buffer, position);
+    runLength = 0;
+  }
+
+  private int writeFully(ByteBuffer buffer, long position) throws IOException {
+    buffer.flip();
+    int length = buffer.remaining();
+    while (buffer.hasRemaining()) {
+      position += spillChannel.write(buffer, position);
+    }
+    buffer.clear();
+    return length;
+  }
+
+  /**
+   * Reads the records of one spilled run in order.
+   */
+  private class RunCursor implements Comparable<RunCursor> {
+    private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 256);
+    private final byte[] record = new byte[RECORD_SIZE];
+    private long position;
+    private final long end;
+    private long hash;
+
+    RunCursor(long start, long end) {
+      this.position = start;
+      this.end = end;
+      buffer.limit(0);
+    }
+
+    /**
+     * @return whether there was another record
+     */
+    boolean next() throws IOException {
+      if (!buffer.hasRemaining()) {
+        if (position == end) {
+          return false;
+        }
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), end - position));
+        while (buffer.hasRemaining()) {
+          if (spillChannel.read(buffer, position + buffer.position()) < 0) {
+            throw new IOException("The spilled index ended early.");
+          }
+        }
+        position += buffer.limit();
+        buffer.flip();
+      }
+      buffer.get(record);
+      hash = ByteBuffer.wrap(record).getLong(0);
+      return true;
+    }
+
+    @Override
+    public int compareTo(RunCursor other) {
+      return Long.compare(hash, other.hash);
+    }
+  }
+}
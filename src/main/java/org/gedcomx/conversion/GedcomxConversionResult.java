@@ -17,11 +17,14 @@ package org.gedcomx.conversion;
 
 import org.gedcomx.Gedcomx;
 import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Document;
 import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
 import org.gedcomx.conclusion.Relationship;
 import org.gedcomx.source.SourceDescription;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
 
 public interface GedcomxConversionResult {
@@ -40,6 +43,40 @@ public interface GedcomxConversionResult {
 
   void addOrganization(Agent organization) throws IOException;
 
+  /**
+   * Adds a place description. Only called when the mapping config describes each distinct place once; by default the
+   * description is added to the dataset, so results written before places were described need not implement it.
+   * @param place the place description
+   * @throws IllegalStateException if the result has no dataset to add the description to
+   */
+  default void addPlaceDescription(PlaceDescription place) throws IOException {
+    Gedcomx dataset = getDataset();
+    if (dataset == null) {
+      throw new IllegalStateException(getClass().getName() + " has no dataset to add place descriptions to; disable the place descriptions in the mapping config or implement addPlaceDescription");
+    }
+    if (dataset.getPlaces() == null) {
+      dataset.setPlaces(new ArrayList<PlaceDescription>());
+    }
+    dataset.getPlaces().add(place);
+  }
+
+  /**
+   * Adds a document holding the text of a note. Only called when the mapping config maps notes; by default the
+   * document is added to the dataset, so results written before notes were mapped need not implement it.
+   * @param document the document
+   * @throws IllegalStateException if the result has no dataset to add the document to
+   */
+  default void addDocument(Document document) throws IOException {
+    Gedcomx dataset = getDataset();
+    if (dataset == null) {
+      throw new IllegalStateException(getClass().getName() + " has no dataset to add documents to; disable the notes in the mapping config or implement addDocument");
+    }
+    if (dataset.getDocuments() == null) {
+      dataset.setDocuments(new ArrayList<Document>());
+    }
+    dataset.getDocuments().add(document);
+  }
+
   void addLanguage(String langCode);
 
 }
@@ -0,0 +1,223 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.rt.json.GedcomJacksonModule;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+
+/**
+ * Reads single persons and relationships out of a GEDCOM X file that has an {@link EntityIndex} entry. Only the
+ * header of the index is read up front; a lookup binary-searches the records of the index entry, then skips to the
+ * entity in its entry and parses just that entity. Skipping is immediate in a stored entry and costs the inflation,
+ * but no parsing, of the preceding bytes in a compressed one; see
+ * {@link RawEntryCopier#copy(File, java.io.OutputStream, java.util.Set)} for storing the index and dataset entries.
+ */
+public class IndexedGedcomxReader implements Closeable {
+
+  private final JarFile jarFile;
+  private final JarEntry indexEntry;
+  private final int recordsOffset;
+  private final long size;
+  private final String[] entryNames;
+  private final ObjectMapper objectMapper;
+
+  /**
+   * @param gedxFile the GEDCOM X file
+   * @param indexEntryName the name of the index entry, e.g. <code>tree.json.idx</code>
+   * @param extensionClasses extension classes that appear in the entities, e.g. ordinances
+   */
+  public IndexedGedcomxReader(File gedxFile, String indexEntryName, Class<?>... extensionClasses) throws IOException {
+    this.jarFile = new JarFile(gedxFile);
+    try {
+      this.indexEntry = jarFile.getJarEntry(indexEntryName);
+      if (indexEntry == null) {
+        throw new FileNotFoundException("No index entry " + indexEntryName + " in " + gedxFile + ".");
+      }
+      try (DataInputStream in = new DataInputStream(jarFile.getInputStream(indexEntry))) {
+        if (in.readInt() != EntityIndex.MAGIC) {
+          throw new IOException(indexEntryName + " in " + gedxFile + " is not an entity index.");
+        }
+        this.recordsOffset = in.readInt();
+        this.size = in.readLong();
+        this.entryNames = new String[in.readInt()];
+        for (int i = 0; i < entryNames.length; i++) {
+          byte[] name = new byte[in.readUnsignedShort()];
+          in.readFully(name);
+          entryNames[i] = new String(name, StandardCharsets.UTF_8);
+        }
+      }
+    } catch (IOException e) {
+      jarFile.close();
+      throw e;
+    }
+    this.objectMapper = GedcomJacksonModule.createObjectMapper(extensionClasses);
+  }
+
+  /**
+   * @return the number of indexed entities
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * @return the location of the entity, or null if it is not in the index
+   */
+  public EntityIndex.Location getLocation(String id) throws IOException {
+    for (EntityIndex.Location location : findCandidates(id)) {
+      if (readEntity(id, location) != null) {
+        return location;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the person, or null if it is not in the index
+   */
+  public Person readPerson(String id) throws IOException {
+    return read(id, Person.class);
+  }
+
+  /**
+   * @return the relationship, or null if it is not in the index
+   */
+  public Relationship readRelationship(String id) throws IOException {
+    return read(id, Relationship.class);
+  }
+
+  /**
+   * @return the entity, or null if it is not in the index
+   */
+  public <T> T read(String id, Class<T> type) throws IOException {
+    for (EntityIndex.Location location : findCandidates(id)) {
+      JsonNode entity = readEntity(id, location);
+      if (entity != null) {
+        return objectMapper.treeToValue(entity, type);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    jarFile.close();
+  }
+
+  /**
+   * Binary-searches the index for the records with the hash of the id; different ids can share a hash.
+   */
+  private List<EntityIndex.Location> findCandidates(String id) throws IOException {
+    long hash = EntityIndex.hash(id);
+    long low = 0;
+    long high = size;
+    while (low < high) {
+      long middle = (low + high) >>> 1;
+      if (readRecord(middle).getLong(0) < hash) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    List<EntityIndex.Location> candidates = new ArrayList<EntityIndex.Location>(1);
+    for (long i = low; i < size; i++) {
+      ByteBuffer record = readRecord(i);
+      if (record.getLong(0) != hash) {
+        break;
+      }
+      candidates.add(new EntityIndex.Location(entryNames[record.getInt(20)], record.getLong(8), record.getInt(16)));
+    }
+    return candidates;
+  }
+
+  private ByteBuffer readRecord(long ordinal) throws IOException {
+    byte[] record = new byte[EntityIndex.RECORD_SIZE];
+    try (InputStream in = jarFile.getInputStream(indexEntry)) {
+      skipFully(in, recordsOffset + ordinal * EntityIndex.RECORD_SIZE);
+      readFully(in, record);
+    }
+    return ByteBuffer.wrap(record);
+  }
+
+  /**
+   * @return the entity at the location, or null if it has another id
+   */
+  private JsonNode readEntity(String id, EntityIndex.Location location) throws IOException {
+    JarEntry entry = jarFile.getJarEntry(location.getEntryName());
+    if (entry == null) {
+      throw new FileNotFoundException("No entry " + location.getEntryName() + " for " + id + ".");
+    }
+
+    byte[] bytes = new byte[(int) location.getLength()];
+    try (InputStream in = jarFile.getInputStream(entry)) {
+      skipFully(in, location.getOffset());
+      readFully(in, bytes);
+    }
+
+    int start = 0;
+    while (start < bytes.length && (bytes[start] == ',' || Character.isWhitespace(bytes[start]))) {
+      start++;
+    }
+    JsonNode entity = objectMapper.readTree(new ByteArrayInputStream(bytes, start, bytes.length - start));
+    JsonNode entityId = entity.get("id");
+    return entityId != null && id.equals(entityId.asText()) ? entity : null;
+  }
+
+  private static void skipFully(InputStream in, long count) throws IOException {
+    long remaining = count;
+    while (remaining > 0) {
+      long skipped = in.skip(remaining);
+      if (skipped <= 0) {
+        if (in.read() < 0) {
+          throw new EOFException("The index points past the end of its entry.");
+        }
+        skipped = 1;
+      }
+      remaining -= skipped;
+    }
+  }
+
+  private static void readFully(InputStream in, byte[] bytes) throws IOException {
+    int offset = 0;
+    while (offset < bytes.length) {
+      int count = in.read(bytes, offset, bytes.length - offset);
+      if (count < 0) {
+        throw new EOFException("The index points past the end of its entry.");
+      }
+      offset += count;
+    }
+  }
+}
@@ -0,0 +1,505 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.common.Qualifier;
+import org.gedcomx.common.ResourceReference;
+import org.gedcomx.common.URI;
+import org.gedcomx.conclusion.Conclusion;
+import org.gedcomx.conclusion.Date;
+import org.gedcomx.conclusion.Fact;
+import org.gedcomx.conclusion.Gender;
+import org.gedcomx.conclusion.Name;
+import org.gedcomx.conclusion.NameForm;
+import org.gedcomx.conclusion.NamePart;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceReference;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.conclusion.Subject;
+import org.gedcomx.fileformat.GedcomxEntrySerializer;
+import org.gedcomx.fileformat.JacksonJsonSerialization;
+import org.gedcomx.rt.json.GedcomJacksonModule;
+import org.gedcomx.source.SourceReference;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A JSON entry serializer for the datasets this converter produces. Persons and relationships, which make up most of
+ * the output, are written field by field with precomputed field names instead of through the annotated model, and
+ * their empty collections are left out. Type URIs, which repeat throughout a dataset, are written from cached,
+ * pre-encoded tokens.
+ *
+ * Source descriptions, agents, place descriptions, documents, notes and attributions are written by the regular
+ * GEDCOM X Jackson mapping, and so is any person or relationship part that carries data the converter does not
+ * produce (extension elements such as ordinances, identifiers, links, fields), so the output stays schema-equivalent
+ * to that of {@link JacksonJsonSerialization}. Resources other than datasets are handed to a
+ * {@link JacksonJsonSerialization}.
+ */
+public class LeanJsonSerialization implements GedcomxEntrySerializer {
+
+  /**
+   * The most type URIs that are kept as pre-encoded tokens; past it, new type URIs are written as plain strings.
+   */
+  private static final int MAX_URI_TOKENS = 1024;
+
+  private static final SerializedString AGENTS = new SerializedString("agents");
+  private static final SerializedString ATTRIBUTION = new SerializedString("attribution");
+  private static final SerializedString CONFIDENCE = new SerializedString("confidence");
+  private static final SerializedString DATE = new SerializedString("date");
+  private static final SerializedString DESCRIPTION = new SerializedString("description");
+  private static final SerializedString DESCRIPTION_ID = new SerializedString("descriptionId");
+  private static final SerializedString DOCUMENTS = new SerializedString("documents");
+  private static final SerializedString FACTS = new SerializedString("facts");
+  private static final SerializedString FORMAL = new SerializedString("formal");
+  private static final SerializedString FULL_TEXT = new SerializedString("fullText");
+  private static final SerializedString GENDER = new SerializedString("gender");
+  private static final SerializedString ID = new SerializedString("id");
+  private static final SerializedString LANG = new SerializedString("lang");
+  private static final SerializedString NAME = new SerializedString("name");
+  private static final SerializedString NAME_FORMS = new SerializedString("nameForms");
+  private static final SerializedString NAMES = new SerializedString("names");
+  private static final SerializedString NOTES = new SerializedString("notes");
+  private static final SerializedString ORIGINAL = new SerializedString("original");
+  private static final SerializedString PARTS = new SerializedString("parts");
+  private static final SerializedString PERSON1 = new SerializedString("person1");
+  private static final SerializedString PERSON2 = new SerializedString("person2");
+  private static final SerializedString PERSONS = new SerializedString("persons");
+  private static final SerializedString PLACE = new SerializedString("place");
+  private static final SerializedString PLACES = new SerializedString("places");
+  private static final SerializedString PREFERRED = new SerializedString("preferred");
+  private static final SerializedString QUALIFIERS = new SerializedString("qualifiers");
+  private static final SerializedString RELATIONSHIPS = new SerializedString("relationships");
+  private static final SerializedString RESOURCE = new SerializedString("resource");
+  private static final SerializedString RESOURCE_ID = new SerializedString("resourceId");
+  private static final SerializedString SOURCE_DESCRIPTIONS = new SerializedString("sourceDescriptions");
+  private static final SerializedString SOURCES = new SerializedString("sources");
+  private static final SerializedString TYPE = new SerializedString("type");
+  private static final SerializedString VALUE = new SerializedString("value");
+
+  private final GedcomxEntrySerializer delegate;
+  private final ObjectWriter fallbackWriter;
+  private final JsonFactory jsonFactory;
+  private final ConcurrentHashMap<String, SerializedString> uriTokens = new ConcurrentHashMap<String, SerializedString>();
+
+  /**
+   * @param extensionClasses extension classes that appear in the entities, e.g. ordinances
+   */
+  public LeanJsonSerialization(Class<?>... extensionClasses) {
+    ObjectMapper objectMapper = GedcomJacksonModule.createObjectMapper(extensionClasses);
+    this.delegate = new JacksonJsonSerialization(extensionClasses);
+    this.jsonFactory = objectMapper.getFactory();
+    this.fallbackWriter = objectMapper.writer()
+      .without(SerializationFeature.INDENT_OUTPUT)
+      .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+  }
+
+  @Override
+  public void serialize(Object resource, OutputStream out) throws IOException {
+    if (!(resource instanceof Gedcomx)) {
+      delegate.serialize(resource, out);
+      return;
+    }
+
+    JsonGenerator generator = createGenerator(out);
+    writeDataset(generator, (Gedcomx) resource);
+    generator.flush();
+  }
+
+  @Override
+  public boolean isKnownContentType(String contentType) {
+    return delegate.isKnownContentType(contentType);
+  }
+
+  /**
+   * @return a UTF-8 generator for the stream, which is not closed when the generator is
+   */
+  public JsonGenerator createGenerator(OutputStream out) throws IOException {
+    JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8);
+    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    return generator;
+  }
+
+  /**
+   * Writes a whole dataset as a GEDCOM X JSON document.
+   */
+  public void writeDataset(JsonGenerator generator, Gedcomx dataset) throws IOException {
+    if (!isLean(dataset)) {
+      fallbackWriter.writeValue(generator, dataset);
+      return;
+    }
+
+    generator.writeStartObject();
+    writeString(generator, LANG, dataset.getLang());
+    writeFallback(generator, ATTRIBUTION, dataset.getAttribution());
+    if (!isEmpty(dataset.getPersons())) {
+      generator.writeFieldName(PERSONS);
+      generator.writeStartArray();
+      for (Person person : dataset.getPersons()) {
+        writePerson(generator, person);
+      }
+      generator.writeEndArray();
+    }
+    if (!isEmpty(dataset.getRelationships())) {
+      generator.writeFieldName(RELATIONSHIPS);
+      generator.writeStartArray();
+      for (Relationship relationship : dataset.getRelationships()) {
+        writeRelationship(generator, relationship);
+      }
+      generator.writeEndArray();
+    }
+    writeFallbacks(generator, SOURCE_DESCRIPTIONS, dataset.getSourceDescriptions());
+    writeFallbacks(generator, AGENTS, dataset.getAgents());
+    writeFallbacks(generator, PLACES, dataset.getPlaces());
+    writeFallbacks(generator, DOCUMENTS, dataset.getDocuments());
+    generator.writeEndObject();
+  }
+
+  /**
+   * Writes a person as a JSON object.
+   */
+  public void writePerson(JsonGenerator generator, Person person) throws IOException {
+    if (!isLeanSubject(person) || !isEmpty(person.getFields()) || person.getDisplay() != null
+      || person.getPrivate() != null || person.getLiving() != null) {
+      fallbackWriter.writeValue(generator, person);
+      return;
+    }
+
+    generator.writeStartObject();
+    writeConclusionFields(generator, person);
+    if (person.getGender() != null) {
+      generator.writeFieldName(GENDER);
+      writeGender(generator, person.getGender());
+    }
+    if (!isEmpty(person.getNames())) {
+      generator.writeFieldName(NAMES);
+      generator.writeStartArray();
+      for (Name name : person.getNames()) {
+        writeName(generator, name);
+      }
+      generator.writeEndArray();
+    }
+    writeFacts(generator, person.getFacts());
+    generator.writeEndObject();
+  }
+
+  /**
+   * Writes a relationship as a JSON object.
+   */
+  public void writeRelationship(JsonGenerator generator, Relationship relationship) throws IOException {
+    if (!isLeanSubject(relationship) || !isEmpty(relationship.getFields())) {
+      fallbackWriter.writeValue(generator, relationship);
+      return;
+    }
+
+    generator.writeStartObject();
+    writeConclusionFields(generator, relationship);
+    writeType(generator, relationship.getType());
+    writeResourceReference(generator, PERSON1, relationship.getPerson1());
+    writeResourceReference(generator, PERSON2, relationship.getPerson2());
+    writeFacts(generator, relationship.getFacts());
+    generator.writeEndObject();
+  }
+
+  /**
+   * Writes any other entity, e.g. a source description or an agent, through the GEDCOM X Jackson mapping.
+   */
+  public void writeEntity(JsonGenerator generator, Object entity) throws IOException {
+    fallbackWriter.writeValue(generator, entity);
+  }
+
+  private void writeConclusionFields(JsonGenerator generator, Conclusion conclusion) throws IOException {
+    writeString(generator, ID, conclusion.getId());
+    writeString(generator, LANG, conclusion.getLang());
+    writeUri(generator, CONFIDENCE, conclusion.getConfidence());
+    writeFallback(generator, ATTRIBUTION, conclusion.getAttribution());
+    if (!isEmpty(conclusion.getSources())) {
+      generator.writeFieldName(SOURCES);
+      generator.writeStartArray();
+      for (SourceReference source : conclusion.getSources()) {
+        writeSourceReference(generator, source);
+      }
+      generator.writeEndArray();
+    }
+    writeFallbacks(generator, NOTES, conclusion.getNotes());
+  }
+
+  private void writeGender(JsonGenerator generator, Gender gender) throws IOException {
+    if (!isLeanConclusion(gender) || !isEmpty(gender.getFields())) {
+      fallbackWriter.writeValue(generator, gender);
+      return;
+    }
+
+    generator.writeStartObject();
+    writeConclusionFields(generator, gender);
+    writeType(generator, gender.getType());
+    generator.writeEndObject();
+  }
+
+  private void writeName(JsonGenerator generator, Name name) throws IOException {
+    if (!isLeanConclusion(name)) {
+      fallbackWriter.writeValue(generator, name);
+      return;
+    }
+
+    generator.writeStartObject();
+    writeConclusionFields(generator, name);
+    writeType(generator, name.getType());
+    if (name.getDate() != null) {
+      generator.writeFieldName(DATE);
+      writeDate(generator, name.getDate());
+    }
+    if (!isEmpty(name.getNameForms())) {
+      generator.writeFieldName(NAME_FORMS);
+      generator.writeStartArray();
+      for (NameForm nameForm : name.getNameForms()) {
+        writeNameForm(generator, nameForm);
+      }
+      generator.writeEndArray();
+    }
+    if (name.getPreferred() != null) {
+      generator.writeFieldName(PREFERRED);
+      generator.writeBoolean(name.getPreferred());
+    }
+    generator.writeEndObject();
+  }
+
+  private void writeNameForm(JsonGenerator generator, NameForm nameForm) throws IOException {
+    if (!isEmpty(nameForm.getExtensionElements()) || !isEmpty(nameForm.getFields())) {
+      fallbackWriter.writeValue(generator, nameForm);
+      return;
+    }
+
+    generator.writeStartObject();
+    writeString(generator, ID, nameForm.getId());
+    writeString(generator, LANG, nameForm.getLang());
+    writeString(generator, FULL_TEXT, nameForm.getFullText());
+    if (!isEmpty(nameForm.getParts())) {
+      generator.writeFieldName(PARTS);
+      generator.writeStartArray();
+      for (NamePart part : nameForm.getParts()) {
+        writeNamePart(generator, part);
+      }
+      generator.writeEndArray();
+    }
+    generator.writeEndObject();
+  }
+
+  private void writeNamePart(JsonGenerator generator, NamePart part) throws IOException {
+    if (!isEmpty(part.getExtensionElements()) || !isEmpty(part.getFields())) {
+      fallbackWriter.writeValue(generator, part);
+      return;
+    }
+
+    generator.writeStartObject();
+    writeString(generator, ID, part.getId());
+    writeType(generator, part.getType());
+    writeString(generator, VALUE, part.getValue());
+    writeQualifiers(generator, part.getQualifiers());
+    generator.writeEndObject();
+  }
+
+  private void writeFacts(JsonGenerator generator, List<Fact> facts) throws IOException {
+    if (isEmpty(facts)) {
+      return;
+    }
+
+    generator.writeFieldName(FACTS);
+    generator.writeStartArray();
+    for (Fact fact : facts) {
+      if (!isLeanConclusion(fact) || !isEmpty(fact.getFields()) || fact.getPrimary() != null) {
+        fallbackWriter.writeValue(generator, fact);
+        continue;
+      }
+
+      generator.writeStartObject();
+      writeConclusionFields(generator, fact);
+      writeType(generator, fact.getType());
+      if (fact.getDate() != null) {
+        generator.writeFieldName(DATE);
+        writeDate(generator, fact.getDate());
+      }
+      if (fact.getPlace() != null) {
+        generator.writeFieldName(PLACE);
+        writePlaceReference(generator, fact.getPlace());
+      }
+      writeString(generator, VALUE, fact.getValue());
+      writeQualifiers(generator, fact.getQualifiers());
+      generator.writeEndObject();
+    }
+    generator.writeEndArray();
+  }
+
+  private void writeDate(JsonGenerator generator, Date date) throws IOException {
+    if (!isEmpty(date.getExtensionElements()) || !isEmpty(date.getNormalizedExtensions()) || !isEmpty(date.getFields())) {
+      fallbackWriter.writeValue(generator, date);
+      return;
+    }
+
+    generator.writeStartObject();
+    writeString(generator, ID, date.getId());
+    writeString(generator, ORIGINAL, date.getOriginal());
+    writeString(generator, FORMAL, date.getFormal());
+    generator.writeEndObject();
+  }
+
+  private void writePlaceReference(JsonGenerator generator, PlaceReference place) throws IOException {
+    if (!isEmpty(place.getExtensionElements()) || !isEmpty(place.getNormalizedExtensions()) || !isEmpty(place.getFields())) {
+      fallbackWriter.writeValue(generator, place);
+      return;
+    }
+
+    generator.writeStartObject();
+    writeString(generator, ID, place.getId());
+    writeString(generator, ORIGINAL, place.getOriginal());
+    writeUri(generator, DESCRIPTION, place.getDescriptionRef());
+    generator.writeEndObject();
+  }
+
+  private void writeSourceReference(JsonGenerator generator, SourceReference source) throws IOException {
+    if (!isEmpty(source.getExtensionElements()) || !isEmpty(source.getLinks())) {
+      fallbackWriter.writeValue(generator, source);
+      return;
+    }
+
+    generator.writeStartObject();
+    writeString(generator, ID, source.getId());
+    writeUri(generator, DESCRIPTION, source.getDescriptionRef());
+    writeString(generator, DESCRIPTION_ID, source.getDescriptionId());
+    writeFallback(generator, ATTRIBUTION, source.getAttribution());
+    writeQualifiers(generator, source.getQualifiers());
+    generator.writeEndObject();
+  }
+
+  private void writeResourceReference(JsonGenerator generator, SerializedString fieldName, ResourceReference reference) throws IOException {
+    if (reference == null) {
+      return;
+    }
+
+    generator.writeFieldName(fieldName);
+    generator.writeStartObject();
+    writeUri(generator, RESOURCE, reference.getResource());
+    writeString(generator, RESOURCE_ID, reference.getResourceId());
+    generator.writeEndObject();
+  }
+
+  private void writeQualifiers(JsonGenerator generator, List<Qualifier> qualifiers) throws IOException {
+    if (isEmpty(qualifiers)) {
+      return;
+    }
+
+    generator.writeFieldName(QUALIFIERS);
+    generator.writeStartArray();
+    for (Qualifier qualifier : qualifiers) {
+      generator.writeStartObject();
+      if (qualifier.getName() != null) {
+        generator.writeFieldName(NAME);
+        generator.writeString(uriToken(qualifier.getName()));
+      }
+      writeString(generator, VALUE, qualifier.getValue());
+      generator.writeEndObject();
+    }
+    generator.writeEndArray();
+  }
+
+  private void writeType(JsonGenerator generator, URI type) throws IOException {
+    if (type != null) {
+      generator.writeFieldName(TYPE);
+      generator.writeString(uriToken(type));
+    }
+  }
+
+  private void writeUri(JsonGenerator generator, SerializedString fieldName, URI uri) throws IOException {
+    if (uri != null) {
+      generator.writeFieldName(fieldName);
+      generator.writeString(uri.toString());
+    }
+  }
+
+  private void writeString(JsonGenerator generator, SerializedString fieldName, String value) throws IOException {
+    if (value != null) {
+      generator.writeFieldName(fieldName);
+      generator.writeString(value);
+    }
+  }
+
+  private void writeFallback(JsonGenerator generator, SerializedString fieldName, Object value) throws IOException {
+    if (value != null) {
+      generator.writeFieldName(fieldName);
+      fallbackWriter.writeValue(generator, value);
+    }
+  }
+
+  private void writeFallbacks(JsonGenerator generator, SerializedString fieldName, List<?> values) throws IOException {
+    if (isEmpty(values)) {
+      return;
+    }
+
+    generator.writeFieldName(fieldName);
+    generator.writeStartArray();
+    for (Object value : values) {
+      fallbackWriter.writeValue(generator, value);
+    }
+    generator.writeEndArray();
+  }
+
+  /**
+   * @return the pre-encoded token for a type URI; type URIs come from a small vocabulary, so they are cached
+   */
+  private SerializedString uriToken(URI uri) {
+    String value = uri.toString();
+    SerializedString token = uriTokens.get(value);
+    if (token == null) {
+      token = new SerializedString(value);
+      if (uriTokens.size() < MAX_URI_TOKENS) {
+        uriTokens.putIfAbsent(value, token);
+      }
+    }
+    return token;
+  }
+
+  private static boolean isLean(Gedcomx dataset) {
+    return dataset.getId() == null && dataset.getDescriptionRef() == null
+      && isEmpty(dataset.getExtensionElements()) && isEmpty(dataset.getLinks())
+      && isEmpty(dataset.getEvents())
+      && isEmpty(dataset.getCollections()) && isEmpty(dataset.getFields()) && isEmpty(dataset.getRecordDescriptors());
+  }
+
+  private static boolean isLeanSubject(Subject subject) {
+    return isLeanConclusion(subject) && subject.getExtracted() == null
+      && isEmpty(subject.getIdentifiers()) && isEmpty(subject.getEvidence()) && isEmpty(subject.getMedia());
+  }
+
+  private static boolean isLeanConclusion(Conclusion conclusion) {
+    return isEmpty(conclusion.getExtensionElements()) && isEmpty(conclusion.getLinks()) && conclusion.getAnalysis() == null;
+  }
+
+  private static boolean isEmpty(Collection<?> collection) {
+    return collection == null || collection.isEmpty();
+  }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion;
+
+import org.gedcomx.fileformat.GedcomxEntryDeserializer;
+import org.gedcomx.fileformat.GedcomxFile;
+import org.gedcomx.fileformat.GedcomxFileEntry;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
+
+
+/**
+ * Reads the entries of a GEDCOM X file on a pool of threads. The entries are deserialized concurrently but handed
+ * out in the order of the file, and at most a fixed number of them are read ahead of the one being handled, which
+ * bounds the memory held by entries that are read but not yet handled.
+ *
+ * Entries of a content type the deserializer knows are read with it, concurrently, so it must be thread-safe (a
+ * {@link org.gedcomx.fileformat.JacksonJsonSerialization} is). Other entries are read by the {@link GedcomxFile}, one
+ * at a time. Directories and the manifest are skipped.
+ */
+public class ParallelGedcomxReader implements Closeable {
+
+  /**
+   * Handles an entry that was read.
+   */
+  public interface EntryHandler {
+    void handle(GedcomxFileEntry entry, Object resource) throws IOException;
+  }
+
+  private final JarFile jarFile;
+  private final GedcomxFile gxFile;
+  private final GedcomxEntryDeserializer deserializer;
+  private final int maxInFlight;
+  private final ExecutorService executor;
+
+  /**
+   * @param gedxFile the GEDCOM X file
+   * @param deserializer the thread-safe deserializer for the entries
+   * @param threadCount the number of reading threads; zero to read on the calling thread
+   */
+  public ParallelGedcomxReader(File gedxFile, GedcomxEntryDeserializer deserializer, int threadCount) throws IOException {
+    this.jarFile = new JarFile(gedxFile);
+    this.gxFile = new GedcomxFile(jarFile);
+    this.deserializer = deserializer;
+    this.maxInFlight = Math.max(1, threadCount * 2);
+    this.executor = threadCount > 0 ? Executors.newFixedThreadPool(threadCount) : null;
+  }
+
+  /**
+   * @return the main attributes of the manifest
+   */
+  public Map<String, String> getAttributes() {
+    return gxFile.getAttributes();
+  }
+
+  /**
+   * Reads every entry and hands it to the handler, in the order of the file.
+   * @param handler the entry handler, called on the calling thread
+   * @return the number of entries read
+   */
+  public int readAll(EntryHandler handler) throws IOException {
+    ArrayDeque<GedcomxFileEntry> inFlightEntries = new ArrayDeque<GedcomxFileEntry>();
+    ArrayDeque<Future<Object>> inFlight = new ArrayDeque<Future<Object>>();
+    int entryCount = 0;
+
+    try {
+      for (final GedcomxFileEntry entry : gxFile.getEntries()) {
+        if (entry.getJarEntry().isDirectory() || entry.getJarEntry().getName().endsWith("MANIFEST.MF")) {
+          continue;
+        }
+
+        if (executor == null) {
+          handler.handle(entry, read(entry));
+          entryCount++;
+          continue;
+        }
+
+        inFlightEntries.add(entry);
+        inFlight.add(executor.submit(() -> read(entry)));
+        while (inFlight.size() >= maxInFlight || (!inFlight.isEmpty() && inFlight.peek().isDone())) {
+          handler.handle(inFlightEntries.poll(), take(inFlight.poll()));
+          entryCount++;
+        }
+      }
+      while (!inFlight.isEmpty()) {
+        handler.handle(inFlightEntries.poll(), take(inFlight.poll()));
+        entryCount++;
+      }
+    } finally {
+      for (Future<Object> future : inFlight) {
+        future.cancel(true);
+      }
+    }
+    return entryCount;
+  }
+
+  /**
+   * Stops the reading threads and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    jarFile.close();
+  }
+
+  private Object read(GedcomxFileEntry entry) throws IOException {
+    String contentType = entry.getContentType();
+    if (contentType != null && deserializer.isKnownContentType(contentType)) {
+      try (InputStream in = jarFile.getInputStream(entry.getJarEntry())) {
+        return deserializer.deserialize(in);
+      }
+    }
+
+    synchronized (gxFile) {
+      return gxFile.readResource(entry);
+    }
+  }
+
+  private static Object take(Future<Object> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for an entry to be read.", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException("Failed to read an entry: " + e.getCause(), e.getCause());
+    }
+  }
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+
+/**
+ * Copies the entries of a zip file, e.g. a .gedx file, into a new zip file without inflating or deflating them. The
+ * compressed bytes of each entry are transferred as they are, straight from the input file to the output channel, so
+ * the cost of a copy is that of the I/O alone. The entries keep their names, compression methods, timestamps and
+ * checksums; extra fields and comments are not copied, and data descriptors are folded into the local headers.
+ *
+ * Deflated entries can also be inflated into stored ones on the way, e.g. an indexed dataset, so that a reader can
+ * skip straight to an offset in the entry instead of inflating everything before it.
+ *
+ * Zip64 files are not supported.
+ */
+public class RawEntryCopier {
+
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_SIGNATURE = 0x06054b50;
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int CENTRAL_HEADER_SIZE = 46;
+  private static final int END_SIZE = 22;
+  private static final int MAX_COMMENT_SIZE = 0xFFFF;
+  private static final int DATA_DESCRIPTOR_FLAG = 0x08;
+  private static final int STORED = 0;
+  private static final int DEFLATED = 8;
+
+  private RawEntryCopier() {
+  }
+
+  /**
+   * Copies the entries of a zip file to a stream. The stream is not closed.
+   * @param in the zip file
+   * @param out the stream to write; a file stream is written through its channel
+   * @return the number of entries copied
+   */
+  public static int copy(File in, OutputStream out) throws IOException {
+    return copy(in, out, Collections.<String>emptySet());
+  }
+
+  /**
+   * Copies the entries of a zip file to a stream, storing the named entries uncompressed. The stream is not closed.
+   * @param in the zip file
+   * @param out the stream to write; a file stream is written through its channel
+   * @param storedEntryNames the names of the entries to inflate if they are deflated
+   * @return the number of entries copied
+   */
+  public static int copy(File in, OutputStream out, Set<String> storedEntryNames) throws IOException {
+    WritableByteChannel target = out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : Channels.newChannel(out);
+    try (FileChannel source = FileChannel.open(in.toPath(), StandardOpenOption.READ)) {
+      return copy(source, target, storedEntryNames);
+    }
+  }
+
+  private static int copy(FileChannel source, WritableByteChannel target, Set<String> storedEntryNames) throws IOException {
+    ByteBuffer end = readEnd(source);
+    int entryCount = end.getShort(10) & 0xFFFF;
+    long centralSize = end.getInt(12) & 0xFFFFFFFFL;
+    long centralOffset = end.getInt(16) & 0xFFFFFFFFL;
+    if (entryCount == 0xFFFF || centralSize == 0xFFFFFFFFL || centralOffset == 0xFFFFFFFFL) {
+      throw new ZipException("Zip64 files are not supported.");
+    }
+
+    ByteBuffer central = read(source, centralOffset, (int) centralSize);
+    ByteBuffer newCentral = ByteBuffer.allocate((int) centralSize).order(ByteOrder.LITTLE_ENDIAN);
+    long position = 0;
+    for (int i = 0; i < entryCount; i++) {
+      int header = central.position();
+      if (central.getInt(header) != CENTRAL_HEADER_SIGNATURE) {
+        throw new ZipException("Bad central directory header at entry " + i + ".");
+      }
+      int nameLength = central.getShort(header + 28) & 0xFFFF;
+      int extraLength = central.getShort(header + 30) & 0xFFFF;
+      int commentLength = central.getShort(header + 32) & 0xFFFF;
+      long compressedSize = central.getInt(header + 20) & 0xFFFFFFFFL;
+      boolean inflate = (central.getShort(header + 10) & 0xFFFF) == DEFLATED && !storedEntryNames.isEmpty()
+        && storedEntryNames.contains(new String(bytes(slice(central, header + CENTRAL_HEADER_SIZE, nameLength)), StandardCharsets.UTF_8));
+      long localOffset = central.getInt(header + 42) & 0xFFFFFFFFL;
+
+      ByteBuffer local = read(source, localOffset, LOCAL_HEADER_SIZE);
+      if (local.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+        throw new ZipException("Bad local header at entry " + i + ".");
+      }
+      long dataOffset = localOffset + LOCAL_HEADER_SIZE + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+
+      // a local header with the sizes and checksum of the central directory, so no data descriptor is needed
+      ByteBuffer newLocal = ByteBuffer.allocate(LOCAL_HEADER_SIZE + nameLength).order(ByteOrder.LITTLE_ENDIAN);
+      newLocal.putInt(LOCAL_HEADER_SIGNATURE);
+      newLocal.putShort(central.getShort(header + 6));
+      newLocal.putShort((short) (central.getShort(header + 8) & ~DATA_DESCRIPTOR_FLAG));
+      newLocal.putShort(inflate ? (short) STORED : central.getShort(header + 10));
+      newLocal.putInt(central.getInt(header + 12));
+      newLocal.putInt(central.getInt(header + 16));
+      // a stored entry is as large as its data
+      newLocal.putInt(central.getInt(header + (inflate ? 24 : 20)));
+      newLocal.putInt(central.getInt(header + 24));
+      newLocal.putShort((short) nameLength);
+      newLocal.putShort((short) 0);
+      newLocal.put(slice(central, header + CENTRAL_HEADER_SIZE, nameLength));
+      newLocal.flip();
+
+      newCentral.put(slice(central, header, CENTRAL_HEADER_SIZE + nameLength));
+      int newHeader = newCentral.position() - CENTRAL_HEADER_SIZE - nameLength;
+      newCentral.putShort(newHeader + 8, (short) (central.getShort(header + 8) & ~DATA_DESCRIPTOR_FLAG));
+      newCentral.putShort(newHeader + 30, (short) 0);
+      newCentral.putShort(newHeader + 32, (short) 0);
+      newCentral.putInt(newHeader + 42, (int) position);
+      if (inflate) {
+        newCentral.putShort(newHeader + 10, (short) STORED);
+        newCentral.putInt(newHeader + 20, central.getInt(header + 24));
+      }
+
+      position += writeFully(target, newLocal);
+      if (inflate) {
+        position += inflateFully(source, dataOffset, central.getInt(header + 24) & 0xFFFFFFFFL, target);
+      } else {
+        position += transferFully(source, dataOffset, compressedSize, target);
+      }
+      if (position > 0xFFFFFFFFL) {
+        throw new ZipException("Zip64 files are not supported.");
+      }
+      central.position(header + CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength);
+    }
+
+    newCentral.flip();
+    int newCentralSize = newCentral.remaining();
+    writeFully(target, newCentral);
+
+    ByteBuffer newEnd = ByteBuffer.allocate(END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    newEnd.putInt(END_SIGNATURE);
+    newEnd.putShort((short) 0);
+    newEnd.putShort((short) 0);
+    newEnd.putShort((short) entryCount);
+    newEnd.putShort((short) entryCount);
+    newEnd.putInt(newCentralSize);
+    newEnd.putInt((int) position);
+    newEnd.putShort((short) 0);
+    newEnd.flip();
+    writeFully(target, newEnd);
+    return entryCount;
+  }
+
+  /**
+   * Finds the end of central directory record, which is followed only by the zip file comment.
+   */
+  private static ByteBuffer readEnd(FileChannel source) throws IOException {
+    long size = source.size();
+    int tailSize = (int) Math.min(size, END_SIZE + MAX_COMMENT_SIZE);
+    ByteBuffer tail = read(source, size - tailSize, tailSize);
+    for (int i = tailSize - END_SIZE; i >= 0; i--) {
+      if (tail.getInt(i) == END_SIGNATURE) {
+        return slice(tail, i, END_SIZE);
+      }
+    }
+    throw new ZipException("Not a zip file.");
+  }
+
+  private static ByteBuffer read(FileChannel source, long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (source.read(buffer, offset + buffer.position()) < 0) {
+        throw new ZipException("Unexpected end of the zip file.");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position(offset);
+    duplicate.limit(offset + length);
+    return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static int writeFully(WritableByteChannel target, ByteBuffer buffer) throws IOException {
+    int length = buffer.remaining();
+    while (buffer.hasRemaining()) {
+      target.write(buffer);
+    }
+    return length;
+  }
+
+  private static byte[] bytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  /**
+   * Inflates the raw deflate data at an offset of the file to the target, checking that it has the expected size.
+   */
+  private static long inflateFully(FileChannel source, long offset, long size, WritableByteChannel target) throws IOException {
+    Inflater inflater = new Inflater(true);
+    try {
+      // the inflater may read ahead of the deflate data, which is harmless as the other reads are positioned
+      InputStream in = new InflaterInputStream(Channels.newInputStream(source.position(offset)), inflater, 64 * 1024);
+      byte[] buffer = new byte[64 * 1024];
+      long inflated = 0;
+      int count;
+      while ((count = in.read(buffer)) > 0) {
+        inflated += count;
+        if (inflated > size) {
+          break;
+        }
+        writeFully(target, ByteBuffer.wrap(buffer, 0, count));
+      }
+      if (inflated != size) {
+        throw new ZipException("The inflated size of an entry does not match its central directory header.");
+      }
+      return size;
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static long transferFully(FileChannel source, long offset, long length, WritableByteChannel target) throws IOException {
+    long transferred = 0;
+    while (transferred < length) {
+      long count = source.transferTo(offset + transferred, length - transferred, target);
+      if (count <= 0 && offset + transferred >= source.size()) {
+        throw new ZipException("Unexpected end of the zip file.");
+      }
+      transferred += count;
+    }
+    return length;
+  }
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion;
+
+import java.io.IOException;
+
+
+/**
+ * A conversion result that is told when the entities mapped from a GEDCOM record are complete. Until then, a mapper
+ * may still add to an entity it has already handed over, e.g. the facts and sources of a couple relationship, which
+ * are mapped after the parent-child relationships of the family.
+ */
+public interface RecordAwareConversionResult extends GedcomxConversionResult {
+
+  /**
+   * Called once the entities added since the previous call are complete.
+   */
+  void endRecord() throws IOException;
+}
@@ -0,0 +1,365 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Document;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.rt.json.GedcomJacksonModule;
+import org.gedcomx.source.SourceDescription;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A conversion result that keeps its heap use bounded. Persons and relationships are buffered in memory until their
+ * estimated size crosses a budget, at which point the buffers are written, one JSON object per line, to spill files in
+ * a temporary directory. The size is estimated from the JSON form of a sample of the entities, so it depends neither
+ * on when the garbage collector runs nor on what else, such as a parsed GEDCOM file, is on the heap.
+ * {@link #writeDataset(OutputStream)} streams the spilled and buffered entities back, in the order they were added,
+ * as a single GEDCOM X JSON document.
+ *
+ * Source descriptions, organizations, place descriptions, note documents and the contributor are few in comparison
+ * and stay in memory.
+ *
+ * The buffers are only measured once the record being mapped is complete, so that an entity a mapper is still adding
+ * to is never measured or spilled.
+ */
+public class SpillingGedcomxConversionResult implements RecordAwareConversionResult, StreamingDataset, Closeable {
+
+  /**
+   * One in how many entities is serialized to estimate the size of the buffered ones.
+   */
+  private static final int SAMPLE_INTERVAL = 64;
+
+  /**
+   * Roughly the heap an entity takes per byte of its JSON form: the strings are UTF-16, and every value is an object
+   * of its own with a header and references.
+   */
+  private static final int HEAP_BYTES_PER_JSON_BYTE = 4;
+
+  private final long memoryBudget;
+  private final File spillDirectory;
+  private final ObjectMapper objectMapper;
+  private final ObjectWriter lineWriter;
+
+  private final Gedcomx dataset = new Gedcomx();
+  private Agent datasetContributor;
+  private final List<Person> persons = new ArrayList<Person>();
+  private final List<Relationship> relationships = new ArrayList<Relationship>();
+
+  private File personSpill;
+  private File relationshipSpill;
+  private Writer personWriter;
+  private Writer relationshipWriter;
+  private int measuredPersons = 0;
+  private int measuredRelationships = 0;
+  private long bufferedBytes = 0;
+  private long measuredCount = 0;
+  private long sampledBytes = 0;
+  private long sampleCount = 0;
+  private int spillCount = 0;
+
+  /**
+   * @param memoryBudget the estimated size, in bytes, of the buffered persons and relationships above which they are
+   *                     spilled
+   * @param spillDirectory where to create the spill files; null for the default temporary directory
+   * @param extensionClasses extension classes that appear in the entities, e.g. ordinances
+   */
+  public SpillingGedcomxConversionResult(long memoryBudget, File spillDirectory, Class<?>... extensionClasses) {
+    this.memoryBudget = memoryBudget;
+    this.spillDirectory = spillDirectory;
+    this.objectMapper = GedcomJacksonModule.createObjectMapper(extensionClasses);
+    this.lineWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+  }
+
+  /**
+   * Reads every spilled entity back into memory. Prefer {@link #writeDataset(OutputStream)} for large conversions.
+   */
+  @Override
+  public Gedcomx getDataset() {
+    try {
+      Gedcomx complete = new Gedcomx();
+      complete.setLang(dataset.getLang());
+      complete.setSourceDescriptions(dataset.getSourceDescriptions());
+      complete.setAgents(dataset.getAgents());
+      complete.setPlaces(dataset.getPlaces());
+      complete.setDocuments(dataset.getDocuments());
+      complete.setPersons(readAll(personSpill, persons, Person.class));
+      complete.setRelationships(readAll(relationshipSpill, relationships, Relationship.class));
+      return complete;
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read the spilled entities back.", e);
+    }
+  }
+
+  @Override
+  public Agent getDatasetContributor() {
+    return datasetContributor;
+  }
+
+  @Override
+  public void setDatasetContributor(Agent person) throws IOException {
+    this.datasetContributor = person;
+  }
+
+  @Override
+  public void addPerson(Person person) throws IOException {
+    persons.add(person);
+  }
+
+  @Override
+  public void addRelationship(Relationship relationship) throws IOException {
+    relationships.add(relationship);
+  }
+
+  @Override
+  public void addSourceDescription(SourceDescription description) throws IOException {
+    if (dataset.getSourceDescriptions() == null) {
+      dataset.setSourceDescriptions(new ArrayList<SourceDescription>());
+    }
+
+    dataset.getSourceDescriptions().add(description);
+  }
+
+  @Override
+  public void addOrganization(Agent organization) throws IOException {
+    if (dataset.getAgents() == null) {
+      dataset.setAgents(new ArrayList<Agent>());
+    }
+
+    dataset.getAgents().add(organization);
+  }
+
+  @Override
+  public void addPlaceDescription(PlaceDescription place) throws IOException {
+    if (dataset.getPlaces() == null) {
+      dataset.setPlaces(new ArrayList<PlaceDescription>());
+    }
+
+    dataset.getPlaces().add(place);
+  }
+
+  @Override
+  public void addDocument(Document document) throws IOException {
+    if (dataset.getDocuments() == null) {
+      dataset.setDocuments(new ArrayList<Document>());
+    }
+
+    dataset.getDocuments().add(document);
+  }
+
+  @Override
+  public void addLanguage(String langCode) {
+    dataset.setLang(langCode);
+  }
+
+  /**
+   * @return how many times the buffers were spilled to disk
+   */
+  public int getSpillCount() {
+    return spillCount;
+  }
+
+  /**
+   * Writes the whole dataset, copying spilled entities straight from the spill files.
+   */
+  @Override
+  public void writeDataset(OutputStream out) throws IOException {
+    JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+    generator.writeStartObject();
+
+    Iterator<Map.Entry<String, JsonNode>> fields = objectMapper.valueToTree(dataset).fields();
+    while (fields.hasNext()) {
+      Map.Entry<String, JsonNode> field = fields.next();
+      generator.writeFieldName(field.getKey());
+      objectMapper.writeTree(generator, field.getValue());
+    }
+
+    if (personSpill != null || !persons.isEmpty()) {
+      generator.writeArrayFieldStart("persons");
+      copySpill(personSpill, generator);
+      for (Person person : persons) {
+        objectMapper.writeValue(generator, person);
+      }
+      generator.writeEndArray();
+    }
+
+    if (relationshipSpill != null || !relationships.isEmpty()) {
+      generator.writeArrayFieldStart("relationships");
+      copySpill(relationshipSpill, generator);
+      for (Relationship relationship : relationships) {
+        objectMapper.writeValue(generator, relationship);
+      }
+      generator.writeEndArray();
+    }
+
+    generator.writeEndObject();
+    generator.flush();
+  }
+
+  /**
+   * Appends the buffered persons and relationships to their spill files and empties the buffers.
+   */
+  public void spill() throws IOException {
+    if (persons.isEmpty() && relationships.isEmpty()) {
+      return;
+    }
+
+    if (!persons.isEmpty()) {
+      if (personWriter == null) {
+        personSpill = File.createTempFile("persons", ".spill", spillDirectory);
+        personWriter = openSpill(personSpill);
+      }
+      append(personWriter, persons);
+    }
+    if (!relationships.isEmpty()) {
+      if (relationshipWriter == null) {
+        relationshipSpill = File.createTempFile("relationships", ".spill", spillDirectory);
+        relationshipWriter = openSpill(relationshipSpill);
+      }
+      append(relationshipWriter, relationships);
+    }
+    measuredPersons = 0;
+    measuredRelationships = 0;
+    bufferedBytes = 0;
+    spillCount++;
+  }
+
+  /**
+   * Deletes the spill files.
+   */
+  @Override
+  public void close() {
+    closeQuietly(personWriter);
+    personWriter = null;
+    closeQuietly(relationshipWriter);
+    relationshipWriter = null;
+    if (personSpill != null) {
+      personSpill.delete();
+      personSpill = null;
+    }
+    if (relationshipSpill != null) {
+      relationshipSpill.delete();
+      relationshipSpill = null;
+    }
+  }
+
+  /**
+   * Adds the entities completed since the last record to the estimated size of the buffers, and spills the buffers if
+   * it is over the budget.
+   */
+  @Override
+  public void endRecord() throws IOException {
+    for (; measuredPersons < persons.size(); measuredPersons++) {
+      measure(persons.get(measuredPersons));
+    }
+    for (; measuredRelationships < relationships.size(); measuredRelationships++) {
+      measure(relationships.get(measuredRelationships));
+    }
+
+    if (bufferedBytes > memoryBudget) {
+      spill();
+    }
+  }
+
+  private void measure(Object entity) throws IOException {
+    if (measuredCount++ % SAMPLE_INTERVAL == 0) {
+      sampledBytes += (long) lineWriter.writeValueAsBytes(entity).length * HEAP_BYTES_PER_JSON_BYTE;
+      sampleCount++;
+    }
+    bufferedBytes += sampledBytes / sampleCount;
+  }
+
+  private static Writer openSpill(File spill) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spill), StandardCharsets.UTF_8));
+  }
+
+  private void append(Writer writer, List<?> entities) throws IOException {
+    for (Object entity : entities) {
+      // without indentation, and with line breaks inside strings escaped, each entity stays on one line
+      writer.write(lineWriter.writeValueAsString(entity));
+      writer.write('\n');
+    }
+    // the spill file is read back while its writer is still open
+    writer.flush();
+    entities.clear();
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // the spill file is deleted next
+      }
+    }
+  }
+
+  private void copySpill(File spill, JsonGenerator generator) throws IOException {
+    if (spill == null) {
+      return;
+    }
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(spill), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        generator.writeRawValue(line);
+      }
+    }
+  }
+
+  private <T> List<T> readAll(File spill, List<T> buffered, Class<T> type) throws IOException {
+    if (spill == null && buffered.isEmpty()) {
+      return null;
+    }
+
+    List<T> all = new ArrayList<T>();
+    if (spill != null) {
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(spill), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          all.add(objectMapper.readValue(line, type));
+        }
+      }
+    }
+    all.addAll(buffered);
+    return all;
+  }
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * A dataset that writes itself as a GEDCOM X JSON document instead of being built as a Gedcomx object first.
+ *
+ * @see StreamingDatasetSerializer
+ */
+public interface StreamingDataset {
+
+  /**
+   * Writes the dataset as a GEDCOM X JSON document. The stream is not closed.
+   * @param out the stream to write
+   */
+  void writeDataset(OutputStream out) throws IOException;
+}
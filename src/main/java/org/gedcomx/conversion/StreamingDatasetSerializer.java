@@ -0,0 +1,52 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion;
+
+import org.gedcomx.fileformat.GedcomxEntrySerializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * An entry serializer that lets a {@link StreamingDataset} write itself into its entry, so that a dataset that is
+ * spilled to disk or still being mapped never has to be held in memory as a whole. An {@link EntityIndex} is written
+ * as its own entry. Every other resource is handed to the wrapped serializer.
+ */
+public class StreamingDatasetSerializer implements GedcomxEntrySerializer {
+
+  private final GedcomxEntrySerializer delegate;
+
+  public StreamingDatasetSerializer(GedcomxEntrySerializer delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void serialize(Object resource, OutputStream out) throws IOException {
+    if (resource instanceof StreamingDataset) {
+      ((StreamingDataset) resource).writeDataset(out);
+    } else if (resource instanceof EntityIndex) {
+      ((EntityIndex) resource).write(out);
+    } else {
+      delegate.serialize(resource, out);
+    }
+  }
+
+  @Override
+  public boolean isKnownContentType(String contentType) {
+    return EntityIndex.CONTENT_TYPE.equals(contentType) || delegate.isKnownContentType(contentType);
+  }
+}
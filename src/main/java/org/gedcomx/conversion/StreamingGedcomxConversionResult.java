@@ -0,0 +1,296 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Document;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.source.SourceDescription;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A conversion result that is never held as a dataset. When the output asks for the dataset to be written, the
+ * conversion is run with this result as its target, and each person and relationship is written into the
+ * <code>persons</code> and <code>relationships</code> arrays of the JSON document as soon as the record it was mapped
+ * from is complete, after which it is garbage. Source descriptions, organizations, place descriptions and note
+ * documents, which are few in comparison and may be added while the persons are being mapped (e.g. for citations),
+ * are kept until the end of the conversion.
+ *
+ * The contributor is only known once the conversion has run; the manifest of a .gedx file is written when the file
+ * is closed, so it can still name the contributor.
+ *
+ * With an {@link EntityIndex}, the byte range of every person and relationship in the entry is recorded as it is
+ * written; the index can be added as an entry of its own once the dataset is written.
+ *
+ * @see StreamingDatasetSerializer
+ */
+public class StreamingGedcomxConversionResult implements RecordAwareConversionResult, StreamingDataset {
+
+  /**
+   * Runs the conversion into a result.
+   */
+  public interface Conversion {
+    void convert(GedcomxConversionResult result) throws IOException;
+  }
+
+  private final LeanJsonSerialization serialization;
+  private final Conversion conversion;
+
+  private EntityIndex index;
+  private String indexedEntryName;
+  private CountingOutputStream counter;
+  private JsonGenerator generator;
+  private String openArray;
+  private final List<String> closedArrays = new ArrayList<String>();
+  private final List<Object> recordEntities = new ArrayList<Object>();
+  private final List<SourceDescription> sourceDescriptions = new ArrayList<SourceDescription>();
+  private final List<Agent> organizations = new ArrayList<Agent>();
+  private final List<PlaceDescription> places = new ArrayList<PlaceDescription>();
+  private final List<Document> documents = new ArrayList<Document>();
+  private Agent datasetContributor;
+  private String langCode;
+
+  /**
+   * @param serialization writes the entities
+   * @param conversion the conversion, run when the dataset is written
+   */
+  public StreamingGedcomxConversionResult(LeanJsonSerialization serialization, Conversion conversion) {
+    this.serialization = serialization;
+    this.conversion = conversion;
+  }
+
+  /**
+   * Records where each person and relationship is written.
+   * @param index the index to add the entities to
+   * @param entryName the name of the entry the dataset is written to
+   */
+  public void setIndex(EntityIndex index, String entryName) {
+    this.index = index;
+    this.indexedEntryName = entryName;
+  }
+
+  /**
+   * Runs the conversion, writing its entities as they are added. Can be called only once.
+   */
+  @Override
+  public void writeDataset(OutputStream out) throws IOException {
+    if (generator != null) {
+      throw new IllegalStateException("The dataset has already been written.");
+    }
+
+    counter = new CountingOutputStream(out);
+    generator = serialization.createGenerator(counter);
+    if (index != null) {
+      // the generator is flushed around every entity to learn its offset; the entry stream need not be
+      generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+    }
+    generator.writeStartObject();
+    conversion.convert(this);
+    endRecord();
+    closeArray();
+
+    if (!sourceDescriptions.isEmpty()) {
+      generator.writeArrayFieldStart("sourceDescriptions");
+      for (SourceDescription description : sourceDescriptions) {
+        serialization.writeEntity(generator, description);
+      }
+      generator.writeEndArray();
+      sourceDescriptions.clear();
+    }
+    if (!organizations.isEmpty()) {
+      generator.writeArrayFieldStart("agents");
+      for (Agent organization : organizations) {
+        serialization.writeEntity(generator, organization);
+      }
+      generator.writeEndArray();
+      organizations.clear();
+    }
+    if (!places.isEmpty()) {
+      generator.writeArrayFieldStart("places");
+      for (PlaceDescription place : places) {
+        serialization.writeEntity(generator, place);
+      }
+      generator.writeEndArray();
+      places.clear();
+    }
+    if (!documents.isEmpty()) {
+      generator.writeArrayFieldStart("documents");
+      for (Document document : documents) {
+        serialization.writeEntity(generator, document);
+      }
+      generator.writeEndArray();
+      documents.clear();
+    }
+    if (langCode != null) {
+      generator.writeStringField("lang", langCode);
+    }
+
+    generator.writeEndObject();
+    generator.flush();
+  }
+
+  /**
+   * The entities are not kept, so there is no dataset to return.
+   * @return null
+   */
+  @Override
+  public Gedcomx getDataset() {
+    return null;
+  }
+
+  @Override
+  public Agent getDatasetContributor() {
+    return datasetContributor;
+  }
+
+  @Override
+  public void setDatasetContributor(Agent person) throws IOException {
+    this.datasetContributor = person;
+  }
+
+  @Override
+  public void addPerson(Person person) throws IOException {
+    checkWriting();
+    recordEntities.add(person);
+  }
+
+  @Override
+  public void addRelationship(Relationship relationship) throws IOException {
+    checkWriting();
+    recordEntities.add(relationship);
+  }
+
+  /**
+   * Writes the persons and relationships of the record that was just mapped.
+   */
+  @Override
+  public void endRecord() throws IOException {
+    for (Object entity : recordEntities) {
+      if (entity instanceof Person) {
+        Person person = (Person) entity;
+        openArray("persons");
+        long offset = markOffset();
+        serialization.writePerson(generator, person);
+        addToIndex(person.getId(), offset);
+      } else {
+        Relationship relationship = (Relationship) entity;
+        openArray("relationships");
+        long offset = markOffset();
+        serialization.writeRelationship(generator, relationship);
+        addToIndex(relationship.getId(), offset);
+      }
+    }
+    recordEntities.clear();
+  }
+
+  @Override
+  public void addSourceDescription(SourceDescription description) throws IOException {
+    sourceDescriptions.add(description);
+  }
+
+  @Override
+  public void addOrganization(Agent organization) throws IOException {
+    organizations.add(organization);
+  }
+
+  @Override
+  public void addPlaceDescription(PlaceDescription place) throws IOException {
+    places.add(place);
+  }
+
+  @Override
+  public void addDocument(Document document) throws IOException {
+    documents.add(document);
+  }
+
+  @Override
+  public void addLanguage(String langCode) {
+    this.langCode = langCode;
+  }
+
+  private long markOffset() throws IOException {
+    if (index == null) {
+      return -1;
+    }
+    generator.flush();
+    return counter.count;
+  }
+
+  private void addToIndex(String id, long offset) throws IOException {
+    if (index == null || id == null) {
+      return;
+    }
+    generator.flush();
+    index.add(id, indexedEntryName, offset, counter.count - offset);
+  }
+
+  private void checkWriting() {
+    if (generator == null) {
+      throw new IllegalStateException("Entities can only be added while the dataset is being written.");
+    }
+  }
+
+  private void openArray(String arrayName) throws IOException {
+    if (arrayName.equals(openArray)) {
+      return;
+    }
+    if (closedArrays.contains(arrayName)) {
+      throw new IllegalStateException("The " + arrayName + " are not contiguous in the mapped output.");
+    }
+
+    closeArray();
+    generator.writeArrayFieldStart(arrayName);
+    openArray = arrayName;
+  }
+
+  private void closeArray() throws IOException {
+    if (openArray != null) {
+      generator.writeEndArray();
+      closedArrays.add(openArray);
+      openArray = null;
+    }
+  }
+
+  private static final class CountingOutputStream extends FilterOutputStream {
+    private long count = 0;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * The ANSEL (ANSI Z39.47) character set, including the GEDCOM 5.5 extensions, as a decode-only {@link Charset}.
+ *
+ * ANSEL writes combining diacritics <em>before</em> the base character they modify; Unicode writes them after.
+ * The decoder is driven by a precomputed byte-to-char table and reorders pending combining marks behind the
+ * following base character in the same pass over the input. Marks left pending at a line break have no base
+ * character and are emitted as they are before the break, so that they stay on their own line.
+ */
+public class AnselCharset extends Charset {
+
+  public static final String NAME = "ANSEL";
+
+  /**
+   * Marks a byte with no mapping.
+   */
+  private static final char UNMAPPED = '\uFFFF';
+
+  /**
+   * Maximum number of stacked diacritics held back while waiting for a base character.
+   */
+  static final int MAX_PENDING_MARKS = 8;
+
+  private static final char[] DECODE_TABLE = new char[256];
+  private static final boolean[] COMBINING = new boolean[256];
+
+  static {
+    for (int b = 0; b < 0x80; b++) {
+      DECODE_TABLE[b] = (char) b;
+    }
+    for (int b = 0x80; b < 0x100; b++) {
+      DECODE_TABLE[b] = UNMAPPED;
+    }
+
+    // Spacing graphic characters
+    DECODE_TABLE[0xA1] = 'Ł'; // uppercase Polish L
+    DECODE_TABLE[0xA2] = 'Ø'; // uppercase Scandinavian O
+    DECODE_TABLE[0xA3] = 'Đ'; // uppercase D with crossbar
+    DECODE_TABLE[0xA4] = 'Þ'; // uppercase Icelandic thorn
+    DECODE_TABLE[0xA5] = 'Æ'; // uppercase digraph AE
+    DECODE_TABLE[0xA6] = 'Œ'; // uppercase digraph OE
+    DECODE_TABLE[0xA7] = 'ʹ'; // soft sign
+    DECODE_TABLE[0xA8] = '·'; // middle dot
+    DECODE_TABLE[0xA9] = '♭'; // musical flat
+    DECODE_TABLE[0xAA] = '®'; // registered
+    DECODE_TABLE[0xAB] = '±'; // plus or minus
+    DECODE_TABLE[0xAC] = 'Ơ'; // uppercase O-hook
+    DECODE_TABLE[0xAD] = 'Ư'; // uppercase U-hook
+    DECODE_TABLE[0xAE] = 'ʼ'; // alif
+    DECODE_TABLE[0xB0] = 'ʻ'; // ayn
+    DECODE_TABLE[0xB1] = 'ł'; // lowercase Polish l
+    DECODE_TABLE[0xB2] = 'ø'; // lowercase Scandinavian o
+    DECODE_TABLE[0xB3] = 'đ'; // lowercase d with crossbar
+    DECODE_TABLE[0xB4] = 'þ'; // lowercase Icelandic thorn
+    DECODE_TABLE[0xB5] = 'æ'; // lowercase digraph ae
+    DECODE_TABLE[0xB6] = 'œ'; // lowercase digraph oe
+    DECODE_TABLE[0xB7] = 'ʺ'; // hard sign
+    DECODE_TABLE[0xB8] = 'ı'; // lowercase dotless i
+    DECODE_TABLE[0xB9] = '£'; // British pound
+    DECODE_TABLE[0xBA] = 'ð'; // lowercase eth
+    DECODE_TABLE[0xBC] = 'ơ'; // lowercase o-hook
+    DECODE_TABLE[0xBD] = 'ư'; // lowercase u-hook
+    DECODE_TABLE[0xBE] = '□'; // empty box (GEDCOM extension)
+    DECODE_TABLE[0xBF] = '■'; // black box (GEDCOM extension)
+    DECODE_TABLE[0xC0] = '°'; // degree
+    DECODE_TABLE[0xC1] = 'ℓ'; // script l
+    DECODE_TABLE[0xC2] = '℗'; // sound recording copyright
+    DECODE_TABLE[0xC3] = '©'; // copyright
+    DECODE_TABLE[0xC4] = '♯'; // musical sharp
+    DECODE_TABLE[0xC5] = '¿'; // inverted question mark
+    DECODE_TABLE[0xC6] = '¡'; // inverted exclamation mark
+    DECODE_TABLE[0xC7] = 'ß'; // eszett (MARC-8)
+    DECODE_TABLE[0xC8] = '€'; // euro (MARC-8)
+    DECODE_TABLE[0xCD] = 'e'; // midline e (GEDCOM extension)
+    DECODE_TABLE[0xCE] = 'o'; // midline o (GEDCOM extension)
+    DECODE_TABLE[0xCF] = 'ß'; // eszett (GEDCOM extension)
+
+    // Combining diacritics
+    combining(0xE0, '\u0309'); // hook above
+    combining(0xE1, '\u0300'); // grave
+    combining(0xE2, '\u0301'); // acute
+    combining(0xE3, '\u0302'); // circumflex
+    combining(0xE4, '\u0303'); // tilde
+    combining(0xE5, '\u0304'); // macron
+    combining(0xE6, '\u0306'); // breve
+    combining(0xE7, '\u0307'); // dot above
+    combining(0xE8, '\u0308'); // umlaut (diaeresis)
+    combining(0xE9, '\u030C'); // hacek (caron)
+    combining(0xEA, '\u030A'); // circle above (angstrom)
+    combining(0xEB, '\uFE20'); // ligature, left half
+    combining(0xEC, '\uFE21'); // ligature, right half
+    combining(0xED, '\u0315'); // high comma, off center
+    combining(0xEE, '\u030B'); // double acute
+    combining(0xEF, '\u0310'); // candrabindu
+    combining(0xF0, '\u0327'); // cedilla
+    combining(0xF1, '\u0328'); // right hook (ogonek)
+    combining(0xF2, '\u0323'); // dot below
+    combining(0xF3, '\u0324'); // double dot below
+    combining(0xF4, '\u0325'); // circle below
+    combining(0xF5, '\u0333'); // double underscore
+    combining(0xF6, '\u0332'); // underscore
+    combining(0xF7, '\u0326'); // left hook (comma below)
+    combining(0xF8, '\u031C'); // right cedilla
+    combining(0xF9, '\u032E'); // upadhmaniya (breve below)
+    combining(0xFA, '\uFE22'); // double tilde, left half
+    combining(0xFB, '\uFE23'); // double tilde, right half
+    combining(0xFE, '\u0313'); // high comma, centered
+  }
+
+  private static void combining(int b, char c) {
+    DECODE_TABLE[b] = c;
+    COMBINING[b] = true;
+  }
+
+  public AnselCharset() {
+    super(NAME, new String[]{"ANSI-Z39.47", "Z39.47", "X-ANSEL"});
+  }
+
+  @Override
+  public boolean contains(Charset cs) {
+    return cs instanceof AnselCharset || "US-ASCII".equals(cs.name());
+  }
+
+  @Override
+  public CharsetDecoder newDecoder() {
+    return new Decoder(this);
+  }
+
+  @Override
+  public boolean canEncode() {
+    return false;
+  }
+
+  @Override
+  public CharsetEncoder newEncoder() {
+    throw new UnsupportedOperationException("The ANSEL character set is decode-only.");
+  }
+
+  private static final class Decoder extends CharsetDecoder {
+
+    private final char[] pendingMarks = new char[MAX_PENDING_MARKS];
+    private int pendingCount = 0;
+
+    private Decoder(Charset cs) {
+      super(cs, 1.0f, (float) MAX_PENDING_MARKS + 1);
+    }
+
+    @Override
+    protected CoderResult decodeLoop(ByteBuffer in, CharBuffer out) {
+      if (in.hasArray() && out.hasArray()) {
+        return decodeArrayLoop(in, out);
+      }
+      return decodeBufferLoop(in, out);
+    }
+
+    private CoderResult decodeArrayLoop(ByteBuffer in, CharBuffer out) {
+      byte[] src = in.array();
+      int sp = in.arrayOffset() + in.position();
+      int sl = in.arrayOffset() + in.limit();
+      char[] dst = out.array();
+      int dp = out.arrayOffset() + out.position();
+      int dl = out.arrayOffset() + out.limit();
+
+      try {
+        while (sp < sl) {
+          int b = src[sp] & 0xFF;
+          char c = DECODE_TABLE[b];
+          if (c == UNMAPPED) {
+            return CoderResult.unmappableForLength(1);
+          }
+          if (COMBINING[b]) {
+            if (pendingCount == MAX_PENDING_MARKS) {
+              return CoderResult.malformedForLength(1);
+            }
+            pendingMarks[pendingCount++] = c;
+            sp++;
+            continue;
+          }
+          if (dl - dp < pendingCount + 1) {
+            return CoderResult.OVERFLOW;
+          }
+          if (b == '\r' || b == '\n') {
+            for (int i = 0; i < pendingCount; i++) {
+              dst[dp++] = pendingMarks[i];
+            }
+            dst[dp++] = c;
+          } else {
+            dst[dp++] = c;
+            for (int i = 0; i < pendingCount; i++) {
+              dst[dp++] = pendingMarks[i];
+            }
+          }
+          pendingCount = 0;
+          sp++;
+        }
+        return CoderResult.UNDERFLOW;
+      } finally {
+        in.position(sp - in.arrayOffset());
+        out.position(dp - out.arrayOffset());
+      }
+    }
+
+    private CoderResult decodeBufferLoop(ByteBuffer in, CharBuffer out) {
+      int mark = in.position();
+      try {
+        while (in.hasRemaining()) {
+          int b = in.get() & 0xFF;
+          char c = DECODE_TABLE[b];
+          if (c == UNMAPPED) {
+            return CoderResult.unmappableForLength(1);
+          }
+          if (COMBINING[b]) {
+            if (pendingCount == MAX_PENDING_MARKS) {
+              return CoderResult.malformedForLength(1);
+            }
+            pendingMarks[pendingCount++] = c;
+            mark++;
+            continue;
+          }
+          if (out.remaining() < pendingCount + 1) {
+            return CoderResult.OVERFLOW;
+          }
+          if (b == '\r' || b == '\n') {
+            out.put(pendingMarks, 0, pendingCount);
+            out.put(c);
+          } else {
+            out.put(c);
+            out.put(pendingMarks, 0, pendingCount);
+          }
+          pendingCount = 0;
+          mark++;
+        }
+        return CoderResult.UNDERFLOW;
+      } finally {
+        in.position(mark);
+      }
+    }
+
+    @Override
+    protected CoderResult implFlush(CharBuffer out) {
+      // diacritics at the very end of the input have no base character; emit them as they are
+      if (out.remaining() < pendingCount) {
+        return CoderResult.OVERFLOW;
+      }
+      out.put(pendingMarks, 0, pendingCount);
+      pendingCount = 0;
+      return CoderResult.UNDERFLOW;
+    }
+
+    @Override
+    protected void implReset() {
+      pendingCount = 0;
+    }
+  }
+}
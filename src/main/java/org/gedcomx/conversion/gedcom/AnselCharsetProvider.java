@@ -0,0 +1,47 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom;
+
+import java.nio.charset.Charset;
+import java.nio.charset.spi.CharsetProvider;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * Makes the {@link AnselCharset} available through {@link Charset#forName(String)}.
+ */
+public class AnselCharsetProvider extends CharsetProvider {
+
+  private static final Charset ANSEL = new AnselCharset();
+
+  @Override
+  public Iterator<Charset> charsets() {
+    return Collections.singletonList(ANSEL).iterator();
+  }
+
+  @Override
+  public Charset charsetForName(String charsetName) {
+    if (ANSEL.name().equalsIgnoreCase(charsetName)) {
+      return ANSEL;
+    }
+    for (String alias : ANSEL.aliases()) {
+      if (alias.equalsIgnoreCase(charsetName)) {
+        return ANSEL;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Reads an ANSEL-encoded GEDCOM 5.5 stream through the {@link AnselCharset} decoder, so that the GEDCOM parser is
+ * given the decoded characters instead of decoding the bytes itself. The <code>1 CHAR ANSEL</code> line is passed
+ * through unchanged; the parser does not look at it when it reads characters.
+ */
+public class AnselReader extends InputStreamReader {
+
+  /**
+   * How much of the file is inspected for the <code>1 CHAR</code> line of the header.
+   */
+  private static final int HEADER_SCAN_LENGTH = 8192;
+
+  private static final Pattern ANSEL_CHAR_LINE = Pattern.compile("(?m)^[ \\t]*1[ \\t]+CHAR[ \\t]+ANSEL[ \\t]*$");
+
+  /**
+   * @param anselIn the ANSEL-encoded GEDCOM 5.5 stream, closed with this reader
+   */
+  public AnselReader(InputStream anselIn) {
+    super(anselIn, new AnselCharset().newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE));
+  }
+
+  /**
+   * Determines whether the header of the given GEDCOM file declares the ANSEL character set.
+   * @param gedcomFile the GEDCOM 5.5 file
+   * @return whether the file is ANSEL-encoded
+   */
+  public static boolean isAnselEncoded(File gedcomFile) throws IOException {
+    byte[] header = new byte[HEADER_SCAN_LENGTH];
+    int length = 0;
+    try (InputStream in = new FileInputStream(gedcomFile)) {
+      int read;
+      while (length < header.length && (read = in.read(header, length, header.length - length)) != -1) {
+        length += read;
+      }
+    }
+    // the header lines we look for are plain ASCII, which reads the same in every GEDCOM encoding but UTF-16
+    return ANSEL_CHAR_LINE.matcher(new String(header, 0, length, StandardCharsets.ISO_8859_1)).find();
+  }
+}
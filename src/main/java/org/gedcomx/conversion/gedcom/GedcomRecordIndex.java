@@ -0,0 +1,262 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An index of the level-0 records of a GEDCOM 5.5 file, giving the byte range, tag and xref of each record.
+ *
+ * It is built by a single scan over the bytes of the file, without parsing the records, so that a converter can
+ * later read and parse just the records it needs. Its size is proportional to the number of records, not to the size
+ * of the file. UTF-16 files are not supported.
+ */
+public class GedcomRecordIndex {
+
+  private static final int MAX_TAG_LINE_LENGTH = 512;
+  private static final int BUFFER_SIZE = 65536;
+
+  private final File file;
+  private final int size;
+  private final long[] offsets;
+  private final String[] tags;
+  private final Map<String, Integer> ordinalsByXref;
+  private final boolean anselDecoded;
+
+  private GedcomRecordIndex(File file, int size, long[] offsets, String[] tags, Map<String, Integer> ordinalsByXref, boolean anselDecoded) {
+    this.file = file;
+    this.size = size;
+    this.offsets = offsets;
+    this.tags = tags;
+    this.ordinalsByXref = ordinalsByXref;
+    this.anselDecoded = anselDecoded;
+  }
+
+  /**
+   * Scans a GEDCOM file for its level-0 records. The records of an ANSEL-encoded file are decoded with
+   * {@link AnselReader} when they are read.
+   * @param gedcomFile the GEDCOM 5.5 file
+   * @return the index of the records in the file
+   */
+  public static GedcomRecordIndex build(File gedcomFile) throws IOException {
+    return build(gedcomFile, true);
+  }
+
+  /**
+   * Scans a GEDCOM file for its level-0 records.
+   * @param gedcomFile the GEDCOM 5.5 file
+   * @param decodeAnsel whether the records of an ANSEL-encoded file are decoded with {@link AnselReader} when they
+   *                    are read, rather than by the GEDCOM parser
+   * @return the index of the records in the file
+   */
+  public static GedcomRecordIndex build(File gedcomFile, boolean decodeAnsel) throws IOException {
+    long[] offsets = new long[1024];
+    String[] tags = new String[1024];
+    Map<String, Integer> ordinalsByXref = new HashMap<String, Integer>();
+    Map<String, String> tagPool = new HashMap<String, String>();
+    int size = 0;
+
+    byte[] buffer = new byte[BUFFER_SIZE];
+    byte[] line = new byte[MAX_TAG_LINE_LENGTH];
+    int length = 0;
+    boolean inLineBreak = false;
+    long lineStart = 0;
+    long position = 0;
+    try (InputStream in = new FileInputStream(gedcomFile)) {
+      int read = fill(in, buffer);
+      int start = 0;
+      if (read > 0 && (buffer[0] == (byte) 0xFE || buffer[0] == (byte) 0xFF)) {
+        throw new IOException("The record index does not support UTF-16 encoded GEDCOM files: " + gedcomFile);
+      }
+      if (read >= 3 && buffer[0] == (byte) 0xEF) {
+        // UTF-8 byte order mark; it stays part of the first record
+        start = 3;
+        lineStart = 3;
+      }
+
+      while (read > 0) {
+        for (int i = start; i < read; i++) {
+          byte b = buffer[i];
+          if (b == '\r' || b == '\n') {
+            if (!inLineBreak) {
+              inLineBreak = true;
+              if (isRecordLine(line, length)) {
+                if (size == offsets.length) {
+                  offsets = Arrays.copyOf(offsets, size * 2);
+                  tags = Arrays.copyOf(tags, size * 2);
+                }
+                size = addRecord(line, length, size == 0 ? 0 : lineStart, size, offsets, tags, ordinalsByXref, tagPool);
+              }
+            }
+          } else {
+            if (inLineBreak) {
+              inLineBreak = false;
+              lineStart = position + i;
+              length = 0;
+            }
+            if (length < line.length && (length > 0 || (b != ' ' && b != '\t'))) {
+              line[length++] = b;
+            }
+          }
+        }
+        position += read;
+        start = 0;
+        read = fill(in, buffer);
+      }
+
+      if (!inLineBreak && isRecordLine(line, length)) {
+        if (size == offsets.length) {
+          offsets = Arrays.copyOf(offsets, size * 2);
+          tags = Arrays.copyOf(tags, size * 2);
+        }
+        size = addRecord(line, length, size == 0 ? 0 : lineStart, size, offsets, tags, ordinalsByXref, tagPool);
+      }
+
+      offsets = Arrays.copyOf(offsets, size + 1);
+      offsets[size] = position;
+    }
+
+    boolean anselDecoded = decodeAnsel && AnselReader.isAnselEncoded(gedcomFile);
+    return new GedcomRecordIndex(gedcomFile, size, offsets, Arrays.copyOf(tags, size), ordinalsByXref, anselDecoded);
+  }
+
+  private static boolean isRecordLine(byte[] line, int length) {
+    return length > 1 && line[0] == '0' && (line[1] == ' ' || line[1] == '\t');
+  }
+
+  /**
+   * Records a level-0 line as the start of a record.
+   * @return the new number of records
+   */
+  private static int addRecord(byte[] line, int length, long offset, int size, long[] offsets, String[] tags,
+                               Map<String, Integer> ordinalsByXref, Map<String, String> tagPool) {
+    String[] fields = new String(line, 2, length - 2, StandardCharsets.ISO_8859_1).trim().split("[ \\t]+", 3);
+    String xref = null;
+    String tag = fields[0];
+    if (tag.startsWith("@") && fields.length > 1) {
+      xref = tag.substring(1, tag.length() - 1);
+      tag = fields[1];
+    }
+    // the parser reads tags case-insensitively
+    tag = tag.toUpperCase(Locale.ROOT);
+
+    String pooledTag = tagPool.get(tag);
+    if (pooledTag == null) {
+      tagPool.put(tag, tag);
+      pooledTag = tag;
+    }
+
+    offsets[size] = offset;
+    tags[size] = pooledTag;
+    if (xref != null) {
+      ordinalsByXref.put(xref, size);
+    }
+    return size + 1;
+  }
+
+  private static int fill(InputStream in, byte[] buffer) throws IOException {
+    int length = 0;
+    int read;
+    while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) != -1) {
+      length += read;
+    }
+    return length;
+  }
+
+  /**
+   * @return the indexed file
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @return whether the records are decoded with {@link AnselReader} before they are parsed
+   */
+  public boolean isAnselDecoded() {
+    return anselDecoded;
+  }
+
+  /**
+   * @return the number of level-0 records, including HEAD and TRLR
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param ordinal the position of the record in the file
+   * @return the tag of the record, e.g. INDI or FAM
+   */
+  public String getTag(int ordinal) {
+    return tags[ordinal];
+  }
+
+  /**
+   * @param ordinal the position of the record in the file
+   * @return the byte offset of the first line of the record
+   */
+  public long getStart(int ordinal) {
+    return offsets[ordinal];
+  }
+
+  /**
+   * @param ordinal the position of the record in the file
+   * @return the length in bytes of the record, including all of its lines
+   */
+  public long getLength(int ordinal) {
+    return offsets[ordinal + 1] - offsets[ordinal];
+  }
+
+  /**
+   * @param xref the xref of a record, without the surrounding @ signs
+   * @return the position of the record in the file, or -1 if there is no record with the xref
+   */
+  public int indexOf(String xref) {
+    Integer ordinal = ordinalsByXref.get(xref);
+    return ordinal == null ? -1 : ordinal;
+  }
+
+  /**
+   * @param tag a record tag, e.g. INDI
+   * @return the positions of the records with the given tag, in file order
+   */
+  public int[] getOrdinals(String tag) {
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (tag.equals(tags[i])) {
+        count++;
+      }
+    }
+
+    int[] ordinals = new int[count];
+    int index = 0;
+    for (int i = 0; i < size; i++) {
+      if (tag.equals(tags[i])) {
+        ordinals[index++] = i;
+      }
+    }
+    return ordinals;
+  }
+}
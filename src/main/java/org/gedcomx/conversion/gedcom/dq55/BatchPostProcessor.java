@@ -0,0 +1,53 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.util.List;
+
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.source.SourceDescription;
+
+/**
+ * A BatchPostProcessor maps information that is not mapped by the gedcom5-conversion code, like a
+ * {@link PostProcessor}, but for every entity type and a batch at a time. Each batch holds the entities mapped from
+ * a run of consecutive GEDCOM 5.5 records, paired with their records.
+ *
+ * Batches are post-processed on a pool of threads while the mapping goes on, so implementations must be
+ * thread-safe; a single batch is never handed to two threads. The entities of a batch reach the conversion result
+ * only after every post-processor has seen the batch, and in the order they were mapped.
+ *
+ * Pass post-processors to the GedcomMapper or PipelinedGedcomMapper constructor, or, from the command line, register
+ * them in <code>META-INF/services/org.gedcomx.conversion.gedcom.dq55.BatchPostProcessor</code> on the classpath.
+ */
+public interface BatchPostProcessor {
+
+  default void postProcessPersons(List<MappedEntity<Person>> persons) {
+  }
+
+  default void postProcessRelationships(List<MappedEntity<Relationship>> relationships) {
+  }
+
+  default void postProcessSourceDescriptions(List<MappedEntity<SourceDescription>> sourceDescriptions) {
+  }
+
+  /**
+   * @param agents the organizations mapped from repositories and the contributor mapped from the submitter
+   */
+  default void postProcessAgents(List<MappedEntity<Agent>> agents) {
+  }
+}
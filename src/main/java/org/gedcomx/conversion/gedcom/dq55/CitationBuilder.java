@@ -0,0 +1,82 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.gedcomx.common.ResourceReference;
+import org.gedcomx.source.CitationField;
+import org.gedcomx.source.SourceCitation;
+
+/**
+ * Builds one citation from the values of its template's fields, accumulating the citation's text as the fields are
+ * added.
+ */
+public class CitationBuilder {
+
+  private final CitationTemplate template;
+  private final List<CitationField> fields = new ArrayList<CitationField>();
+  private final StringBuilder text = new StringBuilder();
+
+  CitationBuilder(CitationTemplate template) {
+    this.template = template;
+  }
+
+  /**
+   * Adds a field to the citation; does nothing if the value is null.
+   * @param field a field of the template
+   * @param value the value of the field, or null
+   * @return this builder
+   */
+  public CitationBuilder field(String field, String value) {
+    if (value != null) {
+      CitationField citationField = new CitationField();
+      citationField.setName(template.getFieldName(field));
+      citationField.setValue(value);
+      fields.add(citationField);
+      template.appendValue(text, field, value);
+    }
+    return this;
+  }
+
+  /**
+   * @return whether no text has been added to the citation
+   */
+  public boolean isEmpty() {
+    return text.length() == 0;
+  }
+
+  /**
+   * Ends the text of the citation with the given character, if it has any text.
+   * @param terminator the character to end the text with
+   * @return this builder
+   */
+  public CitationBuilder terminate(char terminator) {
+    if (text.length() > 0) {
+      text.append(terminator);
+    }
+    return this;
+  }
+
+  public SourceCitation build() {
+    SourceCitation citation = new SourceCitation();
+    citation.setCitationTemplate(new ResourceReference(template.getUri()));
+    citation.setFields(fields);
+    citation.setValue(text.toString());
+    return citation;
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.gedcomx.common.URI;
+
+/**
+ * A citation template: the URI of the template, the names of its fields and how the field values are joined into
+ * the text of a citation. The field name URIs are created once, when the template is, and shared by every citation
+ * built from it.
+ *
+ * To render citations differently, subclass and override {@link #appendValue(StringBuilder, String, String)}, then
+ * set the template on the {@link MappingConfig}.
+ */
+public class CitationTemplate {
+
+  /**
+   * The template used for GEDCOM 5.5 source records and citations: the field values, in order, separated by commas.
+   */
+  public static final CitationTemplate GEDCOM5 = new CitationTemplate("gedcom5:citation-template",
+    "author", "title", "publication-facts", "call-number", "date", "page");
+
+  private final URI uri;
+  private final Map<String, URI> fieldNames;
+
+  /**
+   * @param uri the URI of the template
+   * @param fields the fields of the template; the URI of a field's name is the template URI, a slash and the field
+   */
+  public CitationTemplate(String uri, String... fields) {
+    this.uri = URI.create(uri);
+    this.fieldNames = new HashMap<String, URI>(fields.length * 2);
+    for (String field : fields) {
+      this.fieldNames.put(field, URI.create(uri + '/' + field));
+    }
+  }
+
+  public URI getUri() {
+    return uri;
+  }
+
+  /**
+   * @param field a field of the template
+   * @return the URI naming the field
+   * @throws IllegalArgumentException if the field is not one of the template's
+   */
+  public URI getFieldName(String field) {
+    URI fieldName = fieldNames.get(field);
+    if (fieldName == null) {
+      throw new IllegalArgumentException("Citation template " + uri + " has no field " + field);
+    }
+    return fieldName;
+  }
+
+  /**
+   * Appends the value of a field to the text of a citation.
+   * @param text the text of the citation so far
+   * @param field the field
+   * @param value the value of the field
+   */
+  protected void appendValue(StringBuilder text, String field, String value) {
+    if (text.length() > 0) {
+      text.append(", ");
+    }
+    text.append(value);
+  }
+
+  /**
+   * @return a builder for one citation that uses this template
+   */
+  public CitationBuilder newCitation() {
+    return new CitationBuilder(this);
+  }
+}
@@ -23,6 +23,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.regex.Pattern;
 
 import org.folg.gedcom.model.Change;
@@ -33,6 +34,8 @@ import org.gedcomx.agent.Agent;
 import org.gedcomx.common.ResourceReference;
 import org.gedcomx.common.TextValue;
 import org.gedcomx.common.URI;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.PlaceReference;
 import org.gedcomx.conversion.GedcomxConversionResult;
 import org.gedcomx.source.CitationField;
 import org.gedcomx.source.SourceDescription;
@@ -62,6 +65,22 @@ public class CommonMapper {
    * @return GedcomX SourceReferences
    */
   public static List<SourceReference> toSourcesAndSourceReferences(List<SourceCitation> dqSources, GedcomxConversionResult result) throws IOException {
+    return toSourcesAndSourceReferences(dqSources, null, result);
+  }
+
+  /**
+   * Create a list of GedcomX SourceReference based on the ged5 SourceCitations. If the mapping config asks for
+   * content-addressed citations, each citation description gets an id derived from the citation's content and is
+   * added to the result only the first time it is seen; later citations with the same content only reference it. A
+   * different citation whose content hashes to an id already in use gets a sequential id instead.
+   * @param dqSources Gedcom 5 source citations
+   * @param mappingConfig the mapping config; may be null
+   * @return GedcomX SourceReferences
+   */
+  public static List<SourceReference> toSourcesAndSourceReferences(List<SourceCitation> dqSources, MappingConfig mappingConfig, GedcomxConversionResult result) throws IOException {
+    boolean contentAddressed = mappingConfig != null && mappingConfig.isContentAddressedCitations();
+    boolean auditing = isAuditing(mappingConfig);
+    CitationTemplate citationTemplate = mappingConfig != null ? mappingConfig.getCitationTemplate() : CitationTemplate.GEDCOM5;
     List<SourceReference> sourceReferences = new ArrayList<SourceReference>(dqSources.size());
 
     int index = 0;
@@ -72,48 +91,44 @@ public class CommonMapper {
         boolean sourceDescriptionHasData = false;
         boolean sourceReferenceHasData = false;
         SourceDescription gedxSourceDescription = new SourceDescription();
-
-        org.gedcomx.source.SourceCitation citation = new org.gedcomx.source.SourceCitation();
-        citation.setCitationTemplate(new ResourceReference(URI.create("gedcom5:citation-template")));
-        citation.setFields(new ArrayList<CitationField>());
-        citation.setValue("");
+        org.gedcomx.source.SourceCitation citation = null;
+        List<String> citationContent = null;
 
         if (dqSource.getRef() != null) {
-          gedxSourceDescription.setId(dqSource.getRef() + "-" + Long.toHexString(SequentialIdentifierGenerator.getNextId()));
+          citationContent = Arrays.asList(dqSource.getRef(), dqSource.getPage(), dqSource.getDate(), dqSource.getText());
+          gedxSourceDescription.setId(dqSource.getRef() + "-" + (contentAddressed
+            ? toContentHash(citationContent.toArray(new String[citationContent.size()]))
+            : Long.toHexString(SequentialIdentifierGenerator.getNextId())));
 
           SourceReference componentOf = new SourceReference();
           componentOf.setDescriptionRef(URI.create(CommonMapper.getSourceDescriptionReference(dqSource.getRef())));
           gedxSourceDescription.setComponentOf(componentOf);
           sourceDescriptionHasData = true;
 
-          if (dqSource.getDate() != null) {
-            CitationField field = new CitationField();
-            field.setName(URI.create("gedcom5:citation-template/date"));
-            field.setValue(dqSource.getDate());
-            citation.getFields().add(field);
-            citation.setValue(citation.getValue() + (citation.getValue().length() > 0 ? ", " + dqSource.getDate() : dqSource.getDate()));
-          }
-
-          if (dqSource.getPage() != null) {
-            CitationField field = new CitationField();
-            field.setName(URI.create("gedcom5:citation-template/page"));
-            field.setValue(dqSource.getPage());
-            citation.getFields().add(field);
-            citation.setValue(citation.getValue() + (citation.getValue().length() > 0 ? ", " + dqSource.getPage() : dqSource.getPage()));
-          }
+          citation = citationTemplate.newCitation()
+            .field("date", dqSource.getDate())
+            .field("page", dqSource.getPage())
+            .build();
         } else if (dqSource.getValue() != null) {
-          gedxSourceDescription.setId("SOUR-" + Long.toHexString(SequentialIdentifierGenerator.getNextId()));
+          citationContent = Arrays.asList(dqSource.getValue(), dqSource.getText());
+          gedxSourceDescription.setId("SOUR-" + (contentAddressed
+            ? toContentHash(citationContent.toArray(new String[citationContent.size()]))
+            : Long.toHexString(SequentialIdentifierGenerator.getNextId())));
 
+          citation = new org.gedcomx.source.SourceCitation();
+          citation.setFields(new ArrayList<CitationField>());
           citation.setValue(dqSource.getValue());
-          citation.setCitationTemplate(null);
           sourceDescriptionHasData = true;
         }
 
+        // may give the description a sequential id instead, if a different citation has the same content hash
+        boolean addSourceDescription = sourceDescriptionHasData
+          && (!contentAddressed || mappingConfig.addCitationDescription(gedxSourceDescription, citationContent));
         String entryName = CommonMapper.getSourceDescriptionReference(gedxSourceDescription.getId());
         SourceReference gedxSourceReference = new SourceReference();
         gedxSourceReference.setDescriptionRef(URI.create(entryName));
 
-        if (dqSource.getText() != null) {
+        if (auditing && dqSource.getText() != null) {
           logger.warn(ConversionContext.getContext(), "GEDCOM X does not currently support text extracted from a source.");
           // dqSource.getText(); // see GEDCOM X issue 121 // TODO: address when the associated issue is resolved; log for now
           // sourceDescriptionHasData = true;
@@ -125,19 +140,23 @@ public class CommonMapper {
           sourceReferenceHasData = true;
         }
 
-        int cntNotes = dqSource.getNotes().size() + dqSource.getNoteRefs().size();
-        if (cntNotes > 0) {
-          logger.warn(ConversionContext.getContext(), "Did not process {} notes or references to notes.", cntNotes);
-        }
+        if (auditing) {
+          int cntNotes = dqSource.getNotes().size() + dqSource.getNoteRefs().size();
+          if (cntNotes > 0) {
+            logger.warn(ConversionContext.getContext(), "Did not process {} notes or references to notes.", cntNotes);
+          }
 
-        int cntMedia = dqSource.getMedia().size() + dqSource.getMediaRefs().size();
-        if (cntMedia > 0) {
-          logger.warn(ConversionContext.getContext(), "Did not process {} media items or references to media items.", cntMedia);
+          int cntMedia = dqSource.getMedia().size() + dqSource.getMediaRefs().size();
+          if (cntMedia > 0) {
+            logger.warn(ConversionContext.getContext(), "Did not process {} media items or references to media items.", cntMedia);
+          }
         }
 
         if (sourceDescriptionHasData) {
-          gedxSourceDescription.setCitations(Arrays.asList(citation));
-          result.addSourceDescription(gedxSourceDescription);
+          if (addSourceDescription) {
+            gedxSourceDescription.setCitations(Arrays.asList(citation));
+            result.addSourceDescription(gedxSourceDescription);
+          }
           sourceReferenceHasData = true;
         }
 
@@ -145,7 +164,7 @@ public class CommonMapper {
           sourceReferences.add(gedxSourceReference);
         }
 
-        if ((!sourceDescriptionHasData) && (!sourceReferenceHasData)) {
+        if (auditing && (!sourceDescriptionHasData) && (!sourceReferenceHasData)) {
           logger.warn(ConversionContext.getContext(), "Source citation did not have any data that was mapped into GEDCOM X");
         }
       } finally {
@@ -156,6 +175,87 @@ public class CommonMapper {
     return sourceReferences.size() > 0 ? sourceReferences : null;
   }
 
+  /**
+   * Create a GedcomX PlaceReference for the place of a fact. If the mapping config asks for place descriptions, the
+   * place is normalized, given a place description with an id derived from the normalized place, and that
+   * description is added to the result only the first time the place is seen; every reference to the place points
+   * to it.
+   * @param place the place, trimmed
+   * @param mappingConfig the mapping config; may be null
+   * @return GedcomX PlaceReference
+   */
+  public static PlaceReference toPlaceReference(String place, MappingConfig mappingConfig, GedcomxConversionResult result) throws IOException {
+    PlaceReference placeReference = new PlaceReference();
+    placeReference.setOriginal(place);
+    if (mappingConfig == null || !mappingConfig.isPlaceDescriptions()) {
+      return placeReference;
+    }
+
+    String normalizedPlace = normalizePlace(place);
+    String id = "PLAC-" + toContentHash(normalizedPlace.toLowerCase(Locale.ROOT));
+    if (mappingConfig.addPlaceDescriptionId(id)) {
+      // the first spelling seen names the place; others differ only in case and spacing
+      PlaceDescription placeDescription = new PlaceDescription();
+      placeDescription.setId(id);
+      placeDescription.setNames(Arrays.asList(new TextValue(normalizedPlace)));
+      result.addPlaceDescription(placeDescription);
+    }
+    placeReference.setDescriptionRef(URI.create(getPlaceDescriptionReference(id)));
+    return placeReference;
+  }
+
+  /**
+   * Collapses runs of whitespace and puts exactly one space after each comma, e.g. "Gent ,Oost-Vlaanderen" becomes
+   * "Gent, Oost-Vlaanderen".
+   */
+  static String normalizePlace(String place) {
+    StringBuilder normalized = new StringBuilder(place.length());
+    boolean space = false;
+    for (int i = 0; i < place.length(); i++) {
+      char c = place.charAt(i);
+      if (Character.isWhitespace(c)) {
+        space = normalized.length() > 0;
+      } else if (c == ',') {
+        normalized.append(',');
+        space = true;
+      } else {
+        if (space && normalized.length() > 0) {
+          normalized.append(' ');
+        }
+        normalized.append(c);
+        space = false;
+      }
+    }
+    return normalized.toString();
+  }
+
+  /**
+   * @param mappingConfig the mapping config; may be null
+   * @return whether to check for data that is not mapped and log warnings about it
+   */
+  static boolean isAuditing(MappingConfig mappingConfig) {
+    return mappingConfig == null || mappingConfig.isAuditing();
+  }
+
+  /**
+   * Hashes the given values (64-bit FNV-1a; null and empty values hash differently) into a hexadecimal string.
+   */
+  static String toContentHash(String... values) {
+    long hash = 0xcbf29ce484222325L;
+    for (String value : values) {
+      if (value == null) {
+        hash = (hash ^ 0xff) * 0x100000001b3L;
+        continue;
+      }
+      for (int i = 0; i < value.length(); i++) {
+        hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+      }
+      // a separator, so that moving characters from one value to the next changes the hash
+      hash = (hash ^ 0xfffe) * 0x100000001b3L;
+    }
+    return Long.toHexString(hash);
+  }
+
   public static java.util.Date toDate(Change dqChange) {
     if (dqChange == null) {
       return null;
@@ -252,6 +352,14 @@ public class CommonMapper {
     return "#" + gedxDescriptionId;
   }
 
+  public static String getPlaceDescriptionReference(String gedxDescriptionId) {
+    return "#" + gedxDescriptionId;
+  }
+
+  public static String getDocumentReference(String id) {
+    return "#" + id;
+  }
+
   public static String getContributorReference(String id) {
     return "#" + id;
   }
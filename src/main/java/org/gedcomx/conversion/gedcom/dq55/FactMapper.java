@@ -17,18 +17,19 @@
 package org.gedcomx.conversion.gedcom.dq55;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
 
 import org.folg.gedcom.model.EventFact;
 import org.folg.gedcom.model.GedcomTag;
 import org.folg.gedcom.model.LdsOrdinance;
-import org.gedcomx.common.Qualifier;
 import org.gedcomx.common.URI;
 import org.gedcomx.conclusion.Date;
 import org.gedcomx.conclusion.Fact;
-import org.gedcomx.conclusion.PlaceReference;
 import org.gedcomx.conversion.GedcomxConversionResult;
 import org.gedcomx.types.FactType;
 import org.slf4j.Logger;
@@ -43,6 +44,9 @@ public class FactMapper {
   private static final Logger logger = LoggerFactory.getLogger(CommonMapper.class);
   static final Map<String, FactType> factMap = new HashMap<String, FactType>();
   static final Map<String, OrdinanceType> ordinanceMap = new HashMap<String, OrdinanceType>();
+  private static final TagTable<FactTagHandler> tagHandlers;
+  private static final TagTable<URI> ordinanceTypes;
+  private static final URI COMPLETED_STATUS = OrdinanceStatus.Completed.toQNameURI();
 
   static {
     // Attributes (Short and long tag names, from the standard)
@@ -170,19 +174,40 @@ public class FactMapper {
     ordinanceMap.put("ENDL", OrdinanceType.Endowment);
     ordinanceMap.put("SLGS", OrdinanceType.SealingToSpouse);
     ordinanceMap.put("SLGC", OrdinanceType.SealingChildToParents);
+
+    // resolve the standard tags and the custom tag handlers into a single dispatch table
+    Map<String, FactTagHandler> handlers = new HashMap<String, FactTagHandler>();
+    for (Map.Entry<String, FactType> entry : factMap.entrySet()) {
+      handlers.put(entry.getKey(), new KnownTypeHandler(entry.getValue()));
+    }
+    for (FactTagHandler handler : ServiceLoader.load(FactTagHandler.class)) {
+      for (String tag : handler.getTags()) {
+        handlers.put(tag.trim().toUpperCase(), handler);
+      }
+      logger.info("Loaded handler {} for tags {}", handler.getClass().getName(), handler.getTags());
+    }
+    tagHandlers = new TagTable<FactTagHandler>(handlers);
+
+    Map<String, URI> ordinanceTypeUris = new HashMap<String, URI>();
+    for (Map.Entry<String, OrdinanceType> entry : ordinanceMap.entrySet()) {
+      ordinanceTypeUris.put(entry.getKey(), entry.getValue().toQNameURI());
+    }
+    ordinanceTypes = new TagTable<URI>(ordinanceTypeUris);
   }
 
-  static Fact toFact(EventFact dqFact, GedcomxConversionResult result) throws IOException {
+  static Fact toFact(EventFact dqFact, MappingConfig mappingConfig, GedcomxConversionResult result) throws IOException {
     //dqFact.getType();
     if(dqFact.getTag() == null) {
       logger.warn(ConversionContext.getContext(), "Empty tag encountered");
     }
     else {
-      String upperTag = dqFact.getTag().trim().toUpperCase();
-      FactType factType = factMap.get(upperTag);
-      if(factType == null) {
+      FactTagHandler tagHandler = mappingConfig == null ? null : mappingConfig.getFactTagHandler(dqFact.getTag());
+      if(tagHandler == null) {
+        tagHandler = tagHandlers.get(dqFact.getTag());
+      }
+      if(tagHandler == null) {
         // We don't show a warning for SEX since it is handled as gender in PersonMapper
-        if(!upperTag.equals("SEX")) {
+        if(!dqFact.getTag().trim().equalsIgnoreCase("SEX")) {
           logger.warn(ConversionContext.getContext(), "Ignoring tag: {}", dqFact.getTag());
         }
       } else {
@@ -211,76 +236,33 @@ public class FactMapper {
         }
 
         Fact gedxFact = new Fact();
-        gedxFact.setKnownType(factType);
 
         if(factDate != null) {
-          Date date = new Date();
-          date.setOriginal(factDate);
-          gedxFact.setDate(date);
-        }
-
-        if(factPlace != null) {
-          PlaceReference place = new PlaceReference();
-          place.setOriginal(factPlace);
-          gedxFact.setPlace(place);
+          gedxFact.setDate(toDate(factDate, mappingConfig));
         }
 
         if(factValue != null) {
           gedxFact.setValue(factValue);
         }
 
-        // add source references to the fact
-        gedxFact.setSources(CommonMapper.toSourcesAndSourceReferences(dqFact.getSourceCitations(), result));
-
-        if (dqFact.getCause() != null) {
-          logger.warn(ConversionContext.getContext(), "CAUS was ignored.");
-        }
-
-        if (dqFact.getAddress() != null) {
-          logger.warn(ConversionContext.getContext(), "Address was ignored: {}", dqFact.getAddress().getDisplayValue());
-        }
-
-        if (dqFact.getEmail() != null) {
-          logger.warn(ConversionContext.getContext(), "e-mail ({}) was ignored.", dqFact.getEmail());
-        }
-        if (dqFact.getFax() != null) {
-          logger.warn(ConversionContext.getContext(), "fax ({}) was ignored.", dqFact.getFax());
-        }
-        if (dqFact.getPhone() != null) {
-          logger.warn(ConversionContext.getContext(), "phone ({}) was ignored.", dqFact.getPhone());
-        }
-        if (dqFact.getWww() != null) {
-          logger.warn(ConversionContext.getContext(), "www ({}) was ignored.", dqFact.getWww());
-        }
-
-        if (dqFact.getUid() != null) {
-          Marker uidContext = ConversionContext.getDetachedMarker(dqFact.getUidTag());
-          ConversionContext.addReference(uidContext);
-          logger.warn(ConversionContext.getContext(), "UID ({}) was ignored.", dqFact.getUid());
-          ConversionContext.removeReference(uidContext);
+        if (CommonMapper.isAuditing(mappingConfig)) {
+          auditFact(dqFact, mappingConfig);
         }
 
-        if (dqFact.getRin() != null) {
-          logger.warn(ConversionContext.getContext(), "RIN ({}) was ignored.", dqFact.getRin());
+        // ask the handler before mapping the place, sources and notes, which may add entities to the result
+        if (!tagHandler.toFact(dqFact, gedxFact, result)) {
+          return null;
         }
 
-        int cntNotes = dqFact.getNotes().size() + dqFact.getNoteRefs().size();
-        if (cntNotes > 0) {
-          logger.warn(ConversionContext.getContext(), "Did not process {} notes or references to notes.", cntNotes);
+        if(factPlace != null) {
+          gedxFact.setPlace(CommonMapper.toPlaceReference(factPlace, mappingConfig, result));
         }
 
-        int cntMedia = dqFact.getMedia().size() + dqFact.getMediaRefs().size();
-        if (cntMedia > 0) {
-          logger.warn(ConversionContext.getContext(), "Did not process {} media items or references to media items.", cntMedia);
-        }
+        // add source references to the fact
+        gedxFact.setSources(CommonMapper.toSourcesAndSourceReferences(dqFact.getSourceCitations(), mappingConfig, result));
 
-        if (dqFact.getExtensions().size() > 0) {
-          for (String extensionCategory : dqFact.getExtensions().keySet()) {
-            for (GedcomTag tag : ((List<GedcomTag>) dqFact.getExtension(extensionCategory))) {
-              logger.warn(ConversionContext.getContext(), "Unsupported ({}): {}", extensionCategory, tag);
-              // DATA tag (and subordinates) in GEDCOM 5.5. SOURCE_RECORD not being looked for or parsed by DallanQ code
-            }
-          }
+        if (NoteMapper.isMapped(mappingConfig)) {
+          gedxFact.setNotes(NoteMapper.toNotes(dqFact.getNotes(), dqFact.getNoteRefs(), mappingConfig, result));
         }
 
         return gedxFact;
@@ -290,68 +272,130 @@ public class FactMapper {
     return null;
   }
 
-  static Fact toOrdinance(LdsOrdinance dqOrdinance) throws IOException {
-    String type = dqOrdinance.getTag();
-    if (type == null) {
-      return null;
+  /**
+   * Checks the fact for data that is not mapped and logs a warning for each.
+   */
+  private static void auditFact(EventFact dqFact, MappingConfig mappingConfig) {
+    if (dqFact.getCause() != null) {
+      logger.warn(ConversionContext.getContext(), "CAUS was ignored.");
     }
-    Fact ordinance = new Fact();
-    ordinance.setType(getType(type).toQNameURI());
-    if (dqOrdinance.getDate() != null) {
-      Date ordinanceDate = new Date();
-      ordinanceDate.setOriginal(dqOrdinance.getDate());
-      ordinance.setDate(ordinanceDate);
+
+    if (dqFact.getAddress() != null) {
+      logger.warn(ConversionContext.getContext(), "Address was ignored: {}", dqFact.getAddress().getDisplayValue());
     }
-    if (dqOrdinance.getTemple() != null) {
-      ordinance.addQualifier(new Qualifier(URI.create("gedcom:TEMP"), dqOrdinance.getTemple()));
+
+    if (dqFact.getEmail() != null) {
+      logger.warn(ConversionContext.getContext(), "e-mail ({}) was ignored.", dqFact.getEmail());
     }
-    if (dqOrdinance.getPlace() != null) {
-      ordinance.place(new PlaceReference().original(dqOrdinance.getPlace()));
+    if (dqFact.getFax() != null) {
+      logger.warn(ConversionContext.getContext(), "fax ({}) was ignored.", dqFact.getFax());
+    }
+    if (dqFact.getPhone() != null) {
+      logger.warn(ConversionContext.getContext(), "phone ({}) was ignored.", dqFact.getPhone());
+    }
+    if (dqFact.getWww() != null) {
+      logger.warn(ConversionContext.getContext(), "www ({}) was ignored.", dqFact.getWww());
     }
-    if (dqOrdinance.getDate() != null || dqOrdinance.getStatus() != null) {
-      OrdinanceStatus ordinanceStatus = mapOrdinanceStatus(dqOrdinance.getStatus());
-      // all the ordinances I have are complete - forcing this
-      ordinanceStatus = OrdinanceStatus.Completed;
 
-      if (ordinanceStatus != null) {
-        ordinance.addQualifier(new Qualifier(ordinanceStatus.toQNameURI()));
-      }
+    if (dqFact.getUid() != null) {
+      Marker uidContext = ConversionContext.getDetachedMarker(dqFact.getUidTag());
+      ConversionContext.addReference(uidContext);
+      logger.warn(ConversionContext.getContext(), "UID ({}) was ignored.", dqFact.getUid());
+      ConversionContext.removeReference(uidContext);
     }
-    return ordinance;
-  }
 
-  private static OrdinanceStatus mapOrdinanceStatus(String dqOrdinanceStatus) {
-    if (dqOrdinanceStatus == null || dqOrdinanceStatus.isEmpty()) {
-      return null;
+    if (dqFact.getRin() != null) {
+      logger.warn(ConversionContext.getContext(), "RIN ({}) was ignored.", dqFact.getRin());
     }
-    if (dqOrdinanceStatus.equalsIgnoreCase("BIC")) {
-      return OrdinanceStatus.NotNeeded;
+
+    int cntNotes = dqFact.getNotes().size() + dqFact.getNoteRefs().size();
+    if (cntNotes > 0 && !NoteMapper.isMapped(mappingConfig)) {
+      logger.warn(ConversionContext.getContext(), "Did not process {} notes or references to notes.", cntNotes);
     }
-    if (dqOrdinanceStatus.equalsIgnoreCase("CANCELED")) {
-      return OrdinanceStatus.NotAvailable;
+
+    int cntMedia = dqFact.getMedia().size() + dqFact.getMediaRefs().size();
+    if (cntMedia > 0) {
+      logger.warn(ConversionContext.getContext(), "Did not process {} media items or references to media items.", cntMedia);
     }
-    if (dqOrdinanceStatus.equalsIgnoreCase("CHILD") || dqOrdinanceStatus.equalsIgnoreCase("INFANT") || dqOrdinanceStatus.equalsIgnoreCase("STILLBORN")) {
-      return OrdinanceStatus.NotNeeded;
+
+    if (dqFact.getExtensions().size() > 0) {
+      for (String extensionCategory : dqFact.getExtensions().keySet()) {
+        for (GedcomTag tag : ((List<GedcomTag>) dqFact.getExtension(extensionCategory))) {
+          logger.warn(ConversionContext.getContext(), "Unsupported ({}): {}", extensionCategory, tag);
+          // DATA tag (and subordinates) in GEDCOM 5.5. SOURCE_RECORD not being looked for or parsed by DallanQ code
+        }
+      }
     }
-    if (dqOrdinanceStatus.equalsIgnoreCase("COMPLETED") || dqOrdinanceStatus.equalsIgnoreCase("PRE-1970")) {
-      return OrdinanceStatus.Completed;
+  }
+
+  /**
+   * @param original a GEDCOM 5.5 date value
+   * @param mappingConfig the config whose date parser caches the dates of the conversion; may be null
+   * @return the date, with its formal value if it is a well-formed GEDCOM date
+   */
+  static Date toDate(String original, MappingConfig mappingConfig) {
+    Date date = new Date();
+    date.setOriginal(original);
+    date.setFormal(mappingConfig == null ? GedcomDateParser.parse(original) : mappingConfig.getDateParser().toFormal(original));
+    return date;
+  }
+
+  /**
+   * Maps an LDS ordinance straight to its GEDCOM X extension element. The type and status URIs are shared, so the
+   * only objects allocated are the ordinance and its date. Problems are reported as warnings in the conversion
+   * context.
+   *
+   * @return the ordinance, or null if its tag is not a known ordinance
+   */
+  static Ordinance toOrdinanceElement(LdsOrdinance dqOrdinance, MappingConfig mappingConfig) {
+    URI type = dqOrdinance.getTag() == null ? null : ordinanceTypes.get(dqOrdinance.getTag());
+    if (type == null) {
+      logger.warn(ConversionContext.getContext(), "Unknown ordinance tag {} ignored.", dqOrdinance.getTag());
+      return null;
     }
-    if (dqOrdinanceStatus.equalsIgnoreCase("CLEARED") || dqOrdinanceStatus.equalsIgnoreCase("QUALIFIED")) {
-      return OrdinanceStatus.Ready;
+
+    Ordinance ordinance = new Ordinance();
+    ordinance.setType(type);
+
+    String date = dqOrdinance.getDate();
+    if (date != null) {
+      ordinance.setCompleteDate(toDate(date, mappingConfig));
     }
-    if (dqOrdinanceStatus.equalsIgnoreCase("DNS") || dqOrdinanceStatus.equalsIgnoreCase("DNS/CAN")) {
-      return OrdinanceStatus.NotReady;
+    if (date == null || date.length() < 5) {
+      logger.warn(ConversionContext.getContext(), "Missing or partial date ({}) for the {} ordinance.", date, dqOrdinance.getTag());
     }
-    if (dqOrdinanceStatus.equalsIgnoreCase("SUBMITTED")) {
-      return OrdinanceStatus.Reserved;
+
+    ordinance.setTempleCode(dqOrdinance.getTemple());
+    if (date != null || dqOrdinance.getStatus() != null) {
+      // all the ordinances I have are complete - forcing this
+      ordinance.setStatus(COMPLETED_STATUS);
     }
-    if (dqOrdinanceStatus.equalsIgnoreCase("UNCLEARED")) {
-      return OrdinanceStatus.NeedMoreInformation;
+    if (ordinance.getTempleCode() == null || ordinance.getStatus() == null) {
+      logger.warn(ConversionContext.getContext(), "Missing temple code or status for the {} ordinance.", dqOrdinance.getTag());
     }
-    return OrdinanceStatus.OTHER;
+
+    return ordinance;
   }
 
-  private static OrdinanceType getType(String value) {
-    return ordinanceMap.get(value);
+  /**
+   * The handler of the standard tags: sets the fact type the tag maps to.
+   */
+  private static final class KnownTypeHandler implements FactTagHandler {
+    private final FactType factType;
+
+    KnownTypeHandler(FactType factType) {
+      this.factType = factType;
+    }
+
+    @Override
+    public Set<String> getTags() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public boolean toFact(EventFact dqFact, Fact gedxFact, GedcomxConversionResult result) {
+      gedxFact.setKnownType(factType);
+      return true;
+    }
   }
 }
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.folg.gedcom.model.EventFact;
+import org.gedcomx.conclusion.Fact;
+import org.gedcomx.conversion.GedcomxConversionResult;
+
+/**
+ * Maps facts with custom (e.g. vendor extension) tags such as _DNA, which are otherwise ignored.
+ *
+ * To add a handler, implement this interface and list the class in
+ * META-INF/services/org.gedcomx.conversion.gedcom.dq55.FactTagHandler on the classpath, or add it to a single
+ * {@link MappingConfig}. The registered handlers are loaded once, when the {@link FactMapper} class is initialized; a
+ * handler for a standard tag replaces the standard mapping of that tag. Handlers are called concurrently when records
+ * are mapped on several threads.
+ */
+public interface FactTagHandler {
+
+  /**
+   * @return the tags this handler maps; case and surrounding whitespace are ignored
+   */
+  Set<String> getTags();
+
+  /**
+   * Completes the mapping of a fact with one of the handled tags.
+   * @param dqFact the GEDCOM 5.5 fact
+   * @param gedxFact the GEDCOM X fact, with the date and value already mapped; the place, source references and notes
+   *                 are mapped only if the fact is kept
+   * @param result the conversion result, for any further entities the fact maps to
+   * @return true to keep the fact, false to drop it
+   */
+  boolean toFact(EventFact dqFact, Fact gedxFact, GedcomxConversionResult result) throws IOException;
+}
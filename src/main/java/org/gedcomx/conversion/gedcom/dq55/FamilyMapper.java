@@ -16,8 +16,6 @@
 package org.gedcomx.conversion.gedcom.dq55;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.Date;
 import java.util.List;
 
 import org.folg.gedcom.model.ChildRef;
@@ -26,8 +24,6 @@ import org.folg.gedcom.model.Family;
 import org.folg.gedcom.model.Gedcom;
 import org.folg.gedcom.model.GedcomTag;
 import org.folg.gedcom.model.LdsOrdinance;
-import org.folg.gedcom.model.ParentFamilyRef;
-import org.folg.gedcom.model.Person;
 import org.folg.gedcom.model.SpouseRef;
 import org.gedcomx.conclusion.Fact;
 import org.gedcomx.conclusion.Relationship;
@@ -50,7 +46,24 @@ public class FamilyMapper {
     this.mappingConfig = mappingConfig;
   }
 
+  /**
+   * Maps a family, building the family membership index of the file for this one call; {@link GedcomMapper} builds it
+   * once per conversion instead.
+   * @param dqFamily the family
+   * @param dqGedcom the GEDCOM file of the family; may be null
+   * @param result the conversion result
+   */
   public void toRelationship(Family dqFamily, Gedcom dqGedcom, GedcomxConversionResult result) throws IOException {
+    toRelationship(dqFamily, dqGedcom == null ? null : new FamilyMembershipIndex(dqGedcom), result);
+  }
+
+  /**
+   * Maps a family using an already built family membership index.
+   * @param dqFamily the family
+   * @param familyMembership the family links of the individuals in the file; may be null
+   * @param result the conversion result
+   */
+  void toRelationship(Family dqFamily, FamilyMembershipIndex familyMembership, GedcomxConversionResult result) throws IOException {
     String dqFamilyId = dqFamily.getId();
     String gedxFamilyId = mappingConfig.createId(dqFamilyId);
 
@@ -63,33 +76,31 @@ public class FamilyMapper {
     String wifeId = (wives.size() > 0) ? mappingConfig.createId(wives.get(0).getRef()) : null;
     Relationship coupleRelationship = null;
 
-    Date lastModified = CommonMapper.toDate(dqFamily.getChange()); //todo: set the timestamp on the attribution?
-
     if ( husbandId != null && wifeId != null) {
       coupleRelationship = toRelationship(gedxFamilyId, husbandId, wifeId, RelationshipType.Couple);
       result.addRelationship(coupleRelationship);
     }
 
     for (ChildRef child : dqFamily.getChildRefs()) {
-      String childId = mappingConfig.createId(child.getRef());
+      String dqChildId = child.getRef();
+      String childId = mappingConfig.createId(dqChildId);
 
-      Person dqChild = (dqGedcom == null) ? null : dqGedcom.getPerson(childId);
-      List<ParentFamilyRef> childToFamilyLinks;
-      if (dqChild != null) {
-        childToFamilyLinks = dqChild.getParentFamilyRefs();
+      String pedigree;
+      if (familyMembership != null && familyMembership.containsPerson(dqChildId)) {
+        pedigree = familyMembership.getPedigree(dqChildId, dqFamilyId);
       } else {
-        logger.warn(ConversionContext.getContext(), "Could not find referenced child (@{}@ INDI).", childId);
-        childToFamilyLinks = Collections.emptyList();
+        logger.warn(ConversionContext.getContext(), "Could not find referenced child (@{}@ INDI).", dqChildId);
+        pedigree = null;
       }
 
       if (husbandId != null) {
         Relationship gedxRelationship = toRelationship(gedxFamilyId, husbandId, childId, RelationshipType.ParentChild);
-        addFacts(gedxRelationship, dqFamilyId, childToFamilyLinks);
+        addFacts(gedxRelationship, pedigree);
         result.addRelationship(gedxRelationship);
       }
       if (wifeId != null) {
         Relationship gedxRelationship = toRelationship(gedxFamilyId, wifeId, childId, RelationshipType.ParentChild);
-        addFacts(gedxRelationship, dqFamilyId, childToFamilyLinks);
+        addFacts(gedxRelationship, pedigree);
         result.addRelationship(gedxRelationship);
       }
     }
@@ -100,7 +111,7 @@ public class FamilyMapper {
       ConversionContext.addReference(factContext);
 
       if (coupleRelationship != null) {
-        Fact fact = FactMapper.toFact(eventFact, result);
+        Fact fact = FactMapper.toFact(eventFact, mappingConfig, result);
         coupleRelationship.addFact(fact);
       } else {
         logger.warn(ConversionContext.getContext(), "The GEDCOM X converter only supports the {} fact in the presence of a couple relationship.", eventFact.getTag());
@@ -110,7 +121,10 @@ public class FamilyMapper {
     }
 
     if (coupleRelationship != null) {
-      coupleRelationship.setSources(CommonMapper.toSourcesAndSourceReferences(dqFamily.getSourceCitations(), result));
+      coupleRelationship.setSources(CommonMapper.toSourcesAndSourceReferences(dqFamily.getSourceCitations(), mappingConfig, result));
+      if (mappingConfig.isNotes()) {
+        coupleRelationship.setNotes(NoteMapper.toNotes(dqFamily.getNotes(), dqFamily.getNoteRefs(), mappingConfig, result));
+      }
     } else {
       int size = dqFamily.getSourceCitations().size();
       if (size > 0) {
@@ -124,20 +138,9 @@ public class FamilyMapper {
       ConversionContext.addReference(ordinanceContext);
 
       if (coupleRelationship != null) {
-        Fact ordinanceFact = FactMapper.toOrdinance(ldsOrdinance);
-        if(ordinanceFact != null) {
-//        This ordinance is still a Fact - and it needs to be Ordinance
-//        coupleRelationship.addFact(ordinance);
-          try {
-            Ordinance ordinance = new Ordinance();
-            ordinance.setCompleteDate(ordinanceFact.getDate());
-            ordinance.setTempleCode(ordinanceFact.getQualifiers().get(0).getValue());
-            ordinance.setStatus(ordinanceFact.getQualifiers().get(1).getName());
-            ordinance.setType(ordinanceFact.getType());
-            coupleRelationship.addExtensionElement(ordinance);
-          } catch (Exception e) {
-            logger.error("FamilyMapper.toRelationship() exception:{} - dqFamilyId:{}", e.getMessage(), dqFamilyId);
-          }
+        Ordinance ordinance = FactMapper.toOrdinanceElement(ldsOrdinance, mappingConfig);
+        if(ordinance != null) {
+          coupleRelationship.addExtensionElement(ordinance);
         }
       }
       else {
@@ -147,8 +150,22 @@ public class FamilyMapper {
       ConversionContext.removeReference(ordinanceContext);
     }
 
+    if (CommonMapper.isAuditing(mappingConfig)) {
+      auditFamily(dqFamily, mappingConfig.isNotes() && coupleRelationship != null);
+    }
+
+    ConversionContext.removeReference(familyContext);
+  }
+
+  /**
+   * Checks the family for data that is not mapped and logs a warning for each.
+   * @param notesMapped whether the notes of the family were mapped to its couple relationship
+   */
+  private void auditFamily(Family dqFamily, boolean notesMapped) {
+    CommonMapper.toDate(dqFamily.getChange()); // only parsed to check it; todo: set the timestamp on the attribution?
+
     int cntNotes = dqFamily.getNotes().size() + dqFamily.getNoteRefs().size();
-    if (cntNotes > 0) {
+    if (cntNotes > 0 && !notesMapped) {
       logger.warn(ConversionContext.getContext(), "Did not process {} notes or references to notes.", cntNotes);
     }
 
@@ -183,8 +200,6 @@ public class FamilyMapper {
         }
       }
     }
-
-    ConversionContext.removeReference(familyContext);
   }
 
   /**
@@ -217,29 +232,31 @@ public class FamilyMapper {
   }
 
 
-  private void addFacts(Relationship gedxRelationship, String ged5FamilyId, List<ParentFamilyRef> childToFamilyLinks) {
-    for (ParentFamilyRef ref : childToFamilyLinks) {
-      if (ref.getRef().equals(ged5FamilyId)) {
-        String relationshipType = ref.getRelationshipType();
-        if (relationshipType != null) {
-          relationshipType = relationshipType.toLowerCase().trim();
-          if (relationshipType.equalsIgnoreCase("adopted")) {
-            Fact fact = new Fact();
-            fact.setKnownType(FactType.AdoptiveParent);
-            gedxRelationship.addFact(fact);
-          } else if (relationshipType.equalsIgnoreCase("birth")) {
-            Fact fact = new Fact();
-            fact.setKnownType(FactType.BiologicalParent);
-            gedxRelationship.addFact(fact);
-          } else if (relationshipType.equalsIgnoreCase("foster")) {
-            Fact fact = new Fact();
-            fact.setKnownType(FactType.FosterParent);
-            gedxRelationship.addFact(fact);
-          } else {
-            logger.warn(ConversionContext.getContext(), "Information designating this relationship as \"{}\" was dropped.", ref.getRelationshipType());
-          }
-        }
-      }
+  /**
+   * Adds the pedigree fact of the child's link to the family to a parent-child relationship.
+   * @param gedxRelationship  the parent-child relationship
+   * @param pedigree  the pedigree value from the {@link FamilyMembershipIndex}; may be null
+   */
+  private void addFacts(Relationship gedxRelationship, String pedigree) {
+    if (pedigree == null) {
+      return;
+    }
+
+    String relationshipType = pedigree.trim();
+    if (relationshipType.equalsIgnoreCase("adopted")) {
+      Fact fact = new Fact();
+      fact.setKnownType(FactType.AdoptiveParent);
+      gedxRelationship.addFact(fact);
+    } else if (relationshipType.equalsIgnoreCase("birth")) {
+      Fact fact = new Fact();
+      fact.setKnownType(FactType.BiologicalParent);
+      gedxRelationship.addFact(fact);
+    } else if (relationshipType.equalsIgnoreCase("foster")) {
+      Fact fact = new Fact();
+      fact.setKnownType(FactType.FosterParent);
+      gedxRelationship.addFact(fact);
+    } else {
+      logger.warn(ConversionContext.getContext(), "Information designating this relationship as \"{}\" was dropped.", pedigree);
     }
   }
 }
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.ParentFamilyRef;
+import org.folg.gedcom.model.Person;
+
+/**
+ * An index of the child-to-family links in a GEDCOM file, keyed by the raw GEDCOM 5.5 xrefs, so that each child of
+ * a family can be resolved to its pedigree type (birth, adopted, foster, ...) without a person lookup.
+ *
+ * It is built in a single pass over the individuals and does not depend on {@link Gedcom#createIndexes()}. When the
+ * individuals are parsed in chunks, as in the low-memory conversion, it can also be filled one chunk at a time with
+ * {@link #addPersons(List)}.
+ */
+class FamilyMembershipIndex {
+
+  /**
+   * Child xref to the pedigree of each family link that carries one, keyed by family xref. Children without any
+   * pedigree information share the empty map, and most others have a single link.
+   */
+  private final Map<String, Map<String, String>> childLinks;
+
+  FamilyMembershipIndex() {
+    childLinks = new HashMap<String, Map<String, String>>();
+  }
+
+  FamilyMembershipIndex(Gedcom dqGedcom) {
+    List<Person> dqPersons = dqGedcom.getPeople();
+    childLinks = new HashMap<String, Map<String, String>>(Math.max(16, (int) (dqPersons.size() / .75f) + 1));
+    addPersons(dqPersons);
+  }
+
+  /**
+   * Adds the family links of the given individuals to the index.
+   * @param dqPersons the individuals
+   */
+  void addPersons(List<Person> dqPersons) {
+    for (Person dqPerson : dqPersons) {
+      if (dqPerson.getId() != null) {
+        childLinks.put(dqPerson.getId(), toPedigrees(dqPerson.getParentFamilyRefs()));
+      }
+    }
+  }
+
+  /**
+   * @return the pedigree of each family link, the first one given if a family is linked more than once
+   */
+  private static Map<String, String> toPedigrees(List<ParentFamilyRef> parentFamilyRefs) {
+    Map<String, String> pedigrees = Collections.emptyMap();
+    for (ParentFamilyRef ref : parentFamilyRefs) {
+      if (ref.getRef() == null || ref.getRelationshipType() == null || pedigrees.containsKey(ref.getRef())) {
+        continue;
+      }
+      if (pedigrees.isEmpty()) {
+        pedigrees = Collections.singletonMap(ref.getRef(), ref.getRelationshipType());
+      } else {
+        if (pedigrees.size() == 1) {
+          pedigrees = new HashMap<String, String>(pedigrees);
+        }
+        pedigrees.put(ref.getRef(), ref.getRelationshipType());
+      }
+    }
+    return pedigrees;
+  }
+
+  /**
+   * @param dqPersonId the GEDCOM 5.5 xref of an individual
+   * @return whether the individual is defined in the indexed file
+   */
+  boolean containsPerson(String dqPersonId) {
+    return childLinks.containsKey(dqPersonId);
+  }
+
+  /**
+   * @param dqChildId the GEDCOM 5.5 xref of the child
+   * @param dqFamilyId the GEDCOM 5.5 xref of the family
+   * @return the pedigree value of the child's link to the family, or null if the link has none or the child is not
+   * defined
+   */
+  String getPedigree(String dqChildId, String dqFamilyId) {
+    Map<String, String> pedigrees = childLinks.get(dqChildId);
+    return pedigrees == null ? null : pedigrees.get(dqFamilyId);
+  }
+}
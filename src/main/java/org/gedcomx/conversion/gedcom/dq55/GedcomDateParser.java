@@ -0,0 +1,296 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns a GEDCOM 5.5 date value into a GEDCOM X formal date, e.g. <code>ABT 1850</code> into <code>A+1850</code>,
+ * <code>BET 1 JAN 1900 AND 1905</code> into <code>+1900-01-01/+1905</code> and <code>AFT 3 MAR 1870</code> into
+ * <code>+1870-03-03/</code>. Keywords and months are read case-insensitively, with or without a trailing period.
+ * Julian dates with a day are converted to the Gregorian calendar; other calendars, date phrases, B.C. years and
+ * anything else that is not a well-formed date have no formal value.
+ *
+ * The same date values come up over and over in a file, so the results are kept in a cache keyed on the original
+ * value. Once the cache is full, new values are parsed each time but not added, so a parser is made for each
+ * conversion ({@link MappingConfig#startConversion()}). Safe for concurrent use.
+ */
+final class GedcomDateParser {
+
+  /**
+   * Stands for "no formal value" in the cache, which cannot hold null.
+   */
+  private static final String NO_FORMAL = "";
+
+  private static final Map<String, Integer> MONTHS = new HashMap<String, Integer>();
+  static {
+    String[] months = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+    for (int i = 0; i < months.length; i++) {
+      MONTHS.put(months[i], i + 1);
+    }
+  }
+
+  private final int maxCached;
+  private final ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<String, String>();
+
+  /**
+   * @param maxCached the most date values to keep the formal value of
+   */
+  GedcomDateParser(int maxCached) {
+    this.maxCached = maxCached;
+  }
+
+  /**
+   * @param original a GEDCOM 5.5 date value
+   * @return the formal date, or null if the value has none
+   */
+  String toFormal(String original) {
+    if (original == null) {
+      return null;
+    }
+
+    String formal = cache.get(original);
+    if (formal == null) {
+      formal = parse(original);
+      if (formal == null) {
+        formal = NO_FORMAL;
+      }
+      if (cache.size() < maxCached) {
+        cache.putIfAbsent(original, formal);
+      }
+    }
+    return formal == NO_FORMAL ? null : formal;
+  }
+
+  int cacheSize() {
+    return cache.size();
+  }
+
+  static String parse(String original) {
+    List<String> tokens = tokenize(original);
+    if (tokens == null || tokens.isEmpty()) {
+      return null;
+    }
+
+    String keyword = tokens.get(0);
+    int size = tokens.size();
+    if (keyword.equals("ABT") || keyword.equals("ABOUT") || keyword.equals("CAL") || keyword.equals("EST")) {
+      String date = toSimple(tokens, 1, size);
+      return date == null ? null : "A" + date;
+    } else if (keyword.equals("BEF") || keyword.equals("BEFORE") || keyword.equals("TO")) {
+      String date = toSimple(tokens, 1, size);
+      return date == null ? null : "/" + date;
+    } else if (keyword.equals("AFT") || keyword.equals("AFTER")) {
+      String date = toSimple(tokens, 1, size);
+      return date == null ? null : date + "/";
+    } else if (keyword.equals("BET")) {
+      int and = tokens.indexOf("AND");
+      return and < 0 ? null : toRange(tokens, 1, and, and + 1, size);
+    } else if (keyword.equals("FROM")) {
+      int to = tokens.indexOf("TO");
+      if (to < 0) {
+        String date = toSimple(tokens, 1, size);
+        return date == null ? null : date + "/";
+      }
+      return toRange(tokens, 1, to, to + 1, size);
+    } else if (keyword.equals("INT")) {
+      // the interpreted date, without the phrase it was interpreted from
+      return toSimple(tokens, 1, size);
+    }
+    return toSimple(tokens, 0, size);
+  }
+
+  /**
+   * Splits a date value into upper-case tokens, without trailing periods. A date phrase in parentheses ends an
+   * interpreted date; anywhere else the value is not a date.
+   * @return the tokens, or null if the value is not a date
+   */
+  private static List<String> tokenize(String original) {
+    List<String> tokens = new ArrayList<String>(6);
+    int length = original.length();
+    int i = 0;
+    while (i < length) {
+      char c = original.charAt(i);
+      if (c <= ' ' || c == ',') {
+        i++;
+        continue;
+      }
+      if (c == '(') {
+        return !tokens.isEmpty() && tokens.get(0).equals("INT") ? tokens : null;
+      }
+
+      int start = i;
+      while (i < length && original.charAt(i) > ' ' && original.charAt(i) != ',' && original.charAt(i) != '(') {
+        i++;
+      }
+      int end = i;
+      if (original.charAt(end - 1) == '.' && end - start > 1 && original.indexOf('.', start) == end - 1) {
+        // "Abt." but not "B.C."
+        end--;
+      }
+      tokens.add(original.substring(start, end).toUpperCase());
+    }
+    return tokens;
+  }
+
+  private static String toRange(List<String> tokens, int fromStart, int fromEnd, int toStart, int toEnd) {
+    String from = toSimple(tokens, fromStart, fromEnd);
+    String to = toSimple(tokens, toStart, toEnd);
+    return from == null || to == null ? null : from + "/" + to;
+  }
+
+  /**
+   * Reads <code>[calendar] [[day] month] year</code>.
+   */
+  private static String toSimple(List<String> tokens, int start, int end) {
+    boolean julian = false;
+    if (start < end && tokens.get(start).startsWith("@#")) {
+      String calendar = tokens.get(start);
+      if (calendar.equals("@#DJULIAN@")) {
+        julian = true;
+      } else if (!calendar.equals("@#DGREGORIAN@")) {
+        return null;
+      }
+      start++;
+    }
+
+    int count = end - start;
+    if (count < 1 || count > 3) {
+      return null;
+    }
+
+    int year = toYear(tokens.get(end - 1));
+    int month = count > 1 ? toMonth(tokens.get(end - 2)) : 0;
+    int day = count > 2 ? toDay(tokens.get(start)) : 0;
+    if (year <= 0 || month < 0 || day < 0 || (count > 1 && month == 0) || (count > 2 && day == 0)) {
+      return null;
+    }
+    if (day > daysInMonth(year, month, julian)) {
+      return null;
+    }
+
+    if (julian) {
+      if (day == 0) {
+        // without a day, the Gregorian date is not known
+        return null;
+      }
+      int[] gregorian = julianToGregorian(year, month, day);
+      year = gregorian[0];
+      month = gregorian[1];
+      day = gregorian[2];
+    }
+    return format(year, month, day);
+  }
+
+  /**
+   * @return the year, the later one of a dual year such as 1750/51, or -1 if the token is not a year
+   */
+  private static int toYear(String token) {
+    int slash = token.indexOf('/');
+    int year = toNumber(token, 0, slash < 0 ? token.length() : slash, 4);
+    if (year <= 0 || slash < 0) {
+      return year;
+    }
+
+    // the alternate year is the year after, given by its last two digits
+    int alternate = toNumber(token, slash + 1, token.length(), 2);
+    return alternate >= 0 && alternate == (year + 1) % 100 && token.length() - slash - 1 == 2 ? year + 1 : -1;
+  }
+
+  private static int toMonth(String token) {
+    Integer month = token.length() == 3 ? MONTHS.get(token) : null;
+    return month == null ? -1 : month;
+  }
+
+  private static int toDay(String token) {
+    int day = toNumber(token, 0, token.length(), 2);
+    return day > 0 ? day : -1;
+  }
+
+  private static int toNumber(String token, int start, int end, int maxDigits) {
+    if (end <= start || end - start > maxDigits) {
+      return -1;
+    }
+    int number = 0;
+    for (int i = start; i < end; i++) {
+      char c = token.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      number = number * 10 + (c - '0');
+    }
+    return number;
+  }
+
+  private static int daysInMonth(int year, int month, boolean julian) {
+    switch (month) {
+      case 0:
+        return 0;
+      case 2:
+        boolean leap = julian ? year % 4 == 0 : (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        return leap ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  /**
+   * Converts through the Julian day number.
+   */
+  private static int[] julianToGregorian(int year, int month, int day) {
+    int a = (14 - month) / 12;
+    int y = year + 4800 - a;
+    int m = month + 12 * a - 3;
+    int julianDay = day + (153 * m + 2) / 5 + 365 * y + y / 4 - 32083;
+
+    int b = julianDay + 32044;
+    int century = (4 * b + 3) / 146097;
+    int c = b - 146097 * century / 4;
+    int d = (4 * c + 3) / 1461;
+    int e = c - 1461 * d / 4;
+    int n = (5 * e + 2) / 153;
+    return new int[]{100 * century + d - 4800 + n / 10, n + 3 - 12 * (n / 10), e - (153 * n + 2) / 5 + 1};
+  }
+
+  private static String format(int year, int month, int day) {
+    StringBuilder formal = new StringBuilder(11).append('+');
+    appendDigits(formal, year, 4);
+    if (month > 0) {
+      appendDigits(formal.append('-'), month, 2);
+      if (day > 0) {
+        appendDigits(formal.append('-'), day, 2);
+      }
+    }
+    return formal.toString();
+  }
+
+  private static void appendDigits(StringBuilder builder, int value, int width) {
+    String digits = Integer.toString(value);
+    for (int i = digits.length(); i < width; i++) {
+      builder.append('0');
+    }
+    builder.append(digits);
+  }
+}
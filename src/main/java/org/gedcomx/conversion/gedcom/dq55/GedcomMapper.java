@@ -16,32 +16,72 @@
 package org.gedcomx.conversion.gedcom.dq55;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.folg.gedcom.model.Family;
 import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.Note;
 import org.folg.gedcom.model.Person;
 import org.folg.gedcom.model.Repository;
 import org.folg.gedcom.model.Source;
+import org.folg.gedcom.model.Submitter;
 import org.gedcomx.conversion.DefaultGedcomxConversionResult;
 import org.gedcomx.conversion.GedcomxConversionResult;
+import org.gedcomx.conversion.RecordAwareConversionResult;
+import org.gedcomx.conversion.gedcom.GedcomRecordIndex;
 
 public class GedcomMapper {
 
+  /**
+   * How many records the low-memory conversion parses at a time.
+   */
+  public static final int DEFAULT_RECORDS_PER_CHUNK = 1000;
+
+  /**
+   * How many records are post-processed as one batch by the {@link BatchPostProcessor}s.
+   */
+  public static final int DEFAULT_POST_PROCESSING_BATCH_SIZE = 256;
+
+  private final MappingConfig mappingConfig;
   private final PersonMapper personMapper;
   private final FamilyMapper familyMapper;
   private final SubmitterMapper submitterMapper;
   private final SourceDescriptionMapper sourceDescriptionMapper;
+  private final NoteMapper noteMapper;
+  private final List<BatchPostProcessor> batchPostProcessors;
+  private final int postProcessingThreads;
 
   public GedcomMapper(MappingConfig mappingConfig) {
     this(mappingConfig, null);
   }
 
   public GedcomMapper(MappingConfig mappingConfig, PostProcessor postProcessor) {
+    this(mappingConfig, postProcessor, Collections.<BatchPostProcessor>emptyList(), 0);
+  }
+
+  /**
+   * @param mappingConfig the mapping configuration
+   * @param postProcessor the per-person post-processor; may be null
+   * @param batchPostProcessors the batch post-processors; may be empty
+   * @param postProcessingThreads the number of threads running the batch post-processors; zero to run them on the
+   *                              mapping thread
+   */
+  public GedcomMapper(MappingConfig mappingConfig, PostProcessor postProcessor, List<BatchPostProcessor> batchPostProcessors, int postProcessingThreads) {
+    this.mappingConfig = mappingConfig;
     personMapper = new PersonMapper(mappingConfig, postProcessor);
     familyMapper = new FamilyMapper(mappingConfig);
     submitterMapper = new SubmitterMapper();
-    sourceDescriptionMapper = new SourceDescriptionMapper();
+    sourceDescriptionMapper = new SourceDescriptionMapper(mappingConfig);
+    noteMapper = new NoteMapper(mappingConfig);
+    this.batchPostProcessors = batchPostProcessors;
+    this.postProcessingThreads = postProcessingThreads;
   }
 
   public GedcomxConversionResult toGedcomx(Gedcom dqGedcom) throws IOException {
@@ -49,44 +89,261 @@ public class GedcomMapper {
   }
 
   public GedcomxConversionResult toGedcomx(Gedcom dqGedcom, GedcomxConversionResult result) throws IOException {
-    toPersons(dqGedcom.getPeople(), result);
-    toRelationships(dqGedcom.getFamilies(), dqGedcom, result);
-    toSourceDescriptions(dqGedcom.getSources(), result);
-    toOrganizations(dqGedcom.getRepositories(), result);
+    mappingConfig.startConversion();
+    if (mappingConfig.isNotes()) {
+      noteMapper.addFirstLines(dqGedcom.getNotes());
+    }
+    PostProcessingQueue postProcessing = startPostProcessing(result);
+    try {
+      GedcomxConversionResult target = postProcessing == null ? result : postProcessing;
+      toPersons(dqGedcom.getPeople(), target);
+      toRelationships(dqGedcom.getFamilies(), new FamilyMembershipIndex(dqGedcom), target);
+      toSourceDescriptions(dqGedcom.getSources(), target);
+      toOrganizations(dqGedcom.getRepositories(), target);
+      if (mappingConfig.isNotes()) {
+        toDocuments(dqGedcom.getNotes(), target);
+      }
+
+      if (dqGedcom.getSubmitters() != null && !dqGedcom.getSubmitters().isEmpty()) {
+        toContributor(dqGedcom.getSubmitters().get(0), target);
+      }
+
+      toLanguage(dqGedcom, target);
+
+      if (postProcessing != null) {
+        postProcessing.finish();
+      }
+    } finally {
+      if (postProcessing != null) {
+        postProcessing.shutdown();
+      }
+    }
+
+    return result;
+  }
+
+  public GedcomxConversionResult toGedcomx(GedcomRecordIndex recordIndex, GedcomxConversionResult result) throws IOException {
+    return toGedcomx(recordIndex, DEFAULT_RECORDS_PER_CHUNK, result);
+  }
 
+  /**
+   * Converts an indexed GEDCOM file without holding all of its records in memory. The records are parsed from their
+   * byte ranges a chunk at a time, individuals first so that the family links needed by the families are known
+   * before the families are mapped. The result is the same as that of
+   * {@link #toGedcomx(Gedcom, GedcomxConversionResult)}, except that compact ids are numbered by the position of the
+   * record in the file.
+   * @param recordIndex the index of the records of the file
+   * @param recordsPerChunk how many records to parse at a time
+   * @param result the conversion result
+   * @return the conversion result
+   */
+  public GedcomxConversionResult toGedcomx(GedcomRecordIndex recordIndex, int recordsPerChunk, GedcomxConversionResult result) throws IOException {
+    mappingConfig.startConversion();
+    mappingConfig.numberCompactIds(recordIndex);
+    final FamilyMembershipIndex familyMembership = new FamilyMembershipIndex();
+    PostProcessingQueue postProcessing = startPostProcessing(result);
+
+    try (GedcomRecordReader reader = new GedcomRecordReader(recordIndex)) {
+      final GedcomxConversionResult target = postProcessing == null ? result : postProcessing;
+      if (mappingConfig.isNotes()) {
+        addNoteFirstLines(reader, recordIndex, recordsPerChunk);
+      }
+      forEachChunk(reader, recordIndex.getOrdinals("INDI"), recordsPerChunk, dqChunk -> {
+        familyMembership.addPersons(dqChunk.getPeople());
+        toPersons(dqChunk.getPeople(), target);
+      });
+      forEachChunk(reader, recordIndex.getOrdinals("FAM"), recordsPerChunk, dqChunk -> toRelationships(dqChunk.getFamilies(), familyMembership, target));
+      forEachChunk(reader, recordIndex.getOrdinals("SOUR"), recordsPerChunk, dqChunk -> toSourceDescriptions(dqChunk.getSources(), target));
+      forEachChunk(reader, recordIndex.getOrdinals("REPO"), recordsPerChunk, dqChunk -> toOrganizations(dqChunk.getRepositories(), target));
+      if (mappingConfig.isNotes()) {
+        forEachChunk(reader, recordIndex.getOrdinals("NOTE"), recordsPerChunk, dqChunk -> toDocuments(dqChunk.getNotes(), target));
+      }
+
+      int[] submitters = recordIndex.getOrdinals("SUBM");
+      Gedcom dqChunk = reader.read(submitters, 0, Math.min(1, submitters.length));
+      if (dqChunk.getSubmitters() != null && !dqChunk.getSubmitters().isEmpty()) {
+        toContributor(dqChunk.getSubmitters().get(0), target);
+      }
+      toLanguage(dqChunk, target);
+
+      if (postProcessing != null) {
+        postProcessing.finish();
+      }
+    } finally {
+      if (postProcessing != null) {
+        postProcessing.shutdown();
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the GEDCOM X entities of a parsed GEDCOM file (Person, Relationship, SourceDescription, Agent and, when
+   * notes are mapped, Document objects, in the order {@link #toGedcomx(Gedcom, GedcomxConversionResult)} would add
+   * them) without building a dataset. Each record is mapped only when the consumer pulls past the entities of the
+   * previous record, and every entity is complete when it is handed out. Mapping failures surface as
+   * {@link java.io.UncheckedIOException}. Batch post-processors are not applied.
+   * @param dqGedcom the parsed GEDCOM file
+   * @return the entities, lazily mapped
+   */
+  public Stream<Object> toEntities(final Gedcom dqGedcom) {
+    mappingConfig.startConversion();
+    if (mappingConfig.isNotes()) {
+      noteMapper.addFirstLines(dqGedcom.getNotes());
+    }
+    List<Object> dqRecords = new ArrayList<Object>();
+    dqRecords.addAll(dqGedcom.getPeople());
+    dqRecords.addAll(dqGedcom.getFamilies());
+    dqRecords.addAll(dqGedcom.getSources());
+    dqRecords.addAll(dqGedcom.getRepositories());
+    if (mappingConfig.isNotes()) {
+      dqRecords.addAll(dqGedcom.getNotes());
+    }
     if (dqGedcom.getSubmitters() != null && !dqGedcom.getSubmitters().isEmpty()) {
-      submitterMapper.toContributor(dqGedcom.getSubmitters().get(0), result);
+      dqRecords.add(dqGedcom.getSubmitters().get(0));
     }
 
+    final FamilyMembershipIndex familyMembership = new FamilyMembershipIndex(dqGedcom);
+    LazyEntityIterator entities = new LazyEntityIterator(dqRecords.iterator(), (dqRecord, result) -> {
+      if (dqRecord instanceof Family) {
+        familyMapper.toRelationship((Family) dqRecord, familyMembership, result);
+      } else {
+        mapRecord(dqRecord, result);
+      }
+    });
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entities, Spliterator.ORDERED | Spliterator.NONNULL), false);
+  }
+
+  /**
+   * Returns the GEDCOM X entities of an indexed GEDCOM file like {@link #toEntities(Gedcom)}, parsing the records
+   * a chunk at a time as the consumer reaches them. Close the stream to release the open file.
+   * @param recordIndex the index of the records of the file
+   * @return the entities, lazily parsed and mapped
+   */
+  public Stream<Object> toEntities(GedcomRecordIndex recordIndex) throws IOException {
+    mappingConfig.startConversion();
+    mappingConfig.numberCompactIds(recordIndex);
+    if (mappingConfig.isNotes()) {
+      try (GedcomRecordReader reader = new GedcomRecordReader(recordIndex)) {
+        addNoteFirstLines(reader, recordIndex, DEFAULT_RECORDS_PER_CHUNK);
+      }
+    }
+    final FamilyMembershipIndex familyMembership = new FamilyMembershipIndex();
+    final IndexedRecordIterator dqRecords = new IndexedRecordIterator(recordIndex, DEFAULT_RECORDS_PER_CHUNK, familyMembership, mappingConfig.isNotes());
+
+    LazyEntityIterator entities = new LazyEntityIterator(dqRecords, (dqRecord, result) -> {
+      if (dqRecord instanceof Family) {
+        familyMapper.toRelationship((Family) dqRecord, familyMembership, result);
+      } else {
+        mapRecord(dqRecord, result);
+      }
+    });
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entities, Spliterator.ORDERED | Spliterator.NONNULL), false)
+      .onClose(() -> {
+        try {
+          dqRecords.close();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+  }
+
+  private void mapRecord(Object dqRecord, GedcomxConversionResult result) throws IOException {
+    if (dqRecord instanceof Person) {
+      personMapper.toPerson((Person) dqRecord, result);
+    } else if (dqRecord instanceof Source) {
+      sourceDescriptionMapper.toSourceDescription((Source) dqRecord, result);
+    } else if (dqRecord instanceof Repository) {
+      sourceDescriptionMapper.toOrganization((Repository) dqRecord, result);
+    } else if (dqRecord instanceof Note) {
+      noteMapper.toDocument((Note) dqRecord, result);
+    } else if (dqRecord instanceof Submitter) {
+      submitterMapper.toContributor((Submitter) dqRecord, result);
+    }
+  }
+
+  private PostProcessingQueue startPostProcessing(GedcomxConversionResult result) {
+    if (batchPostProcessors == null || batchPostProcessors.isEmpty()) {
+      return null;
+    }
+    return new PostProcessingQueue(result, batchPostProcessors, postProcessingThreads, DEFAULT_POST_PROCESSING_BATCH_SIZE);
+  }
+
+  /**
+   * Tells the post-processing queue, or a result that wants to know, that the entities mapped from a record are
+   * complete.
+   */
+  private static void endRecord(GedcomxConversionResult result, Object dqRecord) throws IOException {
+    if (result instanceof PostProcessingQueue) {
+      ((PostProcessingQueue) result).endRecord(dqRecord);
+    } else if (result instanceof RecordAwareConversionResult) {
+      ((RecordAwareConversionResult) result).endRecord();
+    }
+  }
+
+  /**
+   * Reads the NOTE records of an indexed file a chunk at a time and records their first lines, for the notes
+   * referring to them.
+   */
+  void addNoteFirstLines(GedcomRecordReader reader, GedcomRecordIndex recordIndex, int recordsPerChunk) throws IOException {
+    forEachChunk(reader, recordIndex.getOrdinals("NOTE"), recordsPerChunk, dqChunk -> noteMapper.addFirstLines(dqChunk.getNotes()));
+  }
+
+  private void forEachChunk(GedcomRecordReader reader, int[] ordinals, int recordsPerChunk, ChunkHandler handler) throws IOException {
+    for (int from = 0; from < ordinals.length; from += recordsPerChunk) {
+      handler.handle(reader.read(ordinals, from, Math.min(ordinals.length, from + recordsPerChunk)));
+    }
+  }
+
+  private interface ChunkHandler {
+    void handle(Gedcom dqChunk) throws IOException;
+  }
+
+  void toLanguage(Gedcom dqGedcom, GedcomxConversionResult result) {
     String lang = (dqGedcom.getHeader() == null || dqGedcom.getHeader().getLanguage() == null) ? null : dqGedcom.getHeader().getLanguage();
     LanguageMapping langMapping = LanguageMapping.fromString(lang);
     String langCode = (langMapping == null) ? null : langMapping.getLanguageCode();
     result.addLanguage(langCode);
-
-    return result;
   }
 
   void toPersons(List<Person> dqPersons, GedcomxConversionResult result) throws IOException {
     for (Person person : dqPersons) {
       personMapper.toPerson(person, result);
+      endRecord(result, person);
     }
   }
 
-  private void toRelationships(List<Family> dqFamilies, Gedcom dqGedcom, GedcomxConversionResult result) throws IOException {
+  void toRelationships(List<Family> dqFamilies, FamilyMembershipIndex familyMembership, GedcomxConversionResult result) throws IOException {
     for (Family family : dqFamilies) {
-      familyMapper.toRelationship(family, dqGedcom, result);
+      familyMapper.toRelationship(family, familyMembership, result);
+      endRecord(result, family);
     }
   }
 
-  private void toSourceDescriptions(List<Source> dqSources, GedcomxConversionResult result) throws IOException {
+  void toSourceDescriptions(List<Source> dqSources, GedcomxConversionResult result) throws IOException {
     for (Source dqSource : dqSources) {
       sourceDescriptionMapper.toSourceDescription(dqSource, result);
+      endRecord(result, dqSource);
     }
   }
 
-  private void toOrganizations(List<Repository> dqRepositories, GedcomxConversionResult result) throws IOException {
+  void toOrganizations(List<Repository> dqRepositories, GedcomxConversionResult result) throws IOException {
     for (Repository dqRepository : dqRepositories) {
       sourceDescriptionMapper.toOrganization(dqRepository, result);
+      endRecord(result, dqRepository);
+    }
+  }
+
+  void toDocuments(List<Note> dqNotes, GedcomxConversionResult result) throws IOException {
+    for (Note dqNote : dqNotes) {
+      noteMapper.toDocument(dqNote, result);
+      endRecord(result, dqNote);
     }
   }
+
+  void toContributor(Submitter dqSubmitter, GedcomxConversionResult result) throws IOException {
+    submitterMapper.toContributor(dqSubmitter, result);
+    endRecord(result, dqSubmitter);
+  }
 }
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.parser.ModelParser;
+import org.gedcomx.conversion.gedcom.AnselReader;
+import org.gedcomx.conversion.gedcom.GedcomRecordIndex;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Parses selected records of an indexed GEDCOM file. The parser reads the header of the file followed by the byte
+ * ranges of the records, straight from the indexed offsets, so only the selected records are ever held in memory.
+ */
+class GedcomRecordReader implements Closeable {
+
+  private static final byte[] TRAILER = "0 TRLR\n".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] TERMINATED_TRAILER = "\n0 TRLR\n".getBytes(StandardCharsets.US_ASCII);
+
+  private final GedcomRecordIndex recordIndex;
+  private final FileChannel gedcomChannel;
+  private final int headerOrdinal;
+
+  GedcomRecordReader(GedcomRecordIndex recordIndex) throws IOException {
+    this.recordIndex = recordIndex;
+    int[] headers = recordIndex.getOrdinals("HEAD");
+    this.headerOrdinal = headers.length > 0 ? headers[0] : -1;
+    this.gedcomChannel = new FileInputStream(recordIndex.getFile()).getChannel();
+  }
+
+  /**
+   * Parses the header of the file together with a range of the given records.
+   * @param ordinals the positions of records in the file
+   * @param from the first element of ordinals to parse
+   * @param to one past the last element of ordinals to parse
+   * @return the parsed records
+   */
+  Gedcom read(int[] ordinals, int from, int to) throws IOException {
+    InputStream in = new RecordInputStream(ordinals, from, to);
+    try {
+      if (recordIndex.isAnselDecoded()) {
+        return new ModelParser().parseGedcom(new AnselReader(in));
+      }
+      return new ModelParser().parseGedcom(in);
+    } catch (SAXParseException e) {
+      throw new IOException("Failed to parse records of " + recordIndex.getFile() + ": " + e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    gedcomChannel.close();
+  }
+
+  /**
+   * Reads the header and the selected records from the file, followed by a trailer record.
+   */
+  private class RecordInputStream extends InputStream {
+
+    private final int[] ordinals;
+    private final int to;
+    private int next;
+    private boolean headerRead;
+    private long position;
+    private long end;
+    private byte lastByte = '\n';
+    private byte[] trailer;
+    private int trailerPosition;
+
+    RecordInputStream(int[] ordinals, int from, int to) {
+      this.ordinals = ordinals;
+      this.next = from;
+      this.to = to;
+      this.headerRead = headerOrdinal < 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+
+      while (position == end && (!headerRead || next < to)) {
+        int ordinal = headerRead ? ordinals[next++] : headerOrdinal;
+        headerRead = true;
+        position = recordIndex.getStart(ordinal);
+        end = position + recordIndex.getLength(ordinal);
+      }
+
+      if (position < end) {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, end - position));
+        int read = gedcomChannel.read(buffer, position);
+        if (read <= 0) {
+          throw new IOException(recordIndex.getFile() + " changed after it was indexed.");
+        }
+        position += read;
+        lastByte = b[off + read - 1];
+        return read;
+      }
+
+      if (trailer == null) {
+        // only the last record of a file can lack a line terminator
+        trailer = lastByte == '\n' || lastByte == '\r' ? TRAILER : TERMINATED_TRAILER;
+      }
+      if (trailerPosition == trailer.length) {
+        return -1;
+      }
+      int read = Math.min(len, trailer.length - trailerPosition);
+      System.arraycopy(trailer, trailerPosition, b, off, read);
+      trailerPosition += read;
+      return read;
+    }
+  }
+}
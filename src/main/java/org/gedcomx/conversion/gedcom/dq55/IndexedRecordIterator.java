@@ -0,0 +1,117 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.folg.gedcom.model.Gedcom;
+import org.gedcomx.conversion.gedcom.GedcomRecordIndex;
+
+/**
+ * Iterates over the records of an indexed GEDCOM file in the order they are mapped (individuals, families, sources,
+ * repositories, optionally notes, then the first submitter), parsing them a chunk at a time as the iteration reaches
+ * them. The family links of the individuals are added to a family membership index as their chunks are parsed, so
+ * the index is complete by the time the first family is reached.
+ */
+class IndexedRecordIterator implements Iterator<Object>, Closeable {
+
+  private static final String[] RECORD_TAGS = {"INDI", "FAM", "SOUR", "REPO", "SUBM"};
+  private static final String[] RECORD_TAGS_WITH_NOTES = {"INDI", "FAM", "SOUR", "REPO", "NOTE", "SUBM"};
+
+  private final GedcomRecordIndex recordIndex;
+  private final String[] recordTags;
+  private final int recordsPerChunk;
+  private final FamilyMembershipIndex familyMembership;
+  private final GedcomRecordReader reader;
+
+  private int tagIndex = -1;
+  private int[] ordinals = new int[0];
+  private int from = 0;
+  private Iterator<?> chunkRecords;
+
+  /**
+   * @param notes whether to include the NOTE records
+   */
+  IndexedRecordIterator(GedcomRecordIndex recordIndex, int recordsPerChunk, FamilyMembershipIndex familyMembership, boolean notes) throws IOException {
+    this.recordIndex = recordIndex;
+    this.recordTags = notes ? RECORD_TAGS_WITH_NOTES : RECORD_TAGS;
+    this.recordsPerChunk = recordsPerChunk;
+    this.familyMembership = familyMembership;
+    this.reader = new GedcomRecordReader(recordIndex);
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (chunkRecords == null || !chunkRecords.hasNext()) {
+      while (from >= ordinals.length) {
+        if (++tagIndex >= recordTags.length) {
+          return false;
+        }
+        ordinals = recordIndex.getOrdinals(recordTags[tagIndex]);
+        if ("SUBM".equals(recordTags[tagIndex]) && ordinals.length > 1) {
+          ordinals = new int[]{ordinals[0]};
+        }
+        from = 0;
+      }
+
+      int to = Math.min(ordinals.length, from + recordsPerChunk);
+      try {
+        chunkRecords = recordsOf(reader.read(ordinals, from, to)).iterator();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      from = to;
+    }
+    return true;
+  }
+
+  @Override
+  public Object next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return chunkRecords.next();
+  }
+
+  private List<?> recordsOf(Gedcom dqChunk) {
+    switch (recordTags[tagIndex]) {
+      case "INDI":
+        familyMembership.addPersons(dqChunk.getPeople());
+        return dqChunk.getPeople();
+      case "FAM":
+        return dqChunk.getFamilies();
+      case "SOUR":
+        return dqChunk.getSources();
+      case "REPO":
+        return dqChunk.getRepositories();
+      case "NOTE":
+        return dqChunk.getNotes();
+      default:
+        return dqChunk.getSubmitters() == null ? Collections.emptyList() : dqChunk.getSubmitters();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
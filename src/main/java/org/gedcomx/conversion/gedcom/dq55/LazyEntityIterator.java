@@ -0,0 +1,124 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Document;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.conversion.GedcomxConversionResult;
+import org.gedcomx.source.SourceDescription;
+
+/**
+ * Maps GEDCOM 5.5 records one at a time as the GEDCOM X entities are pulled. Only the entities of the record being
+ * consumed are held; a record is mapped completely before any of its entities is handed out.
+ */
+class LazyEntityIterator implements Iterator<Object>, GedcomxConversionResult {
+
+  /**
+   * Maps one record into a conversion result.
+   */
+  interface RecordMapper {
+    void map(Object dqRecord, GedcomxConversionResult result) throws IOException;
+  }
+
+  private final Iterator<?> records;
+  private final RecordMapper recordMapper;
+  private final ArrayDeque<Object> pending = new ArrayDeque<Object>();
+
+  LazyEntityIterator(Iterator<?> records, RecordMapper recordMapper) {
+    this.records = records;
+    this.recordMapper = recordMapper;
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (pending.isEmpty() && records.hasNext()) {
+      try {
+        recordMapper.map(records.next(), this);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return !pending.isEmpty();
+  }
+
+  @Override
+  public Object next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return pending.poll();
+  }
+
+  @Override
+  public Gedcomx getDataset() {
+    return null;
+  }
+
+  @Override
+  public Agent getDatasetContributor() {
+    return null;
+  }
+
+  @Override
+  public void setDatasetContributor(Agent person) throws IOException {
+    pending.add(person);
+  }
+
+  @Override
+  public void addPerson(Person person) throws IOException {
+    pending.add(person);
+  }
+
+  @Override
+  public void addRelationship(Relationship relationship) throws IOException {
+    pending.add(relationship);
+  }
+
+  @Override
+  public void addSourceDescription(SourceDescription description) throws IOException {
+    pending.add(description);
+  }
+
+  @Override
+  public void addOrganization(Agent organization) throws IOException {
+    pending.add(organization);
+  }
+
+  @Override
+  public void addPlaceDescription(PlaceDescription place) throws IOException {
+    pending.add(place);
+  }
+
+  @Override
+  public void addDocument(Document document) throws IOException {
+    pending.add(document);
+  }
+
+  @Override
+  public void addLanguage(String langCode) {
+    // the language is a property of the dataset, not an entity
+  }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+/**
+ * A GEDCOM X entity together with the GEDCOM 5.5 record it was mapped from, as handed to a
+ * {@link BatchPostProcessor}.
+ *
+ * @param <E> the type of the GEDCOM X entity
+ */
+public final class MappedEntity<E> {
+
+  private final Object record;
+  private final E entity;
+
+  MappedEntity(Object record, E entity) {
+    this.record = record;
+    this.entity = entity;
+  }
+
+  /**
+   * @return the org.folg.gedcom.model record (Person, Family, Source, Repository or Submitter) the entity was
+   * mapped from; a source description created from a source citation carries the record holding the citation
+   */
+  public Object getRecord() {
+    return record;
+  }
+
+  /**
+   * @return the mapped GEDCOM X entity
+   */
+  public E getEntity() {
+    return entity;
+  }
+}
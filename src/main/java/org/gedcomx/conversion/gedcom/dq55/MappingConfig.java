@@ -16,18 +16,74 @@
 
 package org.gedcomx.conversion.gedcom.dq55;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gedcomx.conversion.gedcom.GedcomRecordIndex;
+import org.gedcomx.source.SourceDescription;
+
 /**
  * Created on 9/18/17
  *
  * @author Scott Greenman
  */
 public class MappingConfig {
+
+  /**
+   * How many distinct date values a conversion keeps the formal date of; a file rarely has more.
+   */
+  private static final int MAX_CACHED_DATES = 16384;
   private String inputFilename;
   private boolean includeFilenameInIds;
+  private boolean compactIds;
+  private boolean contentAddressedCitations;
+  private CitationTemplate citationTemplate = CitationTemplate.GEDCOM5;
+  private MappingProfile profile = MappingProfile.DEFAULT;
+  private boolean placeDescriptions;
+  private boolean notes;
+  private final Map<String, FactTagHandler> factTagHandlersByTag = new HashMap<String, FactTagHandler>();
+  private TagTable<FactTagHandler> factTagHandlers;
+
+  private final ConcurrentMap<String, String> compactIdsByXref = new ConcurrentHashMap<String, String>();
+  private final AtomicLong lastCompactId = new AtomicLong(0);
+  private volatile GedcomRecordIndex compactIdIndex;
+  private volatile long compactIdBase;
+  private volatile ConversionState conversionState = new ConversionState();
 
   public MappingConfig(String inputFilename, boolean includeFilenameInIds) {
+    this(inputFilename, includeFilenameInIds, false);
+  }
+
+  /**
+   * @param inputFilename the name of the GEDCOM 5.5 file being converted
+   * @param includeFilenameInIds whether to prefix the generated ids with the input filename
+   * @param compactIds whether to replace the GEDCOM 5.5 xrefs with dense base-36 ids, assigned in order of first use
+   *                   or, in an indexed conversion, by the position of the record in the file
+   */
+  public MappingConfig(String inputFilename, boolean includeFilenameInIds, boolean compactIds) {
+    this(inputFilename, includeFilenameInIds, compactIds, false);
+  }
+
+  /**
+   * @param inputFilename the name of the GEDCOM 5.5 file being converted
+   * @param includeFilenameInIds whether to prefix the generated ids with the input filename
+   * @param compactIds whether to replace the GEDCOM 5.5 xrefs with dense base-36 ids, assigned in order of first use
+   *                   or, in an indexed conversion, by the position of the record in the file
+   * @param contentAddressedCitations whether to derive the ids of citation source descriptions from the citation's
+   *                                  content and write each distinct description only once
+   */
+  public MappingConfig(String inputFilename, boolean includeFilenameInIds, boolean compactIds, boolean contentAddressedCitations) {
     this.inputFilename = inputFilename;
     this.includeFilenameInIds = includeFilenameInIds;
+    this.compactIds = compactIds;
+    this.contentAddressedCitations = contentAddressedCitations;
   }
 
   public String getInputFilename() {
@@ -38,11 +94,240 @@ public class MappingConfig {
     return includeFilenameInIds;
   }
 
+  public boolean isCompactIds() {
+    return compactIds;
+  }
+
+  public boolean isContentAddressedCitations() {
+    return contentAddressedCitations;
+  }
+
+  public CitationTemplate getCitationTemplate() {
+    return citationTemplate;
+  }
+
+  /**
+   * @param citationTemplate the template of the citations of source records and of citations of them
+   */
+  public void setCitationTemplate(CitationTemplate citationTemplate) {
+    this.citationTemplate = citationTemplate;
+  }
+
+  public MappingProfile getProfile() {
+    return profile;
+  }
+
+  /**
+   * @param profile how thoroughly the mappers look at the GEDCOM 5.5 data
+   */
+  public void setProfile(MappingProfile profile) {
+    this.profile = profile;
+  }
+
+  public boolean isPlaceDescriptions() {
+    return placeDescriptions;
+  }
+
+  /**
+   * @param placeDescriptions whether to give each distinct place one place description, with an id derived from the
+   *                          normalized place, and refer to it from the facts instead of repeating the place
+   */
+  public void setPlaceDescriptions(boolean placeDescriptions) {
+    this.placeDescriptions = placeDescriptions;
+  }
+
+  public boolean isNotes() {
+    return notes;
+  }
+
+  /**
+   * @param notes whether to map notes: each NOTE record, and each distinct inline note, becomes one document that
+   *              the persons, couple relationships and facts carrying the note refer to
+   */
+  public void setNotes(boolean notes) {
+    this.notes = notes;
+  }
+
+  /**
+   * Adds a handler for facts with custom tags to the conversions using this config only. It takes precedence over a
+   * handler registered in META-INF/services, or the standard mapping, of the same tags.
+   * @param handler the handler
+   */
+  public void addFactTagHandler(FactTagHandler handler) {
+    for (String tag : handler.getTags()) {
+      factTagHandlersByTag.put(tag.trim().toUpperCase(), handler);
+    }
+    factTagHandlers = new TagTable<FactTagHandler>(factTagHandlersByTag);
+  }
+
+  /**
+   * @param tag a GEDCOM tag, in any case and possibly surrounded by whitespace
+   * @return the handler added to this config for the tag, or null if there is none
+   */
+  FactTagHandler getFactTagHandler(String tag) {
+    return factTagHandlers == null ? null : factTagHandlers.get(tag);
+  }
+
+  /**
+   * @return whether the mappers check for data that is not mapped and log warnings about it
+   */
+  public boolean isAuditing() {
+    return profile != MappingProfile.FAST;
+  }
+
+  /**
+   * Forgets which content-addressed descriptions and documents have been added, the first lines of the NOTE records
+   * and the cached dates, so that the next conversion writes the descriptions and documents to its own result and
+   * caches the dates of its own file. Called by the mappers at the start of each conversion; a config must not be
+   * shared by two conversions running at the same time.
+   */
+  public void startConversion() {
+    conversionState = new ConversionState();
+  }
+
+  /**
+   * @return the date parser of the current conversion
+   */
+  GedcomDateParser getDateParser() {
+    return conversionState.dateParser;
+  }
+
+  /**
+   * Records that the citation source description with the given content has been added to the result. If a
+   * different citation was recorded under the content-addressed id of the description, the description is given a
+   * sequential id, which is shared by every later citation with the same content.
+   * @param description the description, with its content-addressed id
+   * @param content the values the id was derived from
+   * @return true if the description had not been added before
+   */
+  boolean addCitationDescription(SourceDescription description, List<String> content) {
+    List<String> recorded = conversionState.citationContents.putIfAbsent(description.getId(), content);
+    if (recorded == null) {
+      return true;
+    }
+    if (recorded.equals(content)) {
+      return false;
+    }
+
+    String fallbackId = description.getId() + "-" + Long.toHexString(SequentialIdentifierGenerator.getNextId());
+    String collidedId = conversionState.collidedCitationIds.putIfAbsent(content, fallbackId);
+    description.setId(collidedId != null ? collidedId : fallbackId);
+    return collidedId == null;
+  }
+
+  /**
+   * Records that the place description with the given id has been added to the result.
+   * @param id the content-addressed id of the description
+   * @return true if the description had not been added before
+   */
+  boolean addPlaceDescriptionId(String id) {
+    return conversionState.placeDescriptionIds.add(id);
+  }
+
+  /**
+   * Records that the document of the inline note with the given id has been added to the result.
+   * @param id the content-addressed id of the document
+   * @return true if the document had not been added before
+   */
+  boolean addNoteDocumentId(String id) {
+    return conversionState.noteDocumentIds.add(id);
+  }
+
+  /**
+   * Records the first line of the text of a NOTE record, for the notes referring to it.
+   * @param xref the xref of the NOTE record
+   * @param firstLine the first line of its text; null if the text is blank
+   */
+  void putNoteFirstLine(String xref, String firstLine) {
+    // a first line is never empty, so the empty string stands for a blank text, which the map cannot hold as null
+    conversionState.noteFirstLines.put(xref, firstLine == null ? "" : firstLine);
+  }
+
+  /**
+   * @param xref the xref of a NOTE record
+   * @return whether the first line of the NOTE record has been read, i.e. whether the record exists
+   */
+  boolean hasNoteFirstLine(String xref) {
+    return conversionState.noteFirstLines.containsKey(xref);
+  }
+
+  /**
+   * @param xref the xref of a NOTE record
+   * @return the first line of the text of the NOTE record; null if the text is blank or has not been read
+   */
+  String getNoteFirstLine(String xref) {
+    String firstLine = conversionState.noteFirstLines.get(xref);
+    return firstLine == null || firstLine.isEmpty() ? null : firstLine;
+  }
+
   public String createId(String id) {
+    if (compactIds) {
+      id = toCompactId(id);
+    }
     if (includeFilenameInIds) {
       return inputFilename + ":" + id;
     }
     return id;
   }
 
+  /**
+   * Numbers the compact ids of the records of an indexed file by the position of the record in the file instead of
+   * by first use, so that they do not depend on the order in which the records are mapped, e.g. by several mapper
+   * threads. Xrefs that are referenced but not defined in the file are still numbered by first use, after the
+   * records. Called by the mappers at the start of an indexed conversion.
+   * @param recordIndex the index of the records of the file being converted
+   */
+  void numberCompactIds(GedcomRecordIndex recordIndex) {
+    if (compactIds) {
+      compactIdBase = lastCompactId.getAndAdd(recordIndex.size());
+      compactIdIndex = recordIndex;
+    }
+  }
+
+  private String toCompactId(String xref) {
+    String compactId = compactIdsByXref.get(xref);
+    if (compactId == null) {
+      GedcomRecordIndex recordIndex = compactIdIndex;
+      int ordinal = recordIndex == null ? -1 : recordIndex.indexOf(xref);
+      long number = ordinal >= 0 ? compactIdBase + ordinal + 1 : lastCompactId.incrementAndGet();
+      String candidate = Long.toString(number, Character.MAX_RADIX);
+      compactId = compactIdsByXref.putIfAbsent(xref, candidate);
+      if (compactId == null) {
+        compactId = candidate;
+      }
+    }
+    return compactId;
+  }
+
+  /**
+   * Returns the side table of the compact ids assigned so far.
+   * @return compact id (without any filename prefix) to the original GEDCOM 5.5 xref, in order of the compact ids
+   */
+  public Map<String, String> getOriginalIds() {
+    TreeMap<Long, String> xrefsByNumber = new TreeMap<Long, String>();
+    for (Map.Entry<String, String> entry : compactIdsByXref.entrySet()) {
+      xrefsByNumber.put(Long.parseLong(entry.getValue(), Character.MAX_RADIX), entry.getKey());
+    }
+
+    Map<String, String> originalIds = new LinkedHashMap<String, String>(xrefsByNumber.size() * 2);
+    for (Map.Entry<Long, String> entry : xrefsByNumber.entrySet()) {
+      originalIds.put(Long.toString(entry.getKey(), Character.MAX_RADIX), entry.getValue());
+    }
+    return originalIds;
+  }
+
+  /**
+   * The ids of the content-addressed descriptions and documents added to the result of the current conversion, and
+   * the first lines of the NOTE records and the dates of the file it converts.
+   */
+  private static class ConversionState {
+    private final GedcomDateParser dateParser = new GedcomDateParser(MAX_CACHED_DATES);
+    private final ConcurrentMap<String, List<String>> citationContents = new ConcurrentHashMap<String, List<String>>();
+    private final ConcurrentMap<List<String>, String> collidedCitationIds
+      = new ConcurrentHashMap<List<String>, String>();
+    private final Set<String> placeDescriptionIds = ConcurrentHashMap.newKeySet();
+    private final Set<String> noteDocumentIds = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, String> noteFirstLines = new ConcurrentHashMap<String, String>();
+  }
+
 }
@@ -0,0 +1,34 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+/**
+ * How thoroughly the mappers look at the GEDCOM 5.5 data.
+ */
+public enum MappingProfile {
+
+  /**
+   * Map the data and check every record for data that is not mapped (notes, media, RIN, UID, REFN, contact details,
+   * extension tags and so on), logging a warning for each.
+   */
+  DEFAULT,
+
+  /**
+   * Map the data only, skipping the checks for data that is not mapped and their warnings. For conversions whose
+   * diagnostics nobody reads.
+   */
+  FAST
+}
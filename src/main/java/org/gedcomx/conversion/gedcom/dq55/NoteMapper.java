@@ -0,0 +1,184 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.folg.gedcom.model.GedcomTag;
+import org.folg.gedcom.model.NoteRef;
+import org.gedcomx.common.Note;
+import org.gedcomx.common.URI;
+import org.gedcomx.conclusion.Document;
+import org.gedcomx.conversion.GedcomxConversionResult;
+import org.gedcomx.links.Link;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+
+/**
+ * Maps GEDCOM 5.5 notes. GEDCOM X has no shared notes, so each NOTE record becomes a document with the id of the
+ * record, and each distinct inline note a document with an id derived from its text, added the first time the text
+ * is seen. The persons, couple relationships and facts carrying a note get a note with the first line of the text
+ * that links to its document (relation {@value #DOCUMENT_REL}) instead of a copy of the whole text, so a note shared
+ * by thousands of individuals is written once. The first lines of the NOTE records are read with
+ * {@link #addFirstLines(List)} before the records referring to them are mapped.
+ */
+public class NoteMapper {
+  private static final Logger logger = LoggerFactory.getLogger(CommonMapper.class);
+
+  /**
+   * The relation of the link from a note to the document holding its text.
+   */
+  public static final String DOCUMENT_REL = "document";
+
+  private final MappingConfig mappingConfig;
+
+  public NoteMapper(MappingConfig mappingConfig) {
+    this.mappingConfig = mappingConfig;
+  }
+
+  public void toDocument(org.folg.gedcom.model.Note dqNote, GedcomxConversionResult result) throws IOException {
+    if (dqNote == null) {
+      return;
+    }
+
+    Marker noteContext = ConversionContext.getDetachedMarker(String.format("@%s@ NOTE", dqNote.getId()));
+    ConversionContext.addReference(noteContext);
+    try {
+      Document gedxDocument = new Document();
+      gedxDocument.setId(mappingConfig.createId(dqNote.getId()));
+      gedxDocument.setText(dqNote.getValue() == null ? "" : dqNote.getValue());
+
+      if (CommonMapper.isAuditing(mappingConfig)) {
+        auditNote(dqNote);
+      }
+
+      result.addDocument(gedxDocument);
+    } finally {
+      ConversionContext.removeReference(noteContext);
+    }
+  }
+
+  /**
+   * Records the first lines of the given NOTE records in the mapping config, for the notes referring to them.
+   * @param dqNotes the NOTE records
+   */
+  public void addFirstLines(List<org.folg.gedcom.model.Note> dqNotes) {
+    for (org.folg.gedcom.model.Note dqNote : dqNotes) {
+      if (dqNote.getId() != null) {
+        mappingConfig.putNoteFirstLine(dqNote.getId(), toFirstLine(dqNote.getValue()));
+      }
+    }
+  }
+
+  /**
+   * Checks the note record for data that is not mapped and logs a warning for each.
+   */
+  private void auditNote(org.folg.gedcom.model.Note dqNote) {
+    int cntSources = dqNote.getSourceCitations().size();
+    if (cntSources > 0) {
+      logger.warn(ConversionContext.getContext(), "Did not process {} source citations.", cntSources);
+    }
+
+    if (dqNote.getExtensions().size() > 0) {
+      for (String extensionCategory : dqNote.getExtensions().keySet()) {
+        for (GedcomTag tag : ((List<GedcomTag>) dqNote.getExtension(extensionCategory))) {
+          logger.warn(ConversionContext.getContext(), "Unsupported ({}): {}", extensionCategory, tag);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param mappingConfig the mapping config; may be null
+   * @return whether notes are mapped
+   */
+  static boolean isMapped(MappingConfig mappingConfig) {
+    return mappingConfig != null && mappingConfig.isNotes();
+  }
+
+  /**
+   * Create the GedcomX notes of a record or fact: one for each reference to a NOTE record and one for each inline
+   * note, each with the first line of the text and a link to the document holding the whole text. The document of an
+   * inline note is added to the result only the first time its text is seen. A reference to a NOTE record that is not
+   * in the file is skipped with a warning.
+   * @param dqNotes the inline notes
+   * @param dqNoteRefs the references to NOTE records
+   * @param mappingConfig the mapping config
+   * @return the GedcomX notes; null if there are none
+   */
+  static List<Note> toNotes(List<org.folg.gedcom.model.Note> dqNotes, List<NoteRef> dqNoteRefs, MappingConfig mappingConfig, GedcomxConversionResult result) throws IOException {
+    List<Note> gedxNotes = new ArrayList<Note>();
+
+    for (NoteRef dqNoteRef : dqNoteRefs) {
+      String ref = dqNoteRef.getRef();
+      if (ref == null) {
+        continue;
+      }
+      if (!mappingConfig.hasNoteFirstLine(ref)) {
+        logger.warn(ConversionContext.getContext(), "Reference to a missing NOTE record (@{}@) was ignored.", ref);
+        continue;
+      }
+      gedxNotes.add(toNote(mappingConfig.createId(ref), mappingConfig.getNoteFirstLine(ref)));
+    }
+
+    for (org.folg.gedcom.model.Note dqNote : dqNotes) {
+      String text = dqNote.getValue();
+      if (text == null || text.trim().isEmpty()) {
+        continue;
+      }
+
+      String id = "NOTE-" + CommonMapper.toContentHash(text);
+      if (mappingConfig.addNoteDocumentId(id)) {
+        Document gedxDocument = new Document();
+        gedxDocument.setId(id);
+        gedxDocument.setText(text);
+        result.addDocument(gedxDocument);
+      }
+      gedxNotes.add(toNote(id, toFirstLine(text)));
+    }
+
+    return gedxNotes.size() > 0 ? gedxNotes : null;
+  }
+
+  private static Note toNote(String documentId, String firstLine) {
+    Link link = new Link();
+    link.setRel(DOCUMENT_REL);
+    link.setHref(URI.create(CommonMapper.getDocumentReference(documentId)));
+    Note gedxNote = new Note();
+    gedxNote.setText(firstLine);
+    gedxNote.addLink(link);
+    return gedxNote;
+  }
+
+  /**
+   * @param text the text of a note; may be null
+   * @return the first non-blank line of the text, trimmed; null if there is none
+   */
+  static String toFirstLine(String text) {
+    if (text == null) {
+      return null;
+    }
+    for (String line : text.split("\\r\\n|\\r|\\n")) {
+      if (!line.trim().isEmpty()) {
+        return line.trim();
+      }
+    }
+    return null;
+  }
+}
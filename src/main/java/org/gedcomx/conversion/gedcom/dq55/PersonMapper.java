@@ -109,92 +109,109 @@ public class PersonMapper {
       //////////////////////////////////////////////////////////////////////
       // Process sources
 
-      List<SourceReference> sources = CommonMapper.toSourcesAndSourceReferences(dqPerson.getSourceCitations(), result);
+      List<SourceReference> sources = CommonMapper.toSourcesAndSourceReferences(dqPerson.getSourceCitations(), mappingConfig, result);
       gedxPerson.setSources(sources);
 
-
       //////////////////////////////////////////////////////////////////////
-      // Add the person to the conversion results
-      java.util.Date lastModified = CommonMapper.toDate(dqPerson.getChange()); //todo: set the timestamp on the attribution?
+      // Process notes
+
+      if (mappingConfig.isNotes()) {
+        gedxPerson.setNotes(NoteMapper.toNotes(dqPerson.getNotes(), dqPerson.getNoteRefs(), mappingConfig, result));
+      }
 
 
       //////////////////////////////////////////////////////////////////////
-      // Warn about all fields we are not processing
+      // Process reference numbers
 
-      if (dqPerson.getAssociations() != null && dqPerson.getAssociations().size() > 0) {
-        logger.warn(ConversionContext.getContext(), "Associations ignored.");
-      }
-      if (dqPerson.getRecordFileNumber() != null) {
-        logger.warn(ConversionContext.getContext(), "Record file number ignored: {}", dqPerson.getRecordFileNumber());
-      }
       if (dqPerson.getReferenceNumbers() != null && dqPerson.getReferenceNumbers().size() > 0) {
         for (String each : dqPerson.getReferenceNumbers()) {
           gedxPerson.addIdentifier(new Identifier().value(new URI(each)).type(new URI("USER_REFERENCE_NUMBER")));
         }
       }
 
-      if (dqPerson.getAncestorInterestSubmitterRef() != null) {
-        logger.warn(ConversionContext.getContext(), "Ancestor interest ignored: {}.", dqPerson.getAncestorInterestSubmitterRef());
-      }
+      //////////////////////////////////////////////////////////////////////
+      // Warn about all fields we are not processing
 
-      if (dqPerson.getDescendantInterestSubmitterRef() != null) {
-        logger.warn(ConversionContext.getContext(), "Descendant interest ignored: {}.", dqPerson.getDescendantInterestSubmitterRef());
+      if (CommonMapper.isAuditing(mappingConfig)) {
+        auditPerson(dqPerson);
       }
 
-      if (dqPerson.getAddress() != null) {
-        logger.warn(ConversionContext.getContext(), "Address was ignored: {}", dqPerson.getAddress().getDisplayValue());
+      if (postProcessor != null) {
+        postProcessor.postProcessPerson(dqPerson, gedxPerson);
       }
 
-      if (dqPerson.getEmail() != null) {
-        logger.warn(ConversionContext.getContext(), "e-mail ({}) was ignored.", dqPerson.getEmail());
-      }
-      if (dqPerson.getFax() != null) {
-        logger.warn(ConversionContext.getContext(), "fax ({}) was ignored.", dqPerson.getFax());
-      }
-      if (dqPerson.getPhone() != null) {
-        logger.warn(ConversionContext.getContext(), "phone ({}) was ignored.", dqPerson.getPhone());
-      }
-      if (dqPerson.getWww() != null) {
-        logger.warn(ConversionContext.getContext(), "www ({}) was ignored.", dqPerson.getWww());
-      }
+      result.addPerson(gedxPerson);
+    } finally {
+      ConversionContext.removeReference(personContext);
+    }
+  }
 
-      if (dqPerson.getUid() != null) {
-        Marker uidContext = ConversionContext.getDetachedMarker(dqPerson.getUidTag());
-        ConversionContext.addReference(uidContext);
-        logger.warn(ConversionContext.getContext(), "UID ({}) was ignored.", dqPerson.getUid());
-        ConversionContext.removeReference(uidContext);
-      }
+  /**
+   * Checks the person for data that is not mapped and logs a warning for each.
+   */
+  private void auditPerson(org.folg.gedcom.model.Person dqPerson) {
+    CommonMapper.toDate(dqPerson.getChange()); // only parsed to check it; todo: set the timestamp on the attribution?
 
-      if (dqPerson.getRin() != null) {
-        logger.warn(ConversionContext.getContext(), "RIN ({}) was ignored.", dqPerson.getRin());
-      }
+    if (dqPerson.getAssociations() != null && dqPerson.getAssociations().size() > 0) {
+      logger.warn(ConversionContext.getContext(), "Associations ignored.");
+    }
+    if (dqPerson.getRecordFileNumber() != null) {
+      logger.warn(ConversionContext.getContext(), "Record file number ignored: {}", dqPerson.getRecordFileNumber());
+    }
 
-      int cntNotes = dqPerson.getNotes().size() + dqPerson.getNoteRefs().size();
-      if (cntNotes > 0) {
-        logger.warn(ConversionContext.getContext(), "Did not process {} notes or references to notes.", cntNotes);
-      }
+    if (dqPerson.getAncestorInterestSubmitterRef() != null) {
+      logger.warn(ConversionContext.getContext(), "Ancestor interest ignored: {}.", dqPerson.getAncestorInterestSubmitterRef());
+    }
 
-      int cntMedia = dqPerson.getMedia().size() + dqPerson.getMediaRefs().size();
-      if (cntMedia > 0) {
-        logger.warn(ConversionContext.getContext(), "Did not process {} media items or references to media items.", cntMedia);
-      }
+    if (dqPerson.getDescendantInterestSubmitterRef() != null) {
+      logger.warn(ConversionContext.getContext(), "Descendant interest ignored: {}.", dqPerson.getDescendantInterestSubmitterRef());
+    }
 
-      if (dqPerson.getExtensions().size() > 0) {
-        for (String extensionCategory : dqPerson.getExtensions().keySet()) {
-          for (GedcomTag tag : ((List<GedcomTag>)dqPerson.getExtension(extensionCategory))) {
-            logger.warn(ConversionContext.getContext(), "Unsupported ({}): {}", extensionCategory, tag);
-            // DATA tag (and subordinates) in GEDCOM 5.5. SOURCE_RECORD not being looked for or parsed by DallanQ code
-          }
-        }
-      }
+    if (dqPerson.getAddress() != null) {
+      logger.warn(ConversionContext.getContext(), "Address was ignored: {}", dqPerson.getAddress().getDisplayValue());
+    }
 
-      if (postProcessor != null) {
-        postProcessor.postProcessPerson(dqPerson, gedxPerson);
-      }
+    if (dqPerson.getEmail() != null) {
+      logger.warn(ConversionContext.getContext(), "e-mail ({}) was ignored.", dqPerson.getEmail());
+    }
+    if (dqPerson.getFax() != null) {
+      logger.warn(ConversionContext.getContext(), "fax ({}) was ignored.", dqPerson.getFax());
+    }
+    if (dqPerson.getPhone() != null) {
+      logger.warn(ConversionContext.getContext(), "phone ({}) was ignored.", dqPerson.getPhone());
+    }
+    if (dqPerson.getWww() != null) {
+      logger.warn(ConversionContext.getContext(), "www ({}) was ignored.", dqPerson.getWww());
+    }
 
-      result.addPerson(gedxPerson);
-    } finally {
-      ConversionContext.removeReference(personContext);
+    if (dqPerson.getUid() != null) {
+      Marker uidContext = ConversionContext.getDetachedMarker(dqPerson.getUidTag());
+      ConversionContext.addReference(uidContext);
+      logger.warn(ConversionContext.getContext(), "UID ({}) was ignored.", dqPerson.getUid());
+      ConversionContext.removeReference(uidContext);
+    }
+
+    if (dqPerson.getRin() != null) {
+      logger.warn(ConversionContext.getContext(), "RIN ({}) was ignored.", dqPerson.getRin());
+    }
+
+    int cntNotes = dqPerson.getNotes().size() + dqPerson.getNoteRefs().size();
+    if (cntNotes > 0 && !mappingConfig.isNotes()) {
+      logger.warn(ConversionContext.getContext(), "Did not process {} notes or references to notes.", cntNotes);
+    }
+
+    int cntMedia = dqPerson.getMedia().size() + dqPerson.getMediaRefs().size();
+    if (cntMedia > 0) {
+      logger.warn(ConversionContext.getContext(), "Did not process {} media items or references to media items.", cntMedia);
+    }
+
+    if (dqPerson.getExtensions().size() > 0) {
+      for (String extensionCategory : dqPerson.getExtensions().keySet()) {
+        for (GedcomTag tag : ((List<GedcomTag>)dqPerson.getExtension(extensionCategory))) {
+          logger.warn(ConversionContext.getContext(), "Unsupported ({}): {}", extensionCategory, tag);
+          // DATA tag (and subordinates) in GEDCOM 5.5. SOURCE_RECORD not being looked for or parsed by DallanQ code
+        }
+      }
     }
   }
 
@@ -208,7 +225,7 @@ public class PersonMapper {
       Marker factContext = ConversionContext.getDetachedMarker(fact.getTag() + '.' + (++index));
       ConversionContext.addReference(factContext);
       try {
-        Fact gedxFact = FactMapper.toFact(fact, result);
+        Fact gedxFact = FactMapper.toFact(fact, mappingConfig, result);
 
         if(gedxFact == null) {
           fact.getType();
@@ -236,30 +253,10 @@ public class PersonMapper {
       Marker ordinanceContext = ConversionContext.getDetachedMarker(ord.getTag() + '.' + (++index));
       ConversionContext.addReference(ordinanceContext);
       try {
-        Fact ordFact = FactMapper.toOrdinance(ord);
-
-        Ordinance ordinance = new Ordinance();
-        ordinance.setCompleteDate(ordFact.getDate());
-        ordinance.setType(ordFact.getType());
-
-        if (ordinance.getCompleteDate().getOriginal().length() < 5 || ordinance.getCompleteDate().getOriginal().isEmpty()) {
-          System.out.println("Error: Missing date for " + gedxPerson.getId().toString() +
-                " ordinance: " + ordFact.getType().toString());
-        }
-
-        if (ordFact.getQualifiers() == null) {
-          System.out.println("Error: Missing qualifier (status or temple code) for  " + gedxPerson.getId().toString() +
-                  " ordinance: " + ordFact.getType().toString());
-        }
-        else if (ordFact.getQualifiers().size() == 1) {
-          ordinance.setStatus(ordFact.getQualifiers().get(0).getName());
+        Ordinance ordinance = FactMapper.toOrdinanceElement(ord, mappingConfig);
+        if (ordinance != null) {
+          gedxPerson.addExtensionElement(ordinance);
         }
-        else if (ordFact.getQualifiers().size() == 2) {
-          ordinance.setTempleCode(ordFact.getQualifiers().get(0).getValue());
-          ordinance.setStatus(ordFact.getQualifiers().get(1).getName());
-        }
-        gedxPerson.addExtensionElement(ordinance);
-//        gedxPerson.addFact(FactMapper.toOrdinance(ordinance));
       } finally {
         ConversionContext.removeReference(ordinanceContext);
       }
@@ -420,10 +417,30 @@ public class PersonMapper {
     }
 
     if ((dqName.getSourceCitations() != null) && (dqName.getSourceCitations().size() > 0)) {
-      List<SourceReference> sources = CommonMapper.toSourcesAndSourceReferences(dqName.getSourceCitations(), result);
+      List<SourceReference> sources = CommonMapper.toSourcesAndSourceReferences(dqName.getSourceCitations(), mappingConfig, result);
       gedxName.setSources(sources);
     }
 
+    if (CommonMapper.isAuditing(mappingConfig)) {
+      auditName(dqName);
+    }
+
+    //dqName.getAkaTag() // data about GEDCOM 5.5 formatting that we will not preserve
+    //dqName.getTypeTag() // data about GEDCOM 5.5 formatting that we will not preserve
+
+    //dqName.getAllMedia(); // media not handled via this method; see getMedia and getMediaRefs
+    //dqName.getAllNotes(); // notes not handled via this method; see getNotes and getNoteRefs
+
+    //gedxName.setAttribution(); // DallanQ parser currently chooses not to handle per-item SUBM references
+    //gedxName.setPreferred(); // handled outside this mapping method
+
+    return nameList;
+  }
+
+  /**
+   * Checks the name for data that is not mapped and logs a warning for each.
+   */
+  private void auditName(org.folg.gedcom.model.Name dqName) {
     if ((dqName.getType() != null) && (dqName.getType().trim().length() > 0)) {
       Marker nameTypeContext = ConversionContext.getDetachedMarker((dqName.getTypeTag() == null)?"Undetermined":dqName.getTypeTag());
       ConversionContext.addReference(nameTypeContext);
@@ -451,17 +468,6 @@ public class PersonMapper {
         }
       }
     }
-
-    //dqName.getAkaTag() // data about GEDCOM 5.5 formatting that we will not preserve
-    //dqName.getTypeTag() // data about GEDCOM 5.5 formatting that we will not preserve
-
-    //dqName.getAllMedia(); // media not handled via this method; see getMedia and getMediaRefs
-    //dqName.getAllNotes(); // notes not handled via this method; see getNotes and getNoteRefs
-
-    //gedxName.setAttribution(); // DallanQ parser currently chooses not to handle per-item SUBM references
-    //gedxName.setPreferred(); // handled outside this mapping method
-
-    return nameList;
   }
 
   private String getNameValue(org.folg.gedcom.model.Name dqName) {
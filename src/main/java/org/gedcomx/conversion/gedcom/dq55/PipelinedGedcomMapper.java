@@ -0,0 +1,490 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.folg.gedcom.model.Gedcom;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Document;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.conversion.DatasetStatistics;
+import org.gedcomx.conversion.GedcomxConversionResult;
+import org.gedcomx.conversion.LeanJsonSerialization;
+import org.gedcomx.conversion.StreamingDataset;
+import org.gedcomx.conversion.gedcom.GedcomRecordIndex;
+import org.gedcomx.rt.json.GedcomJacksonModule;
+import org.gedcomx.source.SourceDescription;
+
+/**
+ * Converts an indexed GEDCOM file in three overlapping stages instead of one after the other:
+ * <ul>
+ *   <li>a parser thread parses chunks of records from their byte ranges,</li>
+ *   <li>one or more mapper threads run the dq55 mappers on each chunk, and</li>
+ *   <li>the thread calling {@link #writeDataset(OutputStream)} serializes the mapped entities, in file order, into
+ *   the output (and compresses them, when that is a .gedx entry).</li>
+ * </ul>
+ * The stages are connected by bounded queues, so a slow stage holds back the ones before it. The writer has to write
+ * the chunks in file order, so the parser also hands out no more than twice as many chunks as there are mapper
+ * threads ahead of the writer. The chunks that finish while an earlier, slower one is still being mapped cannot pile
+ * up in front of the writer.
+ *
+ * Persons and relationships are written as soon as they are mapped; source descriptions, organizations, place
+ * descriptions and note documents are kept until the end. With more than one mapper thread, the numbering of the
+ * generated source description ids depends on thread scheduling. Batch post-processors run on the mapper threads,
+ * on batches that do not span chunks. Once the last chunk is parsed, the parser stage hands each mapper thread an
+ * end-of-input marker, on which it stops.
+ */
+public class PipelinedGedcomMapper implements StreamingDataset, Closeable {
+
+  private static final int POLL_MILLISECONDS = 100;
+
+  /**
+   * Handed to each mapper thread after the last chunk.
+   */
+  private static final ParsedChunk END_OF_INPUT = new ParsedChunk(-1, null, null, 0, 0);
+
+  private final MappingConfig mappingConfig;
+  private final int mapperThreadCount;
+  private final int recordsPerChunk;
+  private final List<BatchPostProcessor> batchPostProcessors;
+  private final LeanJsonSerialization leanSerialization;
+  private final ObjectMapper objectMapper;
+
+  private final List<ParsedChunk> plan = new ArrayList<ParsedChunk>();
+  private BlockingQueue<ParsedChunk> parsedChunks;
+  private BlockingQueue<MappedChunk> mappedChunks;
+  private Semaphore chunksInFlight;
+  private int maxEarlyChunks = 0;
+  private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+  private ExecutorService executor;
+  private volatile boolean written = false;
+  private GedcomRecordReader reader;
+  private String langCode;
+  private final DatasetStatistics statistics = new DatasetStatistics();
+
+  /**
+   * @param mappingConfig the mapping configuration
+   * @param mapperThreadCount the number of mapper threads
+   * @param recordsPerChunk how many records the parser stage parses at a time
+   * @param extensionClasses extension classes that appear in the entities, e.g. ordinances
+   */
+  public PipelinedGedcomMapper(MappingConfig mappingConfig, int mapperThreadCount, int recordsPerChunk, Class<?>... extensionClasses) {
+    this(mappingConfig, mapperThreadCount, recordsPerChunk, Collections.<BatchPostProcessor>emptyList(), null, extensionClasses);
+  }
+
+  /**
+   * @param mappingConfig the mapping configuration
+   * @param mapperThreadCount the number of mapper threads
+   * @param recordsPerChunk how many records the parser stage parses at a time
+   * @param batchPostProcessors the batch post-processors, run on the mapper threads; may be empty
+   * @param leanSerialization writes the persons and relationships; null to write them through the GEDCOM X Jackson
+   * mapping
+   * @param extensionClasses extension classes that appear in the entities, e.g. ordinances
+   */
+  public PipelinedGedcomMapper(MappingConfig mappingConfig, int mapperThreadCount, int recordsPerChunk, List<BatchPostProcessor> batchPostProcessors, LeanJsonSerialization leanSerialization, Class<?>... extensionClasses) {
+    this.mappingConfig = mappingConfig;
+    this.mapperThreadCount = Math.max(1, mapperThreadCount);
+    this.recordsPerChunk = recordsPerChunk;
+    this.batchPostProcessors = batchPostProcessors;
+    this.leanSerialization = leanSerialization;
+    this.objectMapper = GedcomJacksonModule.createObjectMapper(extensionClasses);
+  }
+
+  /**
+   * Maps the header and submitter and, when notes are mapped, reads the first lines of the NOTE records, which are
+   * needed before anything is written, and starts the parser and mapper stages.
+   * @param recordIndex the index of the records of the file
+   * @return the dataset contributor, or null if the file has no submitter
+   */
+  public Agent start(GedcomRecordIndex recordIndex) throws IOException {
+    mappingConfig.startConversion();
+    mappingConfig.numberCompactIds(recordIndex);
+    reader = new GedcomRecordReader(recordIndex);
+
+    int[] submitters = recordIndex.getOrdinals("SUBM");
+    Gedcom dqHeader = reader.read(submitters, 0, Math.min(1, submitters.length));
+    MappedChunk header = new MappedChunk(-1);
+    GedcomMapper mapper = new GedcomMapper(mappingConfig);
+    if (mappingConfig.isNotes()) {
+      mapper.addNoteFirstLines(reader, recordIndex, recordsPerChunk);
+    }
+    if (dqHeader.getSubmitters() != null && !dqHeader.getSubmitters().isEmpty()) {
+      mapper.toContributor(dqHeader.getSubmitters().get(0), header);
+    }
+    mapper.toLanguage(dqHeader, header);
+    langCode = header.langCode;
+
+    planChunks(recordIndex, "INDI");
+    planChunks(recordIndex, "FAM");
+    planChunks(recordIndex, "SOUR");
+    planChunks(recordIndex, "REPO");
+    if (mappingConfig.isNotes()) {
+      planChunks(recordIndex, "NOTE");
+    }
+
+    parsedChunks = new ArrayBlockingQueue<ParsedChunk>(mapperThreadCount * 2);
+    mappedChunks = new ArrayBlockingQueue<MappedChunk>(mapperThreadCount * 2);
+    chunksInFlight = new Semaphore(mapperThreadCount * 2);
+    executor = Executors.newFixedThreadPool(1 + mapperThreadCount);
+    final FamilyMembershipIndex familyMembership = new FamilyMembershipIndex();
+    executor.execute(() -> parse(familyMembership));
+    for (int i = 0; i < mapperThreadCount; i++) {
+      executor.execute(() -> map(familyMembership));
+    }
+
+    return header.contributor;
+  }
+
+  private void planChunks(GedcomRecordIndex recordIndex, String tag) {
+    int[] ordinals = recordIndex.getOrdinals(tag);
+    for (int from = 0; from < ordinals.length; from += recordsPerChunk) {
+      plan.add(new ParsedChunk(plan.size(), tag, ordinals, from, Math.min(ordinals.length, from + recordsPerChunk)));
+    }
+  }
+
+  /**
+   * The parser stage. The individuals come first in the plan, so their family links are all in the index before
+   * any family chunk is handed to a mapper.
+   */
+  private void parse(FamilyMembershipIndex familyMembership) {
+    try {
+      for (ParsedChunk chunk : plan) {
+        // released by the writer once the chunk is written; chunks are handed out in file order, so the chunk the
+        // writer waits for always has a permit
+        chunksInFlight.acquire();
+        chunk.dqChunk = reader.read(chunk.ordinals, chunk.from, chunk.to);
+        if ("INDI".equals(chunk.tag)) {
+          familyMembership.addPersons(chunk.dqChunk.getPeople());
+        }
+        parsedChunks.put(chunk);
+      }
+      for (int i = 0; i < mapperThreadCount; i++) {
+        parsedChunks.put(END_OF_INPUT);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Throwable e) {
+      failure.compareAndSet(null, e);
+    }
+  }
+
+  /**
+   * The mapper stage, until the end of the input or a failure of another stage.
+   */
+  private void map(FamilyMembershipIndex familyMembership) {
+    GedcomMapper mapper = new GedcomMapper(mappingConfig);
+    try {
+      while (failure.get() == null) {
+        ParsedChunk chunk = parsedChunks.take();
+        if (chunk == END_OF_INPUT) {
+          return;
+        }
+
+        MappedChunk mapped = new MappedChunk(chunk.sequence);
+        // on the mapper thread, which already runs alongside the others
+        PostProcessingQueue postProcessing = batchPostProcessors.isEmpty() ? null : new PostProcessingQueue(mapped, batchPostProcessors, 0, GedcomMapper.DEFAULT_POST_PROCESSING_BATCH_SIZE);
+        GedcomxConversionResult target = postProcessing == null ? mapped : postProcessing;
+        Gedcom dqChunk = chunk.dqChunk;
+        chunk.dqChunk = null;
+        if ("INDI".equals(chunk.tag)) {
+          mapper.toPersons(dqChunk.getPeople(), target);
+        } else if ("FAM".equals(chunk.tag)) {
+          mapper.toRelationships(dqChunk.getFamilies(), familyMembership, target);
+        } else if ("SOUR".equals(chunk.tag)) {
+          mapper.toSourceDescriptions(dqChunk.getSources(), target);
+        } else if ("NOTE".equals(chunk.tag)) {
+          mapper.toDocuments(dqChunk.getNotes(), target);
+        } else {
+          mapper.toOrganizations(dqChunk.getRepositories(), target);
+        }
+        if (postProcessing != null) {
+          postProcessing.finish();
+        }
+        mappedChunks.put(mapped);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Throwable e) {
+      failure.compareAndSet(null, e);
+    }
+  }
+
+  /**
+   * The writer stage: writes the mapped chunks as a GEDCOM X JSON document, in file order, as they become available.
+   */
+  @Override
+  public void writeDataset(OutputStream out) throws IOException {
+    if (executor == null) {
+      throw new IllegalStateException("The pipeline has not been started.");
+    }
+
+    JsonGenerator generator = leanSerialization != null ? leanSerialization.createGenerator(out) : objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+    generator.writeStartObject();
+
+    Gedcomx tail = new Gedcomx();
+    tail.setLang(langCode);
+    List<SourceDescription> sourceDescriptions = new ArrayList<SourceDescription>();
+    List<Agent> organizations = new ArrayList<Agent>();
+    List<PlaceDescription> places = new ArrayList<PlaceDescription>();
+    List<Document> documents = new ArrayList<Document>();
+    String openArray = null;
+    List<String> closedArrays = new ArrayList<String>();
+
+    // holds fewer chunks than are in flight, as the chunk being waited for is one of them
+    Map<Integer, MappedChunk> early = new HashMap<Integer, MappedChunk>();
+    for (int sequence = 0; sequence < plan.size(); sequence++) {
+      MappedChunk chunk = early.remove(sequence);
+      while (chunk == null) {
+        chunk = takeMappedChunk();
+        if (chunk.sequence != sequence) {
+          early.put(chunk.sequence, chunk);
+          maxEarlyChunks = Math.max(maxEarlyChunks, early.size());
+          chunk = null;
+        }
+      }
+
+      for (Object entity : chunk.entities) {
+        if (entity instanceof Person || entity instanceof Relationship) {
+          String arrayName = entity instanceof Person ? "persons" : "relationships";
+          if (!arrayName.equals(openArray)) {
+            if (closedArrays.contains(arrayName)) {
+              throw new IllegalStateException("The " + arrayName + " are not contiguous in the mapped output.");
+            }
+            if (openArray != null) {
+              generator.writeEndArray();
+              closedArrays.add(openArray);
+            }
+            generator.writeArrayFieldStart(arrayName);
+            openArray = arrayName;
+          }
+          if (entity instanceof Person) {
+            if (leanSerialization != null) {
+              leanSerialization.writePerson(generator, (Person) entity);
+            } else {
+              objectMapper.writeValue(generator, entity);
+            }
+            statistics.add((Person) entity);
+          } else {
+            if (leanSerialization != null) {
+              leanSerialization.writeRelationship(generator, (Relationship) entity);
+            } else {
+              objectMapper.writeValue(generator, entity);
+            }
+            statistics.add((Relationship) entity);
+          }
+        } else if (entity instanceof SourceDescription) {
+          sourceDescriptions.add((SourceDescription) entity);
+          statistics.add((SourceDescription) entity);
+        } else if (entity instanceof PlaceDescription) {
+          places.add((PlaceDescription) entity);
+          statistics.add((PlaceDescription) entity);
+        } else if (entity instanceof Document) {
+          documents.add((Document) entity);
+          statistics.add((Document) entity);
+        } else {
+          organizations.add((Agent) entity);
+          statistics.add((Agent) entity);
+        }
+      }
+      chunksInFlight.release();
+    }
+    if (openArray != null) {
+      generator.writeEndArray();
+    }
+
+    if (!sourceDescriptions.isEmpty()) {
+      tail.setSourceDescriptions(sourceDescriptions);
+    }
+    if (!organizations.isEmpty()) {
+      tail.setAgents(organizations);
+    }
+    if (!places.isEmpty()) {
+      tail.setPlaces(places);
+    }
+    if (!documents.isEmpty()) {
+      tail.setDocuments(documents);
+    }
+    Iterator<Map.Entry<String, JsonNode>> fields = objectMapper.valueToTree(tail).fields();
+    while (fields.hasNext()) {
+      Map.Entry<String, JsonNode> field = fields.next();
+      generator.writeFieldName(field.getKey());
+      objectMapper.writeTree(generator, field.getValue());
+    }
+
+    generator.writeEndObject();
+    generator.flush();
+    written = true;
+  }
+
+  /**
+   * @return the counts of the entities written so far by {@link #writeDataset(OutputStream)}
+   */
+  public DatasetStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * @return the most chunks that were mapped ahead of the one the writer was waiting for
+   */
+  int getMaxEarlyChunks() {
+    return maxEarlyChunks;
+  }
+
+  private MappedChunk takeMappedChunk() throws IOException {
+    try {
+      while (true) {
+        Throwable cause = failure.get();
+        if (cause != null) {
+          throw cause instanceof IOException ? (IOException) cause : new IOException("Pipelined conversion failed: " + cause, cause);
+        }
+        MappedChunk chunk = mappedChunks.poll(POLL_MILLISECONDS, TimeUnit.MILLISECONDS);
+        if (chunk != null) {
+          return chunk;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for mapped records.", e);
+    }
+  }
+
+  /**
+   * Waits for the stages to stop, or interrupts them if the dataset was not written to the end, and releases the file
+   * opened by the parser stage.
+   */
+  @Override
+  public void close() throws IOException {
+    if (executor != null) {
+      if (written) {
+        executor.shutdown();
+      } else {
+        executor.shutdownNow();
+      }
+      try {
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (reader != null) {
+      reader.close();
+    }
+  }
+
+  private static final class ParsedChunk {
+    private final int sequence;
+    private final String tag;
+    private final int[] ordinals;
+    private final int from;
+    private final int to;
+    private Gedcom dqChunk;
+
+    ParsedChunk(int sequence, String tag, int[] ordinals, int from, int to) {
+      this.sequence = sequence;
+      this.tag = tag;
+      this.ordinals = ordinals;
+      this.from = from;
+      this.to = to;
+    }
+  }
+
+  /**
+   * Collects what the mappers produce for one chunk, in order.
+   */
+  private static final class MappedChunk implements GedcomxConversionResult {
+    private final int sequence;
+    private final List<Object> entities = new ArrayList<Object>();
+    private Agent contributor;
+    private String langCode;
+
+    MappedChunk(int sequence) {
+      this.sequence = sequence;
+    }
+
+    @Override
+    public Gedcomx getDataset() {
+      return null;
+    }
+
+    @Override
+    public Agent getDatasetContributor() {
+      return contributor;
+    }
+
+    @Override
+    public void setDatasetContributor(Agent person) throws IOException {
+      this.contributor = person;
+    }
+
+    @Override
+    public void addPerson(Person person) throws IOException {
+      entities.add(person);
+    }
+
+    @Override
+    public void addRelationship(Relationship relationship) throws IOException {
+      entities.add(relationship);
+    }
+
+    @Override
+    public void addSourceDescription(SourceDescription description) throws IOException {
+      entities.add(description);
+    }
+
+    @Override
+    public void addOrganization(Agent organization) throws IOException {
+      entities.add(organization);
+    }
+
+    @Override
+    public void addPlaceDescription(PlaceDescription place) throws IOException {
+      entities.add(place);
+    }
+
+    @Override
+    public void addDocument(Document document) throws IOException {
+      entities.add(document);
+    }
+
+    @Override
+    public void addLanguage(String langCode) {
+      this.langCode = langCode;
+    }
+  }
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Document;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.conversion.GedcomxConversionResult;
+import org.gedcomx.conversion.RecordAwareConversionResult;
+import org.gedcomx.source.SourceDescription;
+
+/**
+ * Sits between the mappers and the conversion result when batch post-processors are configured. The entities added
+ * while a record is mapped are held until {@link #endRecord(Object)}, grouped into batches, post-processed on a pool
+ * of threads and then passed on to the result, batch by batch, in the order they were mapped. At most a fixed
+ * number of batches are in flight, so a slow post-processor holds back the mapping instead of filling the heap.
+ */
+class PostProcessingQueue implements GedcomxConversionResult {
+
+  private final GedcomxConversionResult result;
+  private final List<BatchPostProcessor> postProcessors;
+  private final int batchSize;
+  private final int maxInFlight;
+  private final ExecutorService executor;
+
+  private final List<Object> recordEntities = new ArrayList<Object>();
+  private Agent recordContributor;
+  private Batch batch = new Batch();
+  private final ArrayDeque<Future<Batch>> inFlight = new ArrayDeque<Future<Batch>>();
+
+  /**
+   * @param result the result the post-processed entities are passed on to
+   * @param postProcessors the post-processors
+   * @param threadCount the number of post-processing threads; zero to post-process on the mapping thread
+   * @param batchSize the number of records per batch
+   */
+  PostProcessingQueue(GedcomxConversionResult result, List<BatchPostProcessor> postProcessors, int threadCount, int batchSize) {
+    this.result = result;
+    this.postProcessors = postProcessors;
+    this.batchSize = batchSize;
+    this.maxInFlight = Math.max(1, threadCount * 2);
+    this.executor = threadCount > 0 ? Executors.newFixedThreadPool(threadCount) : null;
+  }
+
+  @Override
+  public Gedcomx getDataset() {
+    return result.getDataset();
+  }
+
+  @Override
+  public Agent getDatasetContributor() {
+    return recordContributor != null ? recordContributor : result.getDatasetContributor();
+  }
+
+  @Override
+  public void setDatasetContributor(Agent person) throws IOException {
+    recordContributor = person;
+  }
+
+  @Override
+  public void addPerson(Person person) throws IOException {
+    recordEntities.add(person);
+  }
+
+  @Override
+  public void addRelationship(Relationship relationship) throws IOException {
+    recordEntities.add(relationship);
+  }
+
+  @Override
+  public void addSourceDescription(SourceDescription description) throws IOException {
+    recordEntities.add(description);
+  }
+
+  @Override
+  public void addOrganization(Agent organization) throws IOException {
+    recordEntities.add(organization);
+  }
+
+  @Override
+  public void addPlaceDescription(PlaceDescription place) throws IOException {
+    // place descriptions are shared by the records that refer to them, so they are not post-processed with a record
+    result.addPlaceDescription(place);
+  }
+
+  @Override
+  public void addDocument(Document document) throws IOException {
+    // shared notes are referenced from many records, so they are not post-processed with a record either
+    result.addDocument(document);
+  }
+
+  @Override
+  public void addLanguage(String langCode) {
+    result.addLanguage(langCode);
+  }
+
+  /**
+   * Moves the entities added since the previous call into the current batch, paired with the record they were
+   * mapped from, and submits the batch once it is full.
+   * @param dqRecord the GEDCOM 5.5 record that was just mapped
+   */
+  void endRecord(Object dqRecord) throws IOException {
+    for (Object entity : recordEntities) {
+      batch.add(dqRecord, entity);
+    }
+    recordEntities.clear();
+
+    if (recordContributor != null) {
+      batch.contributor = new MappedEntity<Agent>(dqRecord, recordContributor);
+      batch.agents.add(batch.contributor);
+      recordContributor = null;
+    }
+
+    if (++batch.recordCount >= batchSize) {
+      submit();
+    }
+  }
+
+  /**
+   * Post-processes what is left and waits until every entity has been passed on to the result.
+   */
+  void finish() throws IOException {
+    submit();
+    while (!inFlight.isEmpty()) {
+      forward(inFlight.poll());
+    }
+  }
+
+  /**
+   * Stops the post-processing threads.
+   */
+  void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  private void submit() throws IOException {
+    if (batch.recordCount == 0) {
+      return;
+    }
+    final Batch submitted = batch;
+    batch = new Batch();
+
+    if (executor == null) {
+      submitted.postProcess(postProcessors);
+      submitted.replay(result);
+      return;
+    }
+
+    inFlight.add(executor.submit(() -> {
+      submitted.postProcess(postProcessors);
+      return submitted;
+    }));
+    while (inFlight.size() > maxInFlight || (!inFlight.isEmpty() && inFlight.peek().isDone())) {
+      forward(inFlight.poll());
+    }
+  }
+
+  private void forward(Future<Batch> future) throws IOException {
+    try {
+      future.get().replay(result);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for post-processing.", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Post-processing failed: " + e.getCause(), e.getCause());
+    }
+  }
+
+  private static final class Batch {
+    private final List<MappedEntity<Person>> persons = new ArrayList<MappedEntity<Person>>();
+    private final List<MappedEntity<Relationship>> relationships = new ArrayList<MappedEntity<Relationship>>();
+    private final List<MappedEntity<SourceDescription>> sourceDescriptions = new ArrayList<MappedEntity<SourceDescription>>();
+    private final List<MappedEntity<Agent>> agents = new ArrayList<MappedEntity<Agent>>();
+    private final List<Object> order = new ArrayList<Object>();
+    private MappedEntity<Agent> contributor;
+    private int recordCount = 0;
+
+    void add(Object dqRecord, Object entity) {
+      if (entity instanceof Person) {
+        persons.add(new MappedEntity<Person>(dqRecord, (Person) entity));
+      } else if (entity instanceof Relationship) {
+        relationships.add(new MappedEntity<Relationship>(dqRecord, (Relationship) entity));
+      } else if (entity instanceof SourceDescription) {
+        sourceDescriptions.add(new MappedEntity<SourceDescription>(dqRecord, (SourceDescription) entity));
+      } else {
+        agents.add(new MappedEntity<Agent>(dqRecord, (Agent) entity));
+      }
+      order.add(entity);
+    }
+
+    void postProcess(List<BatchPostProcessor> postProcessors) {
+      for (BatchPostProcessor postProcessor : postProcessors) {
+        if (!persons.isEmpty()) {
+          postProcessor.postProcessPersons(persons);
+        }
+        if (!relationships.isEmpty()) {
+          postProcessor.postProcessRelationships(relationships);
+        }
+        if (!sourceDescriptions.isEmpty()) {
+          postProcessor.postProcessSourceDescriptions(sourceDescriptions);
+        }
+        if (!agents.isEmpty()) {
+          postProcessor.postProcessAgents(agents);
+        }
+      }
+    }
+
+    void replay(GedcomxConversionResult result) throws IOException {
+      for (Object entity : order) {
+        if (entity instanceof Person) {
+          result.addPerson((Person) entity);
+        } else if (entity instanceof Relationship) {
+          result.addRelationship((Relationship) entity);
+        } else if (entity instanceof SourceDescription) {
+          result.addSourceDescription((SourceDescription) entity);
+        } else {
+          result.addOrganization((Agent) entity);
+        }
+      }
+      if (contributor != null) {
+        result.setDatasetContributor(contributor.getEntity());
+      }
+      // the entities of a batch are complete once they are post-processed
+      if (result instanceof RecordAwareConversionResult) {
+        ((RecordAwareConversionResult) result).endRecord();
+      }
+    }
+  }
+}
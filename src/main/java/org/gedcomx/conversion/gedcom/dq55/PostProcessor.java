@@ -25,7 +25,8 @@ import org.folg.gedcom.model.Person;
  * from the provided org.folg.gedcom.model.Person and use it to add information to or modify the
  * provided org.gedcomx.conclusion.Person.
  *
- * There isn't support for supplying a PostProcessor to be used when run from the command-line.
+ * There isn't support for supplying a PostProcessor to be used when run from the command-line; use a
+ * {@link BatchPostProcessor} for that, or to post-process relationships, sources and agents.
  *
  * Created on 12/5/17
  *
@@ -26,14 +26,12 @@ import org.gedcomx.common.TextValue;
 import org.gedcomx.common.URI;
 import org.gedcomx.conversion.GedcomxConversionResult;
 import org.gedcomx.agent.Agent;
-import org.gedcomx.source.CitationField;
 import org.gedcomx.source.SourceDescription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Marker;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -41,6 +39,29 @@ import java.util.List;
 public class SourceDescriptionMapper {
   private static final Logger logger = LoggerFactory.getLogger(CommonMapper.class);
 
+  private final CitationTemplate citationTemplate;
+  private final MappingConfig mappingConfig;
+
+  public SourceDescriptionMapper() {
+    this(CitationTemplate.GEDCOM5);
+  }
+
+  /**
+   * @param citationTemplate the template of the citations of the source descriptions
+   */
+  public SourceDescriptionMapper(CitationTemplate citationTemplate) {
+    this.citationTemplate = citationTemplate;
+    this.mappingConfig = null;
+  }
+
+  /**
+   * @param mappingConfig the mapping config, for the citation template and the mapping profile
+   */
+  public SourceDescriptionMapper(MappingConfig mappingConfig) {
+    this.citationTemplate = mappingConfig.getCitationTemplate();
+    this.mappingConfig = mappingConfig;
+  }
+
   public void toSourceDescription(Source dqSource, GedcomxConversionResult result) throws IOException {
     Marker sourceContext = ConversionContext.getDetachedMarker(String.format("@%s@ SOUR", dqSource.getId()));
     ConversionContext.addReference(sourceContext);
@@ -55,38 +76,10 @@ public class SourceDescriptionMapper {
         gedxSourceDescription.setTitles(Arrays.asList(new TextValue(dqSource.getTitle())));
       }
 
-      org.gedcomx.source.SourceCitation citation = new org.gedcomx.source.SourceCitation();
-      citation.setCitationTemplate(new ResourceReference(URI.create("gedcom5:citation-template")));
-      citation.setFields(new ArrayList<CitationField>());
-      citation.setValue("");
-
-      if (dqSource.getAuthor() != null) {
-        CitationField field = new CitationField();
-        field.setName(URI.create("gedcom5:citation-template/author"));
-        field.setValue(dqSource.getAuthor());
-        citation.getFields().add(field);
-        citation.setValue(citation.getValue() + (citation.getValue().length() > 0 ? ", " + dqSource.getAuthor() : dqSource.getAuthor()));
-      }
-
-      if (dqSource.getTitle() != null) {
-        CitationField field = new CitationField();
-        field.setName(URI.create("gedcom5:citation-template/title"));
-        field.setValue(dqSource.getTitle());
-        citation.getFields().add(field);
-        citation.setValue(citation.getValue() + (citation.getValue().length() > 0 ? ", " + dqSource.getTitle() : dqSource.getTitle()));
-      }
-
-      if (dqSource.getPublicationFacts() != null) {
-        CitationField field = new CitationField();
-        field.setName(URI.create("gedcom5:citation-template/publication-facts"));
-        field.setValue(dqSource.getPublicationFacts());
-        citation.getFields().add(field);
-        citation.setValue(citation.getValue() + (citation.getValue().length() > 0 ? ", " + dqSource.getPublicationFacts() : dqSource.getPublicationFacts()));
-      }
-
-      if (dqSource.getText() != null) {
-        logger.warn(ConversionContext.getContext(), "GEDCOM X does not currently support text extracted from a source.");
-      }
+      CitationBuilder citation = citationTemplate.newCitation()
+        .field("author", dqSource.getAuthor())
+        .field("title", dqSource.getTitle())
+        .field("publication-facts", dqSource.getPublicationFacts());
 
       if (dqSource.getRepositoryRef() != null) {
         Marker repoContext = ConversionContext.getDetachedMarker("REPO");
@@ -113,92 +106,92 @@ public class SourceDescriptionMapper {
             gedxSourceDescription.setMediator(new ResourceReference(URI.create(CommonMapper.getOrganizationReference(inlineRepoId))));
           }
 
-          if (dqRepositoryRef.getCallNumber() != null) {
-            CitationField field = new CitationField();
-            field.setName(URI.create("gedcom5:citation-template/call-number"));
-            field.setValue(dqRepositoryRef.getCallNumber());
-            citation.getFields().add(field);
-            citation.setValue(citation.getValue() + (citation.getValue().length() > 0 ? ", " + dqRepositoryRef.getCallNumber() : dqRepositoryRef.getCallNumber()));
-          }
+          citation.field("call-number", dqRepositoryRef.getCallNumber());
         }
         finally {
           ConversionContext.removeReference(repoContext);
         }
       }
 
-      if (dqSource.getCallNumber() != null) {
-        CitationField field = new CitationField();
-        field.setName(URI.create("gedcom5:citation-template/call-number"));
-        field.setValue(dqSource.getCallNumber());
-        citation.getFields().add(field);
-        citation.setValue(citation.getValue() + (citation.getValue().length() > 0 ? ", " + dqSource.getCallNumber() : dqSource.getCallNumber()));
+      citation.field("call-number", dqSource.getCallNumber());
+
+      if (!citation.isEmpty()) {
+        gedxSourceDescription.setCitations(Arrays.asList(citation.terminate('.').build()));
       }
 
-      if (citation.getValue().length() > 0) {
-        citation.setValue(citation.getValue() + '.');
-        gedxSourceDescription.setCitations(Arrays.asList(citation));
+      if (CommonMapper.isAuditing(mappingConfig)) {
+        auditSource(dqSource);
       }
 
-      // dqSource.getMediaType();  // nothing equivalent in the GEDCOM X model
+      //dqSource.getItalic(); // PAF extension elements; will not process
+      //dqSource.getParen();  // PAF extension elements; will not process
 
-      int cntNotes = dqSource.getNotes().size() + dqSource.getNoteRefs().size();
-      if (cntNotes > 0) {
-        logger.warn(ConversionContext.getContext(), "Did not process {} notes or references to notes.", cntNotes);
-      }
+      result.addSourceDescription(gedxSourceDescription);
+    }
+    finally {
+      ConversionContext.removeReference(sourceContext);
+    }
+  }
 
-      int cntMedia = dqSource.getMedia().size() + dqSource.getMediaRefs().size();
-      if (cntMedia > 0) {
-        logger.warn(ConversionContext.getContext(), "Did not process {} media items or references to media items.", cntMedia);
-      }
+  /**
+   * Checks the source for data that is not mapped and logs a warning for each.
+   */
+  private void auditSource(Source dqSource) {
+    if (dqSource.getText() != null) {
+      logger.warn(ConversionContext.getContext(), "GEDCOM X does not currently support text extracted from a source.");
+    }
 
-      if (dqSource.getType() != null) {
-        Marker nameTypeContext = ConversionContext.getDetachedMarker(dqSource.getTypeTag());
-        ConversionContext.addReference(nameTypeContext);
-        logger.warn(ConversionContext.getContext(), "Source type ({}) was ignored.", dqSource.getType());
-        ConversionContext.removeReference(nameTypeContext);
-      }
+    // dqSource.getMediaType();  // nothing equivalent in the GEDCOM X model
 
-      if (dqSource.getDate() != null) {
-        Marker dateContext = ConversionContext.getDetachedMarker("DATE");
-        ConversionContext.addReference(dateContext);
-        logger.warn(ConversionContext.getContext(), "Specificaton does not define the meaning of DATE in this context; value ({}) was ignored.", dqSource.getDate());
-        ConversionContext.removeReference(dateContext);
-      }
+    int cntNotes = dqSource.getNotes().size() + dqSource.getNoteRefs().size();
+    if (cntNotes > 0) {
+      logger.warn(ConversionContext.getContext(), "Did not process {} notes or references to notes.", cntNotes);
+    }
 
-      if (dqSource.getReferenceNumber() != null) {
-        Marker refnContext = ConversionContext.getDetachedMarker("REFN");
-        ConversionContext.addReference(refnContext);
-        logger.warn(ConversionContext.getContext(), "User reference number ({}) was ignored.", dqSource.getReferenceNumber());
-        ConversionContext.removeReference(refnContext);
-      }
+    int cntMedia = dqSource.getMedia().size() + dqSource.getMediaRefs().size();
+    if (cntMedia > 0) {
+      logger.warn(ConversionContext.getContext(), "Did not process {} media items or references to media items.", cntMedia);
+    }
 
-      if (dqSource.getRin() != null) {
-        logger.warn(ConversionContext.getContext(), "RIN ({}) was ignored.", dqSource.getRin());
-      }
+    if (dqSource.getType() != null) {
+      Marker nameTypeContext = ConversionContext.getDetachedMarker(dqSource.getTypeTag());
+      ConversionContext.addReference(nameTypeContext);
+      logger.warn(ConversionContext.getContext(), "Source type ({}) was ignored.", dqSource.getType());
+      ConversionContext.removeReference(nameTypeContext);
+    }
 
-      if (dqSource.getUid() != null) {
-        Marker uidContext = ConversionContext.getDetachedMarker(dqSource.getUidTag());
-        ConversionContext.addReference(uidContext);
-        logger.warn(ConversionContext.getContext(), "UID ({}) was ignored.", dqSource.getUid());
-        ConversionContext.removeReference(uidContext);
-      }
+    if (dqSource.getDate() != null) {
+      Marker dateContext = ConversionContext.getDetachedMarker("DATE");
+      ConversionContext.addReference(dateContext);
+      logger.warn(ConversionContext.getContext(), "Specificaton does not define the meaning of DATE in this context; value ({}) was ignored.", dqSource.getDate());
+      ConversionContext.removeReference(dateContext);
+    }
 
-      if (dqSource.getExtensions().size() > 0) {
-        for (String extensionCategory : dqSource.getExtensions().keySet()) {
-          for (GedcomTag tag : ((List<GedcomTag>) dqSource.getExtension(extensionCategory))) {
-            logger.warn(ConversionContext.getContext(), "Unsupported ({}): {}", extensionCategory, tag);
-            // DATA tag (and subordinates) in GEDCOM 5.5. SOURCE_RECORD not being looked for or parsed by DallanQ code
-          }
-        }
-      }
+    if (dqSource.getReferenceNumber() != null) {
+      Marker refnContext = ConversionContext.getDetachedMarker("REFN");
+      ConversionContext.addReference(refnContext);
+      logger.warn(ConversionContext.getContext(), "User reference number ({}) was ignored.", dqSource.getReferenceNumber());
+      ConversionContext.removeReference(refnContext);
+    }
 
-      //dqSource.getItalic(); // PAF extension elements; will not process
-      //dqSource.getParen();  // PAF extension elements; will not process
+    if (dqSource.getRin() != null) {
+      logger.warn(ConversionContext.getContext(), "RIN ({}) was ignored.", dqSource.getRin());
+    }
 
-      result.addSourceDescription(gedxSourceDescription);
+    if (dqSource.getUid() != null) {
+      Marker uidContext = ConversionContext.getDetachedMarker(dqSource.getUidTag());
+      ConversionContext.addReference(uidContext);
+      logger.warn(ConversionContext.getContext(), "UID ({}) was ignored.", dqSource.getUid());
+      ConversionContext.removeReference(uidContext);
     }
-    finally {
-      ConversionContext.removeReference(sourceContext);
+
+    if (dqSource.getExtensions().size() > 0) {
+      for (String extensionCategory : dqSource.getExtensions().keySet()) {
+        for (GedcomTag tag : ((List<GedcomTag>) dqSource.getExtension(extensionCategory))) {
+          logger.warn(ConversionContext.getContext(), "Unsupported ({}): {}", extensionCategory, tag);
+          // DATA tag (and subordinates) in GEDCOM 5.5. SOURCE_RECORD not being looked for or parsed by DallanQ code
+        }
+      }
     }
   }
 
@@ -218,25 +211,8 @@ public class SourceDescriptionMapper {
         , dqRepository.getWww()
       );
 
-      int cntNotes = dqRepository.getNotes().size() + dqRepository.getNoteRefs().size();
-      if (cntNotes > 0) {
-        logger.warn(ConversionContext.getContext(), "Did not process {} notes or references to notes.", cntNotes);
-      }
-
-      if (dqRepository.getRin() != null) {
-        logger.warn(ConversionContext.getContext(), "RIN ({}) was ignored.", dqRepository.getRin());
-      }
-
-      if (dqRepository.getValue() != null) {
-        logger.warn(ConversionContext.getContext(), "Unexpected repository value ({}) was ignored.", dqRepository.getValue());
-      }
-
-      if (dqRepository.getExtensions().size() > 0) {
-        for (String extensionCategory : dqRepository.getExtensions().keySet()) {
-          for (GedcomTag tag : ((List<GedcomTag>) dqRepository.getExtension(extensionCategory))) {
-            logger.warn(ConversionContext.getContext(), "Unsupported ({}): {}", extensionCategory, tag);
-          }
-        }
+      if (CommonMapper.isAuditing(mappingConfig)) {
+        auditRepository(dqRepository);
       }
 
       //dqRepository.getAllNotes(); // notes not handled via this method; see getNotes and getNoteRefs
@@ -247,4 +223,30 @@ public class SourceDescriptionMapper {
       ConversionContext.removeReference(repositoryContext);
     }
   }
+
+  /**
+   * Checks the repository for data that is not mapped and logs a warning for each.
+   */
+  private void auditRepository(Repository dqRepository) {
+    int cntNotes = dqRepository.getNotes().size() + dqRepository.getNoteRefs().size();
+    if (cntNotes > 0) {
+      logger.warn(ConversionContext.getContext(), "Did not process {} notes or references to notes.", cntNotes);
+    }
+
+    if (dqRepository.getRin() != null) {
+      logger.warn(ConversionContext.getContext(), "RIN ({}) was ignored.", dqRepository.getRin());
+    }
+
+    if (dqRepository.getValue() != null) {
+      logger.warn(ConversionContext.getContext(), "Unexpected repository value ({}) was ignored.", dqRepository.getValue());
+    }
+
+    if (dqRepository.getExtensions().size() > 0) {
+      for (String extensionCategory : dqRepository.getExtensions().keySet()) {
+        for (GedcomTag tag : ((List<GedcomTag>) dqRepository.getExtension(extensionCategory))) {
+          logger.warn(ConversionContext.getContext(), "Unsupported ({}): {}", extensionCategory, tag);
+        }
+      }
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.util.Map;
+
+/**
+ * An immutable, case-insensitive lookup table keyed by GEDCOM tags. Lookups ignore leading and trailing whitespace
+ * and case without creating a trimmed or upper-cased copy of the tag, so the hot path of mapping a fact allocates
+ * nothing. Safe for concurrent use once built.
+ */
+final class TagTable<V> {
+
+  private final String[] keys;
+  private final Object[] values;
+  private final int mask;
+
+  /**
+   * @param entries the tags and their values; tags differing only in case or surrounding whitespace are the same tag
+   */
+  TagTable(Map<String, ? extends V> entries) {
+    int capacity = Integer.highestOneBit(Math.max(4, entries.size() * 2 - 1)) << 1;
+    this.keys = new String[capacity];
+    this.values = new Object[capacity];
+    this.mask = capacity - 1;
+
+    for (Map.Entry<String, ? extends V> entry : entries.entrySet()) {
+      String key = entry.getKey().trim();
+      int slot = hash(key, 0, key.length()) & mask;
+      while (keys[slot] != null && !matches(keys[slot], key, 0, key.length())) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      values[slot] = entry.getValue();
+    }
+  }
+
+  /**
+   * @param tag a GEDCOM tag, in any case and possibly surrounded by whitespace
+   * @return the value of the tag, or null if the tag is not in the table
+   */
+  @SuppressWarnings("unchecked")
+  V get(String tag) {
+    if (tag == null) {
+      return null;
+    }
+
+    int start = 0;
+    int end = tag.length();
+    while (start < end && tag.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && tag.charAt(end - 1) <= ' ') {
+      end--;
+    }
+
+    for (int slot = hash(tag, start, end) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+      if (matches(keys[slot], tag, start, end)) {
+        return (V) values[slot];
+      }
+    }
+    return null;
+  }
+
+  private static boolean matches(String key, String tag, int start, int end) {
+    return key.length() == end - start && key.regionMatches(true, 0, tag, start, end - start);
+  }
+
+  private static int hash(String tag, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      char c = tag.charAt(i);
+      if (c >= 'a' && c <= 'z') {
+        c -= 'a' - 'A';
+      } else if (c >= 0x80) {
+        c = Character.toUpperCase(c);
+      }
+      hash = 31 * hash + c;
+    }
+    return hash ^ (hash >>> 16);
+  }
+}
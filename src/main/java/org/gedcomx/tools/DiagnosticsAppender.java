@@ -0,0 +1,129 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.tools;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import org.gedcomx.conversion.DiagnosticsSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Passes log events to the diagnostics sink of the conversion in progress, if there is one. Unlike the console
+ * appender, it takes no lock: the event is formatted on the logging thread and handed to the sink's ring buffer.
+ *
+ * logback is only a runtime dependency, so the appender is not declared in logback.xml: {@link #install()} attaches
+ * it to the root logger as a proxy of logback's appender interface when logback is the logging binding.
+ */
+public class DiagnosticsAppender implements InvocationHandler {
+
+  private static final String NAME = "DIAGNOSTICS";
+
+  private static volatile DiagnosticsSink sink;
+  private static boolean installed;
+
+  private final Object neutralFilterReply;
+  private final Method getLevel;
+  private final Method getFormattedMessage;
+  private final Method getMarker;
+
+  private DiagnosticsAppender(ClassLoader loader) throws ReflectiveOperationException {
+    Class<?> filterReply = Class.forName("ch.qos.logback.core.spi.FilterReply", true, loader);
+    neutralFilterReply = filterReply.getField("NEUTRAL").get(null);
+    Class<?> loggingEvent = Class.forName("ch.qos.logback.classic.spi.ILoggingEvent", true, loader);
+    getLevel = loggingEvent.getMethod("getLevel");
+    getFormattedMessage = loggingEvent.getMethod("getFormattedMessage");
+    getMarker = loggingEvent.getMethod("getMarker");
+  }
+
+  /**
+   * Attaches the appender to the root logger, once.
+   * @return false if logback is not the logging binding, so no diagnostics can be collected
+   */
+  public static synchronized boolean install() {
+    if (installed) {
+      return true;
+    }
+
+    Logger root = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    ClassLoader loader = root.getClass().getClassLoader();
+    try {
+      Class<?> appenderType = Class.forName("ch.qos.logback.core.Appender", true, loader);
+      Object appender = Proxy.newProxyInstance(loader, new Class<?>[]{appenderType}, new DiagnosticsAppender(loader));
+      root.getClass().getMethod("addAppender", appenderType).invoke(root, appender);
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return false;
+    }
+    installed = true;
+    return true;
+  }
+
+  /**
+   * @param diagnosticsSink the sink of the conversion in progress; null when no conversion is collecting diagnostics
+   */
+  public static void setSink(DiagnosticsSink diagnosticsSink) {
+    sink = diagnosticsSink;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    switch (method.getName()) {
+      case "doAppend":
+        append(args[0]);
+        return null;
+      case "getName":
+      case "toString":
+        return NAME;
+      case "isStarted":
+        return true;
+      case "getFilterChainDecision":
+        return neutralFilterReply;
+      case "getCopyOfAttachedFiltersList":
+        return Collections.emptyList();
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      default:
+        // life cycle, context and filter set-up: nothing to do
+        return null;
+    }
+  }
+
+  private void append(Object event) throws ReflectiveOperationException {
+    DiagnosticsSink current = sink;
+    if (current == null) {
+      return;
+    }
+
+    // same layout as the console: level, message, then the conversion context
+    StringBuilder message = new StringBuilder(128);
+    message.append(getLevel.invoke(event));
+    for (int i = message.length(); i < 5; i++) {
+      message.append(' ');
+    }
+    message.append(" - ").append(getFormattedMessage.invoke(event));
+    Object marker = getMarker.invoke(event);
+    if (marker != null) {
+      message.append(' ').append(marker);
+    }
+    current.offer(message.toString());
+  }
+}
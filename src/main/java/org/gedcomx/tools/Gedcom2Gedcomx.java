@@ -15,26 +15,49 @@
  */
 package org.gedcomx.tools;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.jar.JarFile;
+import java.util.ServiceLoader;
 
 import org.familysearch.platform.ordinances.Ordinance;
 import org.folg.gedcom.model.Gedcom;
 import org.folg.gedcom.parser.ModelParser;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conversion.DatasetStatistics;
+import org.gedcomx.conversion.DeduplicatingGedcomxConversionResult;
+import org.gedcomx.conversion.DefaultGedcomxConversionResult;
+import org.gedcomx.conversion.DiagnosticsSink;
+import org.gedcomx.conversion.EntityIndex;
 import org.gedcomx.conversion.GedcomxConversionResult;
+import org.gedcomx.conversion.LeanJsonSerialization;
+import org.gedcomx.conversion.ParallelGedcomxReader;
+import org.gedcomx.conversion.RawEntryCopier;
+import org.gedcomx.conversion.SpillingGedcomxConversionResult;
+import org.gedcomx.conversion.StreamingGedcomxConversionResult;
+import org.gedcomx.conversion.StreamingDatasetSerializer;
+import org.gedcomx.conversion.gedcom.AnselReader;
+import org.gedcomx.conversion.gedcom.GedcomRecordIndex;
+import org.gedcomx.conversion.gedcom.dq55.BatchPostProcessor;
 import org.gedcomx.conversion.gedcom.dq55.GedcomMapper;
 import org.gedcomx.conversion.gedcom.dq55.MappingConfig;
+import org.gedcomx.conversion.gedcom.dq55.MappingProfile;
+import org.gedcomx.conversion.gedcom.dq55.PipelinedGedcomMapper;
 import org.gedcomx.fileformat.GedcomxEntrySerializer;
-import org.gedcomx.fileformat.GedcomxFile;
-import org.gedcomx.fileformat.GedcomxFileEntry;
 import org.gedcomx.fileformat.GedcomxOutputStream;
 import org.gedcomx.fileformat.GedcomxTimeStampUtil;
 import org.gedcomx.fileformat.JacksonJsonSerialization;
@@ -56,12 +79,72 @@ public class Gedcom2Gedcomx {
   @Option(name = "-ix", aliases = {"--inputx"}, usage = "GEDCOM X input file (experimental, used for benchmarking)")
   private File gedcomxIn;
 
+  @Option(name = "-rc", aliases = {"--raw-copy"}, usage = "With -ix, copy the compressed entries to the output as they are, without reading them (experimental, used for benchmarking)")
+  private boolean rawCopy;
+
+  @Option(name = "-ro", aliases = {"--read-only"}, usage = "With -ix, only read the entries and report how long it took; no output is written (experimental, used for benchmarking)")
+  private boolean readOnly;
+
+  @Option(name = "-rt", aliases = {"--reader-threads"}, usage = "With -ix, the number of threads reading the entries of each GEDCOM X file (0 to read them on the main thread)")
+  private int readerThreads = Runtime.getRuntime().availableProcessors();
+
   @Option(name = "-o", aliases = {"--output"}, usage = "GEDCOM X output file")
   private File gedxOut;
 
   @Option(name = "-fi", aliases = {"--filename-in-ids"}, usage = "Include the input filename in the person and relationship ids in the generated gedcomx")
   private boolean includeFilenameInIds;
 
+  @Option(name = "-ci", aliases = {"--compact-ids"}, usage = "Replace the GEDCOM 5.5 xrefs with short base-36 ids in the person and relationship ids in the generated gedcomx (numbered by record position with -lm or -pl, so they do not depend on -mt)")
+  private boolean compactIds;
+
+  @Option(name = "-cim", aliases = {"--compact-id-map"}, usage = "With -ci, also write a tab-separated side table (<output>.ids) mapping the compact ids back to the original xrefs")
+  private boolean compactIdMap;
+
+  @Option(name = "-dc", aliases = {"--dedup-citations"}, usage = "Give citation source descriptions ids derived from their content and write each distinct one only once")
+  private boolean dedupCitations;
+
+  @Option(name = "-dp", aliases = {"--dedup-places"}, usage = "Give each distinct place one place description, referenced from the facts, instead of repeating it in every fact")
+  private boolean dedupPlaces;
+
+  @Option(name = "-dr", aliases = {"--dedup-relationships"}, usage = "Merge duplicate couple and parent-child relationships, e.g. from several FAM records for the same couple (not with -mb, -so, -x or -pl)")
+  private boolean dedupRelationships;
+
+  @Option(name = "-n", aliases = {"--notes"}, usage = "Map notes: write each NOTE record, and each distinct inline note, once as a document and refer to it from the persons, couples and facts")
+  private boolean notes;
+
+  @Option(name = "-na", aliases = {"--no-ansel-transcoding"}, usage = "Let the GEDCOM parser decode ANSEL input itself instead of the built-in ANSEL decoder")
+  private boolean noAnselTranscoding;
+
+  @Option(name = "-lm", aliases = {"--low-memory"}, usage = "Index the records of the GEDCOM 5.5 file and parse them a chunk at a time instead of all at once (two passes, for very large files)")
+  private boolean lowMemory;
+
+  @Option(name = "-mb", aliases = {"--memory-budget"}, usage = "Budget in megabytes for the converted persons and relationships held in memory, by an estimate of their size; past it, they are spilled to temporary files and streamed back into the output")
+  private int memoryBudget;
+
+  @Option(name = "-ppt", aliases = {"--post-processing-threads"}, usage = "Number of threads running the batch post-processors found on the classpath (0 to run them on the mapping thread; with -pl they run on the mapper threads)")
+  private int postProcessingThreads = Runtime.getRuntime().availableProcessors();
+
+  @Option(name = "-pl", aliases = {"--pipelined"}, usage = "Index the records of the GEDCOM 5.5 file and parse, map and write them in concurrent stages")
+  private boolean pipelined;
+
+  @Option(name = "-mt", aliases = {"--mapper-threads"}, usage = "With -pl, the number of threads mapping records")
+  private int mapperThreads = 1;
+
+  @Option(name = "-fp", aliases = {"--fast-profile"}, usage = "Skip the checks for GEDCOM 5.5 data that is not mapped, and the warnings about it, for faster conversions")
+  private boolean fastProfile;
+
+  @Option(name = "-dl", aliases = {"--diagnostics-log"}, usage = "Write the warnings of each conversion to its own file (<output>.log) from a background thread instead of to the console")
+  private boolean diagnosticsLog;
+
+  @Option(name = "-lj", aliases = {"--lean-json"}, usage = "Write the persons and relationships with a purpose-built JSON writer that leaves out empty collections, for faster output")
+  private boolean leanJson;
+
+  @Option(name = "-so", aliases = {"--stream-output"}, usage = "Write each person and relationship into the output as soon as it is mapped instead of building the whole dataset first (implies -lj)")
+  private boolean streamOutput;
+
+  @Option(name = "-x", aliases = {"--index"}, usage = "Also write an index of where each person and relationship is in the output (tree.json.idx), for reading them by id; tree.json is stored uncompressed (implies -so)")
+  private boolean index;
+
   @Option(name = "-P", aliases = {"--pause"}, usage = "Pause before starting the conversion process (experimental, used for profiling)")
   private boolean pause;
 
@@ -71,6 +154,8 @@ public class Gedcom2Gedcomx {
   @Option(name = "-vv", aliases = {"--very-verbose"}, usage = "Output all the warnings and informational messages that are generated during the conversion.")
   private boolean vverbose;
 
+  private List<BatchPostProcessor> batchPostProcessors;
+
   public Gedcom2Gedcomx() {
   }
 
@@ -83,6 +168,18 @@ public class Gedcom2Gedcomx {
       System.setProperty("gedcom-log-level", "INFO");
     }
 
+    if (diagnosticsLog) {
+      System.setProperty("gedcom-log-level", vverbose ? "INFO" : "WARN");
+      if (!verbose && !vverbose) {
+        // the warnings go to the diagnostics log only
+        System.setProperty("gedcom-console-log-level", "ERROR");
+      }
+      if (!DiagnosticsAppender.install()) {
+        System.out.println("The diagnostics log (-dl) needs logback as the logging binding and was ignored.");
+        diagnosticsLog = false;
+      }
+    }
+
     if (pause) {
       System.out.print("Press any key to continue...");
       System.in.read();
@@ -105,6 +202,12 @@ public class Gedcom2Gedcomx {
       return;
     }
 
+    if (dedupRelationships && (memoryBudget > 0 || streamOutput || index || pipelined)) {
+      System.err.println("Relationship deduplication (-dr) merges into relationships held in memory and cannot be combined with -mb, -so, -x or -pl.");
+      parser.printUsage(System.err);
+      return;
+    }
+
     boolean gedcomInIsDirectory;
     if (gedcomIn.isDirectory() && gedcomIn.canRead() && gedcomIn.canWrite() && gedcomIn.canExecute()) {
       fileList.addAll(Arrays.asList(gedcomIn.listFiles(pathname -> pathname.getAbsolutePath().matches(scanPattern))));
@@ -142,68 +245,294 @@ public class Gedcom2Gedcomx {
         derivedGedxOut = gedxOut;
       }
 
-      OutputStream outputStream;
-      try {
-        outputStream = new FileOutputStream(derivedGedxOut);
-      } catch (IOException ex) {
-        outputStream = null;
-        System.err.println("Failed to create the output file: " + derivedGedxOut);
+      OutputStream outputStream = null;
+      if (!gedxIn || !readOnly) {
+        try {
+          outputStream = new FileOutputStream(derivedGedxOut);
+        } catch (IOException ex) {
+          System.err.println("Failed to create the output file: " + derivedGedxOut);
+        }
       }
 
-      if (gedxIn) {
-        convertXFile(inFile, outputStream);
-      } else {
-        MappingConfig mappingConfig = new MappingConfig(inFile.getName(), includeFilenameInIds);
-        convert55File(inFile, outputStream, mappingConfig);
+      DiagnosticsSink diagnostics = diagnosticsLog ? new DiagnosticsSink(new File(derivedGedxOut.getPath() + ".log"), DiagnosticsSink.DEFAULT_CAPACITY) : null;
+      DiagnosticsAppender.setSink(diagnostics);
+      try {
+        if (gedxIn && readOnly) {
+          readXFile(inFile);
+        } else if (gedxIn && rawCopy) {
+          copyXFile(inFile, outputStream);
+        } else if (gedxIn) {
+          convertXFile(inFile, outputStream);
+        } else {
+          MappingConfig mappingConfig = new MappingConfig(inFile.getName(), includeFilenameInIds, compactIds, dedupCitations);
+          if (fastProfile) {
+            mappingConfig.setProfile(MappingProfile.FAST);
+          }
+          mappingConfig.setPlaceDescriptions(dedupPlaces);
+          mappingConfig.setNotes(notes);
+          convert55File(inFile, outputStream, mappingConfig);
+          if (compactIds && compactIdMap) {
+            writeOriginalIds(mappingConfig, new File(derivedGedxOut.getPath() + ".ids"));
+          }
+        }
+      } finally {
+        DiagnosticsAppender.setSink(null);
+        if (diagnostics != null) {
+          diagnostics.close();
+          if (diagnostics.getDroppedCount() > 0) {
+            System.out.println(diagnostics.getDroppedCount() + " diagnostic message(s) for " + name + " were dropped.");
+          }
+        }
       }
     }
   }
 
-  private void convertXFile(File inFile, OutputStream outputStream) throws IOException {
-    GedcomxFile gxFile = new GedcomxFile(new JarFile(inFile));
-    GedcomxOutputStream out = new GedcomxOutputStream(outputStream);
-    Map<String, String> attributes = gxFile.getAttributes();
-    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
-      out.addAttribute(attribute.getKey(), attribute.getValue());
+  /**
+   * Reads every entry of a GEDCOM X file and reports how long it took, to time the reader on its own.
+   */
+  private void readXFile(File inFile) throws IOException {
+    long start = System.nanoTime();
+    int entryCount;
+    try (ParallelGedcomxReader reader = new ParallelGedcomxReader(inFile, new JacksonJsonSerialization(Ordinance.class), readerThreads)) {
+      entryCount = reader.readAll((entry, resource) -> { });
     }
+    System.out.println(String.format("Read %d entries of %s in %d ms.", entryCount, inFile.getName(), (System.nanoTime() - start) / 1000000));
+  }
 
-    for (GedcomxFileEntry entry : gxFile.getEntries()) {
-      if (!entry.getJarEntry().isDirectory() && !entry.getJarEntry().getName().endsWith("MANIFEST.MF")) {
-        Object resource = gxFile.readResource(entry);
+  /**
+   * Copies the compressed entries of a GEDCOM X file to the output without inflating or deflating them, to time the
+   * I/O on its own.
+   */
+  private void copyXFile(File inFile, OutputStream outputStream) throws IOException {
+    if (outputStream == null) {
+      return;
+    }
+
+    long start = System.nanoTime();
+    int entryCount;
+    try {
+      entryCount = RawEntryCopier.copy(inFile, outputStream);
+    } finally {
+      outputStream.close();
+    }
+    System.out.println(String.format("Copied %d entries of %s in %d ms.", entryCount, inFile.getName(), (System.nanoTime() - start) / 1000000));
+  }
+
+  private void convertXFile(File inFile, OutputStream outputStream) throws IOException {
+    long start = System.nanoTime();
+    try (ParallelGedcomxReader reader = new ParallelGedcomxReader(inFile, new JacksonJsonSerialization(Ordinance.class), readerThreads)) {
+      GedcomxOutputStream out = new GedcomxOutputStream(outputStream);
+      Map<String, String> attributes = reader.getAttributes();
+      for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+        out.addAttribute(attribute.getKey(), attribute.getValue());
+      }
+
+      reader.readAll((entry, resource) -> {
         String contentType = entry.getContentType();
         if (contentType == null) {
           contentType = GedcomxConstants.GEDCOMX_XML_MEDIA_TYPE;
         }
         out.addResource(contentType, entry.getJarEntry().getName(), resource, null, entry.getAttributes());
-      }
+      });
+      out.close();
     }
-
-    out.close();
+    System.out.println(String.format("Read and rewrote %s in %d ms.", inFile.getName(), (System.nanoTime() - start) / 1000000));
   }
 
-  private void convert55File(File inFile, OutputStream outputStream, MappingConfig mappingConfig) throws SAXParseException, IOException {
-    ModelParser modelParser = new ModelParser();
-    Gedcom gedcom = modelParser.parseGedcom(inFile);
-    gedcom.createIndexes();
+  private void convert55File(File gedcomFile, OutputStream outputStream, MappingConfig mappingConfig) throws SAXParseException, IOException {
+    Gedcom gedcom = null;
+    GedcomRecordIndex recordIndex = null;
+    if (pipelined) {
+      if (outputStream != null) {
+        convertPipelined(GedcomRecordIndex.build(gedcomFile, !noAnselTranscoding), outputStream, mappingConfig);
+      }
+      return;
+    } else if (lowMemory) {
+      recordIndex = GedcomRecordIndex.build(gedcomFile, !noAnselTranscoding);
+    } else if (!noAnselTranscoding && AnselReader.isAnselEncoded(gedcomFile)) {
+      try (Reader reader = new AnselReader(new FileInputStream(gedcomFile))) {
+        gedcom = new ModelParser().parseGedcom(reader);
+      }
+      gedcom.createIndexes();
+    } else {
+      gedcom = new ModelParser().parseGedcom(gedcomFile);
+      gedcom.createIndexes();
+    }
 
-    if (outputStream != null) {
-      GedcomMapper mapper = new GedcomMapper(mappingConfig);
+    if (outputStream != null && (streamOutput || index)) {
+      convertStreaming(gedcom, recordIndex, outputStream, mappingConfig);
+    } else if (outputStream != null) {
+      GedcomMapper mapper = new GedcomMapper(mappingConfig, null, getBatchPostProcessors(), postProcessingThreads);
       GedcomxEntrySerializer serializer;
 
       String outputFileName = "tree.json";
-      serializer = new JacksonJsonSerialization(Ordinance.class);
-      GedcomxConversionResult result = mapper.toGedcomx(gedcom);
-      GedcomxOutputStream output = new GedcomxOutputStream(outputStream, serializer);
+      serializer = leanJson ? new LeanJsonSerialization(Ordinance.class) : new JacksonJsonSerialization(Ordinance.class);
+      GedcomxConversionResult result;
+      SpillingGedcomxConversionResult spillingResult = null;
+      DatasetStatistics statistics = null;
+      if (memoryBudget > 0) {
+        spillingResult = new SpillingGedcomxConversionResult(memoryBudget * 1024L * 1024L, null, Ordinance.class);
+        serializer = new StreamingDatasetSerializer(serializer);
+        statistics = new DatasetStatistics();
+        result = statistics.counting(spillingResult);
+      } else {
+        result = new DefaultGedcomxConversionResult();
+        if (dedupRelationships) {
+          result = new DeduplicatingGedcomxConversionResult(result);
+        }
+      }
+      if (recordIndex != null) {
+        mapper.toGedcomx(recordIndex, result);
+      } else {
+        mapper.toGedcomx(gedcom, result);
+      }
+      Gedcomx dataset = null;
+      if (spillingResult == null) {
+        dataset = result.getDataset();
+        statistics = DatasetStatistics.of(dataset);
+      }
+      GedcomxOutputStream output = new GedcomxOutputStream(outputStream, statistics.measuring(serializer));
+      addAttributes(output, outputFileName, result.getDatasetContributor());
+
+      if (spillingResult != null) {
+        try {
+          output.addResource(GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE, outputFileName, spillingResult, null, null);
+        } finally {
+          spillingResult.close();
+        }
+      } else {
+        output.addResource(outputFileName, dataset, null);
+      }
+      addStatistics(output, statistics);
+      output.close();
+    }
+  }
+
+  /**
+   * Converts with each entity written into the output as it is mapped.
+   * @param gedcom the parsed GEDCOM file, or null if the file is indexed instead
+   * @param recordIndex the index of the records of the file, or null if the file is parsed
+   */
+  private void convertStreaming(Gedcom gedcom, GedcomRecordIndex recordIndex, OutputStream outputStream, MappingConfig mappingConfig) throws IOException {
+    if (memoryBudget > 0) {
+      System.out.println("Memory budgets are not supported by the streaming output and were ignored.");
+    }
 
-      output.addAttribute("User-Agent", "Gedcom To Gedcomx Java Conversion Utility/1.0");
-      output.addAttribute("X-DC-conformsTo", "http://gedcomx.org/file/v1");
-      output.addAttribute("X-DC-created", GedcomxTimeStampUtil.formatAsXmlUTC(new Date()));
-      if (result.getDatasetContributor() != null && result.getDatasetContributor().getId() != null) {
-        output.addAttribute("X-DC-creator", outputFileName + "#" + result.getDatasetContributor().getId());
+    String outputFileName = "tree.json";
+    GedcomMapper mapper = new GedcomMapper(mappingConfig, null, getBatchPostProcessors(), postProcessingThreads);
+    LeanJsonSerialization serialization = new LeanJsonSerialization(Ordinance.class);
+    DatasetStatistics statistics = new DatasetStatistics();
+    StreamingGedcomxConversionResult result = new StreamingGedcomxConversionResult(serialization, target -> {
+      if (recordIndex != null) {
+        mapper.toGedcomx(recordIndex, statistics.counting(target));
+      } else {
+        mapper.toGedcomx(gedcom, statistics.counting(target));
       }
+    });
+
+    EntityIndex entityIndex = null;
+    if (index) {
+      entityIndex = new EntityIndex();
+      result.setIndex(entityIndex, outputFileName);
+    }
 
-      output.addResource(outputFileName, result.getDataset(), null);
+    // a lookup skips straight to an entity, or to a record of the index, in a stored entry but would inflate
+    // everything before it in a deflated one; the output stream always deflates, so an indexed dataset is written to
+    // a scratch file and both entries are stored on copy
+    File deflatedFile = entityIndex == null ? null : File.createTempFile(outputFileName, ".gedx");
+    try {
+      GedcomxOutputStream output = new GedcomxOutputStream(deflatedFile == null ? outputStream : new FileOutputStream(deflatedFile), statistics.measuring(new StreamingDatasetSerializer(serialization)));
+      output.addResource(GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE, outputFileName, result, null, null);
+      if (entityIndex != null) {
+        output.addResource(EntityIndex.CONTENT_TYPE, outputFileName + ".idx", entityIndex, null, null);
+      }
+      // the manifest is only written when the output is closed, so the contributor mapped along the way can be named
+      addAttributes(output, outputFileName, result.getDatasetContributor());
+      addStatistics(output, statistics);
       output.close();
+
+      if (deflatedFile != null) {
+        try {
+          RawEntryCopier.copy(deflatedFile, outputStream, new HashSet<String>(Arrays.asList(outputFileName, outputFileName + ".idx")));
+        } finally {
+          outputStream.close();
+        }
+      }
+    } finally {
+      if (deflatedFile != null) {
+        deflatedFile.delete();
+      }
+      if (entityIndex != null) {
+        entityIndex.close();
+      }
+    }
+  }
+
+  /**
+   * Converts with the parse, map and write stages running concurrently.
+   */
+  private void convertPipelined(GedcomRecordIndex recordIndex, OutputStream outputStream, MappingConfig mappingConfig) throws IOException {
+    if (memoryBudget > 0) {
+      System.out.println("Memory budgets are not supported by the pipelined conversion and were ignored.");
+    }
+
+    String outputFileName = "tree.json";
+    LeanJsonSerialization leanSerialization = leanJson ? new LeanJsonSerialization(Ordinance.class) : null;
+    PipelinedGedcomMapper pipeline = new PipelinedGedcomMapper(mappingConfig, mapperThreads, GedcomMapper.DEFAULT_RECORDS_PER_CHUNK, getBatchPostProcessors(), leanSerialization, Ordinance.class);
+    try {
+      Agent contributor = pipeline.start(recordIndex);
+      DatasetStatistics statistics = pipeline.getStatistics();
+      GedcomxEntrySerializer serializer = leanSerialization != null ? leanSerialization : new JacksonJsonSerialization(Ordinance.class);
+      GedcomxOutputStream output = new GedcomxOutputStream(outputStream, statistics.measuring(new StreamingDatasetSerializer(serializer)));
+      addAttributes(output, outputFileName, contributor);
+      output.addResource(GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE, outputFileName, pipeline, null, null);
+      addStatistics(output, statistics);
+      output.close();
+    } finally {
+      pipeline.close();
+    }
+  }
+
+  private void addAttributes(GedcomxOutputStream output, String outputFileName, Agent contributor) {
+    output.addAttribute("User-Agent", "Gedcom To Gedcomx Java Conversion Utility/1.0");
+    output.addAttribute("X-DC-conformsTo", "http://gedcomx.org/file/v1");
+    output.addAttribute("X-DC-created", GedcomxTimeStampUtil.formatAsXmlUTC(new Date()));
+    if (contributor != null && contributor.getId() != null) {
+      output.addAttribute("X-DC-creator", outputFileName + "#" + contributor.getId());
+    }
+  }
+
+  /**
+   * Adds the entity counts and the uncompressed size of the dataset, which are only known once it has been written.
+   * The manifest is written when the output is closed, so readers still find them up front.
+   */
+  private void addStatistics(GedcomxOutputStream output, DatasetStatistics statistics) {
+    for (Map.Entry<String, String> attribute : statistics.toAttributes().entrySet()) {
+      output.addAttribute(attribute.getKey(), attribute.getValue());
+    }
+  }
+
+  /**
+   * Loads the batch post-processors registered through the ServiceLoader mechanism, once per run.
+   */
+  private List<BatchPostProcessor> getBatchPostProcessors() {
+    if (batchPostProcessors == null) {
+      batchPostProcessors = new ArrayList<>();
+      for (BatchPostProcessor postProcessor : ServiceLoader.load(BatchPostProcessor.class)) {
+        batchPostProcessors.add(postProcessor);
+      }
+    }
+    return batchPostProcessors;
+  }
+
+  private void writeOriginalIds(MappingConfig mappingConfig, File idsOut) throws IOException {
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(idsOut), StandardCharsets.UTF_8))) {
+      for (Map.Entry<String, String> originalId : mappingConfig.getOriginalIds().entrySet()) {
+        writer.write(originalId.getKey());
+        writer.write('\t');
+        writer.write(originalId.getValue());
+        writer.write('\n');
+      }
     }
   }
 
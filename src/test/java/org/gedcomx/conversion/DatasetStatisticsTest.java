@@ -0,0 +1,85 @@
+package org.gedcomx.conversion;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarFile;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.parser.ModelParser;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conversion.gedcom.dq55.GedcomMapper;
+import org.gedcomx.conversion.gedcom.dq55.MappingConfig;
+import org.gedcomx.fileformat.GedcomxOutputStream;
+import org.gedcomx.fileformat.JacksonJsonSerialization;
+import org.testng.annotations.Test;
+
+import org.familysearch.platform.ordinances.Ordinance;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class DatasetStatisticsTest {
+
+  @Test
+  public void testStatisticsAreWrittenToTheManifest() throws Exception {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case009-Family.ged");
+    Gedcom gedcom = new ModelParser().parseGedcom(new File(gedcomUrl.toURI()));
+    gedcom.createIndexes();
+
+    // counting the entities as they are added gives the same figures as counting the dataset afterwards
+    DatasetStatistics counted = new DatasetStatistics();
+    GedcomxConversionResult result = counted.counting(new DefaultGedcomxConversionResult());
+    new GedcomMapper(new MappingConfig("Case009-Family.ged", false)).toGedcomx(gedcom, result);
+    Gedcomx dataset = result.getDataset();
+    DatasetStatistics statistics = DatasetStatistics.of(dataset);
+    assertEquals(counted.toAttributes(), statistics.toAttributes());
+
+    int factCount = 0;
+    for (Person person : dataset.getPersons()) {
+      factCount += person.getFacts() == null ? 0 : person.getFacts().size();
+    }
+    assertEquals(statistics.getPersonCount(), dataset.getPersons().size());
+    assertEquals(statistics.getRelationshipCount(), dataset.getRelationships().size());
+    assertEquals(statistics.getSourceDescriptionCount(), dataset.getSourceDescriptions() == null ? 0 : dataset.getSourceDescriptions().size());
+    assertEquals(statistics.getUncompressedSize(), -1);
+
+    File gedx = File.createTempFile("statistics", ".gedx");
+    try {
+      GedcomxOutputStream output = new GedcomxOutputStream(new FileOutputStream(gedx), statistics.measuring(new JacksonJsonSerialization(Ordinance.class)));
+      output.addResource("tree.json", dataset, null);
+      for (Map.Entry<String, String> attribute : statistics.toAttributes().entrySet()) {
+        output.addAttribute(attribute.getKey(), attribute.getValue());
+      }
+      output.close();
+
+      try (JarFile jarFile = new JarFile(gedx)) {
+        Map<String, String> attributes = new HashMap<String, String>();
+        for (Map.Entry<Object, Object> attribute : jarFile.getManifest().getMainAttributes().entrySet()) {
+          attributes.put(attribute.getKey().toString(), attribute.getValue().toString());
+        }
+        DatasetStatistics read = DatasetStatistics.fromAttributes(attributes);
+        assertEquals(read.getPersonCount(), dataset.getPersons().size());
+        assertEquals(read.getRelationshipCount(), dataset.getRelationships().size());
+        assertEquals(read.getFactCount() >= factCount, true);
+        assertEquals(read.getUncompressedSize(), jarFile.getJarEntry("tree.json").getSize());
+      }
+    } finally {
+      gedx.delete();
+    }
+  }
+
+  @Test
+  public void testMissingAttributesAreUnknown() {
+    Map<String, String> attributes = new HashMap<String, String>();
+    attributes.put(DatasetStatistics.PERSONS, "12");
+    attributes.put(DatasetStatistics.FACTS, "many");
+    DatasetStatistics statistics = DatasetStatistics.fromAttributes(attributes);
+    assertEquals(statistics.getPersonCount(), 12);
+    assertEquals(statistics.getFactCount(), -1);
+    assertEquals(statistics.getUncompressedSize(), -1);
+  }
+}
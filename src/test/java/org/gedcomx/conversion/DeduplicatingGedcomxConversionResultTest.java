@@ -0,0 +1,101 @@
+package org.gedcomx.conversion;
+
+import java.io.File;
+import java.net.URL;
+import java.util.List;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.parser.ModelParser;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.common.Note;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.conversion.gedcom.dq55.GedcomMapper;
+import org.gedcomx.conversion.gedcom.dq55.MappingConfig;
+import org.gedcomx.types.FactType;
+import org.gedcomx.types.RelationshipType;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+
+public class DeduplicatingGedcomxConversionResultTest {
+  private Gedcom gedcom;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case012-DuplicateFamilies.ged");
+    gedcom = new ModelParser().parseGedcom(new File(gedcomUrl.toURI()));
+    assertNotNull(gedcom);
+  }
+
+  @Test
+  public void testWithoutDeduplication() throws Exception {
+    GedcomMapper mapper = new GedcomMapper(new MappingConfig("Case012-DuplicateFamilies.ged", false));
+    Gedcomx dataset = mapper.toGedcomx(gedcom).getDataset();
+
+    // F1: couple + 2 parent-child; F2: couple + 4 parent-child
+    assertEquals(dataset.getRelationships().size(), 9);
+  }
+
+  @Test
+  public void testDuplicatesMerged() throws Exception {
+    GedcomMapper mapper = new GedcomMapper(new MappingConfig("Case012-DuplicateFamilies.ged", false));
+    DeduplicatingGedcomxConversionResult result = new DeduplicatingGedcomxConversionResult(new DefaultGedcomxConversionResult());
+    mapper.toGedcomx(gedcom, result);
+    Gedcomx dataset = result.getDataset();
+
+    List<Relationship> relationships = dataset.getRelationships();
+    assertEquals(relationships.size(), 5);
+    assertEquals(result.getDuplicateCount(), 4);
+
+    Relationship couple = relationships.get(0);
+    assertEquals(couple.getKnownType(), RelationshipType.Couple);
+    assertEquals(couple.getId(), "F1-I1-I2");
+    // the identical marriages collapse; the divorce from F2 is added
+    assertEquals(couple.getFacts().size(), 2);
+    assertEquals(couple.getFacts().get(0).getKnownType(), FactType.Marriage);
+    assertEquals(couple.getFacts().get(1).getKnownType(), FactType.Divorce);
+    // so do the identical sealings
+    assertEquals(couple.getExtensionElements().size(), 1);
+
+    int parentChildCount = 0;
+    for (Relationship relationship : relationships) {
+      if (relationship.getKnownType() == RelationshipType.ParentChild) {
+        parentChildCount++;
+      }
+    }
+    assertEquals(parentChildCount, 4);
+  }
+
+  @Test
+  public void testDuplicatesMergedAtEndOfRecord() throws Exception {
+    GedcomMapper mapper = new GedcomMapper(new MappingConfig("Case012-DuplicateFamilies.ged", false));
+    DefaultGedcomxConversionResult delegate = new DefaultGedcomxConversionResult();
+    mapper.toGedcomx(gedcom, new DeduplicatingGedcomxConversionResult(delegate));
+
+    // merged as each FAM record ended, without waiting for getDataset()
+    Relationship couple = delegate.getDataset().getRelationships().get(0);
+    assertEquals(couple.getKnownType(), RelationshipType.Couple);
+    assertEquals(couple.getFacts().size(), 2);
+    assertEquals(couple.getFacts().get(1).getKnownType(), FactType.Divorce);
+  }
+
+  @Test
+  public void testNotesMerged() throws Exception {
+    MappingConfig mappingConfig = new MappingConfig("Case012-DuplicateFamilies.ged", false);
+    mappingConfig.setNotes(true);
+    DeduplicatingGedcomxConversionResult result = new DeduplicatingGedcomxConversionResult(new DefaultGedcomxConversionResult());
+    new GedcomMapper(mappingConfig).toGedcomx(gedcom, result);
+
+    Relationship couple = result.getDataset().getRelationships().get(0);
+    assertEquals(couple.getKnownType(), RelationshipType.Couple);
+    // the note both families link to is kept once; the note only F2 refers to is added
+    List<Note> notes = couple.getNotes();
+    assertEquals(notes.size(), 2);
+    assertEquals(notes.get(0).getText(), "Married at Trinity Church.");
+    assertEquals(notes.get(1).getText(), "Divorce recorded in the county court.");
+    assertEquals(notes.get(1).getLinks().get(0).getHref().toString(), "#N1");
+  }
+}
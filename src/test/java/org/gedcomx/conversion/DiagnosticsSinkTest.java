@@ -0,0 +1,89 @@
+package org.gedcomx.conversion;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+
+public class DiagnosticsSinkTest {
+
+  @Test
+  public void testMessagesFromSeveralThreadsAreAllWritten() throws Exception {
+    File logFile = File.createTempFile("diagnostics", ".log");
+    try {
+      final DiagnosticsSink sink = new DiagnosticsSink(logFile, 1 << 16);
+      Thread[] threads = new Thread[4];
+      for (int t = 0; t < threads.length; t++) {
+        final int thread = t;
+        threads[t] = new Thread(() -> {
+          for (int i = 0; i < 10000; i++) {
+            sink.offer(thread + ":" + i);
+          }
+        });
+        threads[t].start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      sink.close();
+
+      List<String> lines = Files.readAllLines(logFile.toPath(), StandardCharsets.UTF_8);
+      assertEquals(sink.getDroppedCount(), 0);
+      assertEquals(lines.size(), 40000);
+      assertEquals(new HashSet<String>(lines).size(), 40000);
+
+      // each thread's messages stay in order
+      int[] next = new int[threads.length];
+      for (String line : lines) {
+        int thread = Integer.parseInt(line.substring(0, line.indexOf(':')));
+        assertEquals(Integer.parseInt(line.substring(line.indexOf(':') + 1)), next[thread]++);
+      }
+    }
+    finally {
+      logFile.delete();
+    }
+  }
+
+  @Test
+  public void testOverflowDropsAndCountsMessages() throws Exception {
+    File logFile = File.createTempFile("diagnostics", ".log");
+    try {
+      DiagnosticsSink sink = new DiagnosticsSink(logFile, 4);
+      int accepted = 0;
+      for (int i = 0; i < 100000; i++) {
+        if (sink.offer("message " + i)) {
+          accepted++;
+        }
+      }
+      sink.close();
+      assertFalse(sink.offer("after close"));
+
+      List<String> lines = Files.readAllLines(logFile.toPath(), StandardCharsets.UTF_8);
+      Set<String> messages = new HashSet<String>();
+      long reportedDrops = 0;
+      for (String line : lines) {
+        if (line.startsWith("[")) {
+          reportedDrops += Long.parseLong(line.substring(1, line.indexOf(' ')));
+        } else {
+          messages.add(line);
+        }
+      }
+      assertEquals(messages.size(), accepted);
+      assertEquals(reportedDrops, 100000 - accepted);
+      assertEquals(sink.getDroppedCount(), 100000 - accepted + 1);
+      assertTrue(accepted >= 4);
+    }
+    finally {
+      logFile.delete();
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package org.gedcomx.conversion;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Document;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.source.SourceDescription;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+
+public class GedcomxConversionResultTest {
+
+  @Test
+  public void testPlaceDescriptionAddedToDataset() throws Exception {
+    DatasetResult result = new DatasetResult(new Gedcomx());
+    PlaceDescription place = new PlaceDescription();
+    result.addPlaceDescription(place);
+
+    assertEquals(result.getDataset().getPlaces().size(), 1);
+    assertSame(result.getDataset().getPlaces().get(0), place);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testPlaceDescriptionWithoutDataset() throws Exception {
+    new DatasetResult(null).addPlaceDescription(new PlaceDescription());
+  }
+
+  @Test
+  public void testDocumentAddedToDataset() throws Exception {
+    DatasetResult result = new DatasetResult(new Gedcomx());
+    Document document = new Document();
+    result.addDocument(document);
+
+    assertEquals(result.getDataset().getDocuments().size(), 1);
+    assertSame(result.getDataset().getDocuments().get(0), document);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testDocumentWithoutDataset() throws Exception {
+    new DatasetResult(null).addDocument(new Document());
+  }
+
+  /**
+   * A result that implements only the methods without a default.
+   */
+  private static class DatasetResult implements GedcomxConversionResult {
+    private final Gedcomx dataset;
+
+    DatasetResult(Gedcomx dataset) {
+      this.dataset = dataset;
+    }
+
+    @Override
+    public Gedcomx getDataset() {
+      return dataset;
+    }
+
+    @Override
+    public Agent getDatasetContributor() {
+      return null;
+    }
+
+    @Override
+    public void setDatasetContributor(Agent person) {
+    }
+
+    @Override
+    public void addPerson(Person person) {
+    }
+
+    @Override
+    public void addRelationship(Relationship relationship) {
+    }
+
+    @Override
+    public void addSourceDescription(SourceDescription description) {
+    }
+
+    @Override
+    public void addOrganization(Agent organization) {
+    }
+
+    @Override
+    public void addLanguage(String langCode) {
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package org.gedcomx.conversion;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.parser.ModelParser;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.conversion.gedcom.dq55.GedcomMapper;
+import org.gedcomx.conversion.gedcom.dq55.MappingConfig;
+import org.gedcomx.fileformat.GedcomxOutputStream;
+import org.gedcomx.rt.GedcomxConstants;
+import org.testng.annotations.Test;
+
+import org.familysearch.platform.ordinances.Ordinance;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+
+public class IndexedGedcomxReaderTest {
+
+  @Test
+  public void testEntitiesAreReadById() throws Exception {
+    Gedcom gedcom = parseGedcom();
+    Gedcomx expected = new GedcomMapper(new MappingConfig("Case009-Family.ged", false)).toGedcomx(gedcom).getDataset();
+
+    File gedx = File.createTempFile("indexed", ".gedx");
+    try {
+      EntityIndex index = writeIndexed(gedcom, gedx, 65536);
+      assertEquals(index.size(), expected.getPersons().size() + expected.getRelationships().size());
+
+      try (IndexedGedcomxReader reader = new IndexedGedcomxReader(gedx, "tree.json.idx", Ordinance.class)) {
+        assertEquals(reader.size(), index.size());
+
+        // the first and last persons, either side of a separating comma
+        for (Person expectedPerson : new Person[]{expected.getPersons().get(0), expected.getPersons().get(expected.getPersons().size() - 1)}) {
+          Person person = reader.readPerson(expectedPerson.getId());
+          assertEquals(person.getId(), expectedPerson.getId());
+          assertEquals(person.getNames().get(0).getNameForms().get(0).getFullText(), expectedPerson.getNames().get(0).getNameForms().get(0).getFullText());
+        }
+
+        Relationship expectedRelationship = expected.getRelationships().get(1);
+        Relationship relationship = reader.readRelationship(expectedRelationship.getId());
+        assertEquals(relationship.getPerson1().getResource(), expectedRelationship.getPerson1().getResource());
+        assertEquals(relationship.getPerson2().getResource(), expectedRelationship.getPerson2().getResource());
+
+        assertNull(reader.readPerson("no-such-person"));
+      }
+    } finally {
+      gedx.delete();
+    }
+  }
+
+  @Test
+  public void testIndexSpilledInRunsFindsEveryEntity() throws Exception {
+    Gedcom gedcom = parseGedcom();
+    Gedcomx expected = new GedcomMapper(new MappingConfig("Case009-Family.ged", false)).toGedcomx(gedcom).getDataset();
+
+    File gedx = File.createTempFile("indexed", ".gedx");
+    try {
+      // runs of three entities, merged when the index is written
+      writeIndexed(gedcom, gedx, 3);
+      try (IndexedGedcomxReader reader = new IndexedGedcomxReader(gedx, "tree.json.idx", Ordinance.class)) {
+        for (Person person : expected.getPersons()) {
+          assertEquals(reader.readPerson(person.getId()).getId(), person.getId());
+        }
+        for (Relationship relationship : expected.getRelationships()) {
+          assertEquals(reader.readRelationship(relationship.getId()).getId(), relationship.getId());
+        }
+      }
+    } finally {
+      gedx.delete();
+    }
+  }
+
+  @Test
+  public void testLookupInStoredEntrySkipsThePrecedingEntities() throws Exception {
+    Gedcom gedcom = parseGedcom();
+    Gedcomx expected = new GedcomMapper(new MappingConfig("Case009-Family.ged", false)).toGedcomx(gedcom).getDataset();
+    Person expectedPerson = expected.getPersons().get(expected.getPersons().size() - 1);
+
+    File deflated = File.createTempFile("indexed", ".gedx");
+    File stored = File.createTempFile("indexed-stored", ".gedx");
+    try {
+      writeIndexed(gedcom, deflated, 65536);
+      try (FileOutputStream out = new FileOutputStream(stored)) {
+        RawEntryCopier.copy(deflated, out, new HashSet<String>(Arrays.asList("tree.json", "tree.json.idx")));
+      }
+      try (JarFile jarFile = new JarFile(stored)) {
+        assertEquals(jarFile.getJarEntry("tree.json").getMethod(), ZipEntry.STORED);
+        assertEquals(jarFile.getJarEntry("tree.json.idx").getMethod(), ZipEntry.STORED);
+      }
+      long offset;
+      try (IndexedGedcomxReader reader = new IndexedGedcomxReader(stored, "tree.json.idx", Ordinance.class)) {
+        offset = reader.getLocation(expectedPerson.getId()).getOffset();
+      }
+
+      // overwrite everything in the entry before the last person; a lookup that read those bytes would fail
+      byte[] bytes = Files.readAllBytes(stored.toPath());
+      int dataOffset = dataOffset(bytes, "tree.json");
+      Arrays.fill(bytes, dataOffset, dataOffset + (int) offset, (byte) 0);
+      Files.write(stored.toPath(), bytes);
+
+      try (IndexedGedcomxReader reader = new IndexedGedcomxReader(stored, "tree.json.idx", Ordinance.class)) {
+        Person person = reader.readPerson(expectedPerson.getId());
+        assertEquals(person.getId(), expectedPerson.getId());
+        assertEquals(person.getNames().get(0).getNameForms().get(0).getFullText(), expectedPerson.getNames().get(0).getNameForms().get(0).getFullText());
+      }
+    } finally {
+      deflated.delete();
+      stored.delete();
+    }
+  }
+
+  private Gedcom parseGedcom() throws Exception {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case009-Family.ged");
+    Gedcom gedcom = new ModelParser().parseGedcom(new File(gedcomUrl.toURI()));
+    gedcom.createIndexes();
+    return gedcom;
+  }
+
+  private static EntityIndex writeIndexed(final Gedcom gedcom, File gedx, int runSize) throws IOException {
+    final GedcomMapper mapper = new GedcomMapper(new MappingConfig("Case009-Family.ged", false));
+    LeanJsonSerialization serialization = new LeanJsonSerialization(Ordinance.class);
+    StreamingGedcomxConversionResult result = new StreamingGedcomxConversionResult(serialization, target -> mapper.toGedcomx(gedcom, target));
+    try (EntityIndex index = new EntityIndex(runSize)) {
+      result.setIndex(index, "tree.json");
+
+      GedcomxOutputStream output = new GedcomxOutputStream(new FileOutputStream(gedx), new StreamingDatasetSerializer(serialization));
+      output.addResource(GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE, "tree.json", result, null, null);
+      output.addResource(EntityIndex.CONTENT_TYPE, "tree.json.idx", index, null, null);
+      output.close();
+      return index;
+    }
+  }
+
+  /**
+   * @return the offset in the zip file of the data of the entry, found through its local header
+   */
+  private static int dataOffset(byte[] zip, String entryName) {
+    byte[] name = entryName.getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i + 30 + name.length <= zip.length; i++) {
+      if (zip[i] == 'P' && zip[i + 1] == 'K' && zip[i + 2] == 3 && zip[i + 3] == 4
+        && littleEndianShort(zip, i + 26) == name.length
+        && Arrays.equals(Arrays.copyOfRange(zip, i + 30, i + 30 + name.length), name)) {
+        return i + 30 + name.length + littleEndianShort(zip, i + 28);
+      }
+    }
+    throw new AssertionError("No local header for " + entryName);
+  }
+
+  private static int littleEndianShort(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8;
+  }
+}
@@ -0,0 +1,65 @@
+package org.gedcomx.conversion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URL;
+import java.util.Iterator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.parser.ModelParser;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conversion.gedcom.dq55.GedcomMapper;
+import org.gedcomx.conversion.gedcom.dq55.MappingConfig;
+import org.gedcomx.fileformat.JacksonJsonSerialization;
+import org.testng.annotations.Test;
+
+import org.familysearch.platform.ordinances.Ordinance;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class LeanJsonSerializationTest {
+
+  @Test
+  public void testLeanOutputIsEquivalentToJacksonOutput() throws Exception {
+    // names, facts, families and ordinances (which are written by the regular mapping)
+    String[] gedcomFiles = {"Case003-PersonsName.ged", "Case006-PersonsFacts.ged", "Case009-Family.ged", "Case010-PersonOrdinances.ged"};
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    for (String gedcomFile : gedcomFiles) {
+      URL gedcomUrl = this.getClass().getClassLoader().getResource(gedcomFile);
+      Gedcom gedcom = new ModelParser().parseGedcom(new File(gedcomUrl.toURI()));
+      gedcom.createIndexes();
+      Gedcomx dataset = new GedcomMapper(new MappingConfig(gedcomFile, false)).toGedcomx(gedcom).getDataset();
+
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      new JacksonJsonSerialization(Ordinance.class).serialize(dataset, expected);
+      ByteArrayOutputStream lean = new ByteArrayOutputStream();
+      new LeanJsonSerialization(Ordinance.class).serialize(dataset, lean);
+
+      // entities written by the regular mapping may still carry empty collections
+      assertEquals(withoutEmptyArrays(objectMapper.readTree(lean.toByteArray())), withoutEmptyArrays(objectMapper.readTree(expected.toByteArray())), gedcomFile);
+    }
+  }
+
+  private static JsonNode withoutEmptyArrays(JsonNode node) {
+    if (node.isObject()) {
+      Iterator<JsonNode> fields = node.iterator();
+      while (fields.hasNext()) {
+        JsonNode field = fields.next();
+        if (field.isArray() && field.size() == 0) {
+          fields.remove();
+        } else {
+          withoutEmptyArrays(field);
+        }
+      }
+    } else if (node.isArray()) {
+      for (JsonNode element : node) {
+        withoutEmptyArrays(element);
+      }
+    }
+    return node;
+  }
+}
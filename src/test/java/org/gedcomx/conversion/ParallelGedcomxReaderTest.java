@@ -0,0 +1,66 @@
+package org.gedcomx.conversion;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.fileformat.GedcomxOutputStream;
+import org.gedcomx.fileformat.JacksonJsonSerialization;
+import org.gedcomx.rt.GedcomxConstants;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class ParallelGedcomxReaderTest {
+
+  private static final int ENTRY_COUNT = 20;
+
+  @Test
+  public void testEntriesComeBackInFileOrder() throws Exception {
+    File gedx = createGedx();
+    try {
+      // more entries than may be in flight, so the read-ahead window has to slide
+      assertEntries(gedx, 3);
+      assertEntries(gedx, 0);
+    } finally {
+      gedx.delete();
+    }
+  }
+
+  private static void assertEntries(File gedx, int threadCount) throws Exception {
+    final List<String> names = new ArrayList<String>();
+    final List<String> personIds = new ArrayList<String>();
+    try (ParallelGedcomxReader reader = new ParallelGedcomxReader(gedx, new JacksonJsonSerialization(), threadCount)) {
+      assertEquals(reader.getAttributes().get("X-DC-conformsTo"), "http://gedcomx.org/file/v1");
+      int entryCount = reader.readAll((entry, resource) -> {
+        names.add(entry.getJarEntry().getName());
+        personIds.add(((Gedcomx) resource).getPersons().get(0).getId());
+      });
+      assertEquals(entryCount, ENTRY_COUNT);
+    }
+
+    for (int i = 0; i < ENTRY_COUNT; i++) {
+      assertEquals(names.get(i), "tree" + i + ".json");
+      assertEquals(personIds.get(i), "P" + i);
+    }
+  }
+
+  private static File createGedx() throws Exception {
+    File gedx = File.createTempFile("parallel", ".gedx");
+    GedcomxOutputStream out = new GedcomxOutputStream(new FileOutputStream(gedx), new JacksonJsonSerialization());
+    out.addAttribute("X-DC-conformsTo", "http://gedcomx.org/file/v1");
+    for (int i = 0; i < ENTRY_COUNT; i++) {
+      Gedcomx dataset = new Gedcomx();
+      Person person = new Person();
+      person.setId("P" + i);
+      dataset.addPerson(person);
+      out.addResource(GedcomxConstants.GEDCOMX_JSON_MEDIA_TYPE, "tree" + i + ".json", dataset, null, null);
+    }
+    out.close();
+    return gedx;
+  }
+}
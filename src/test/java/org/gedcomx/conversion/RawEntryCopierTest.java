@@ -0,0 +1,156 @@
+package org.gedcomx.conversion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+
+public class RawEntryCopierTest {
+
+  @Test
+  public void testEntriesAreCopiedUnchanged() throws Exception {
+    File in = createGedx();
+    File out = File.createTempFile("raw-copy", ".gedx");
+    try {
+      try (FileOutputStream outputStream = new FileOutputStream(out)) {
+        assertEquals(RawEntryCopier.copy(in, outputStream), 4);
+      }
+
+      try (JarFile original = new JarFile(in); JarFile copy = new JarFile(out)) {
+        assertEquals(copy.getManifest().getMainAttributes().getValue("X-DC-conformsTo"), "http://gedcomx.org/file/v1");
+        assertEquals(copy.size(), original.size());
+        for (String name : new String[]{"tree.json", "stored.txt"}) {
+          JarEntry originalEntry = original.getJarEntry(name);
+          JarEntry copiedEntry = copy.getJarEntry(name);
+          assertEquals(copiedEntry.getMethod(), originalEntry.getMethod());
+          assertEquals(copiedEntry.getCompressedSize(), originalEntry.getCompressedSize());
+          assertEquals(copiedEntry.getCrc(), originalEntry.getCrc());
+          assertEquals(read(copy.getInputStream(copiedEntry)), read(original.getInputStream(originalEntry)));
+        }
+      }
+    } finally {
+      in.delete();
+      out.delete();
+    }
+  }
+
+  @Test
+  public void testCopyToAnyStream() throws Exception {
+    File in = createGedx();
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      RawEntryCopier.copy(in, out);
+
+      // the local headers carry the sizes, so the copy can also be read sequentially
+      try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+        assertEquals(zip.getNextEntry().getName(), JarFile.MANIFEST_NAME);
+        assertEquals(zip.getNextEntry().getName(), "tree.json");
+        assertEquals(read(zip), json());
+        assertEquals(zip.getNextEntry().getName(), "stored.txt");
+        assertEquals(zip.getNextEntry().getName(), "empty/");
+        assertNull(zip.getNextEntry());
+      }
+    } finally {
+      in.delete();
+    }
+  }
+
+  @Test
+  public void testNamedEntriesAreStored() throws Exception {
+    File in = createGedx();
+    File out = File.createTempFile("raw-copy", ".gedx");
+    try {
+      try (FileOutputStream outputStream = new FileOutputStream(out)) {
+        assertEquals(RawEntryCopier.copy(in, outputStream, new HashSet<String>(Arrays.asList("tree.json", "stored.txt"))), 4);
+      }
+
+      try (JarFile original = new JarFile(in); JarFile copy = new JarFile(out)) {
+        JarEntry copiedEntry = copy.getJarEntry("tree.json");
+        assertEquals(copiedEntry.getMethod(), ZipEntry.STORED);
+        assertEquals(copiedEntry.getCompressedSize(), json().length());
+        assertEquals(copiedEntry.getCrc(), original.getJarEntry("tree.json").getCrc());
+        assertEquals(read(copy.getInputStream(copiedEntry)), json());
+        // already stored
+        assertEquals(read(copy.getInputStream(copy.getJarEntry("stored.txt"))), "stored");
+        assertEquals(copy.getJarEntry("empty/").getMethod(), original.getJarEntry("empty/").getMethod());
+      }
+
+      // and sequentially, which checks the sizes and checksum in the local header
+      try (ZipInputStream zip = new ZipInputStream(new FileInputStream(out))) {
+        assertEquals(zip.getNextEntry().getName(), JarFile.MANIFEST_NAME);
+        assertEquals(zip.getNextEntry().getName(), "tree.json");
+        assertEquals(read(zip), json());
+      }
+    } finally {
+      in.delete();
+      out.delete();
+    }
+  }
+
+  private static File createGedx() throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().putValue("X-DC-conformsTo", "http://gedcomx.org/file/v1");
+
+    File gedx = File.createTempFile("raw-copy", ".gedx");
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(gedx), manifest)) {
+      // deflated, with a data descriptor
+      out.putNextEntry(new JarEntry("tree.json"));
+      out.write(json().getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+
+      byte[] text = "stored".getBytes(StandardCharsets.UTF_8);
+      CRC32 crc = new CRC32();
+      crc.update(text);
+      JarEntry stored = new JarEntry("stored.txt");
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(text.length);
+      stored.setCrc(crc.getValue());
+      out.putNextEntry(stored);
+      out.write(text);
+      out.closeEntry();
+
+      out.putNextEntry(new JarEntry("empty/"));
+      out.closeEntry();
+    }
+    return gedx;
+  }
+
+  private static String json() {
+    StringBuilder json = new StringBuilder("{\"persons\":[");
+    for (int i = 0; i < 1000; i++) {
+      json.append(i == 0 ? "" : ",").append("{\"id\":\"I").append(i).append("\"}");
+    }
+    return json.append("]}").toString();
+  }
+
+  private static String read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int count;
+    while ((count = in.read(buffer)) > 0) {
+      out.write(buffer, 0, count);
+    }
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
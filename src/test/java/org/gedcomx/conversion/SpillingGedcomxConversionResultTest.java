@@ -0,0 +1,94 @@
+package org.gedcomx.conversion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URL;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.parser.ModelParser;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conversion.gedcom.dq55.GedcomMapper;
+import org.gedcomx.conversion.gedcom.dq55.MappingConfig;
+import org.gedcomx.rt.json.GedcomJacksonModule;
+import org.testng.annotations.Test;
+
+import org.familysearch.platform.ordinances.Ordinance;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+public class SpillingGedcomxConversionResultTest {
+
+  @Test
+  public void testSpilledEntitiesComeBackInOrder() throws Exception {
+    // a budget of zero spills at the end of every record
+    SpillingGedcomxConversionResult result = new SpillingGedcomxConversionResult(0, null, Ordinance.class);
+    try {
+      for (int i = 0; i < 600; i++) {
+        Person person = new Person();
+        person.setId("P" + i);
+        result.addPerson(person);
+        result.endRecord();
+      }
+      assertEquals(result.getSpillCount(), 600);
+
+      Gedcomx dataset = result.getDataset();
+      assertEquals(dataset.getPersons().size(), 600);
+      for (int i = 0; i < 600; i++) {
+        assertEquals(dataset.getPersons().get(i).getId(), "P" + i);
+      }
+    } finally {
+      result.close();
+    }
+  }
+
+  @Test
+  public void testOnlyTheBufferedEntitiesCountAgainstTheBudget() throws Exception {
+    // far less than the heap the test itself uses, but more than the buffered persons need
+    SpillingGedcomxConversionResult result = new SpillingGedcomxConversionResult(1024 * 1024, null, Ordinance.class);
+    try {
+      for (int i = 0; i < 600; i++) {
+        Person person = new Person();
+        person.setId("P" + i);
+        result.addPerson(person);
+        result.endRecord();
+      }
+      assertEquals(result.getSpillCount(), 0);
+      assertEquals(result.getDataset().getPersons().size(), 600);
+    } finally {
+      result.close();
+    }
+  }
+
+  @Test
+  public void testWriteDatasetMatchesInMemoryConversion() throws Exception {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case009-Family.ged");
+    Gedcom gedcom = new ModelParser().parseGedcom(new File(gedcomUrl.toURI()));
+    gedcom.createIndexes();
+
+    Gedcomx expected = new GedcomMapper(new MappingConfig("Case009-Family.ged", false)).toGedcomx(gedcom).getDataset();
+
+    SpillingGedcomxConversionResult result = new SpillingGedcomxConversionResult(Long.MAX_VALUE, null, Ordinance.class);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      new GedcomMapper(new MappingConfig("Case009-Family.ged", false)).toGedcomx(gedcom, result);
+      // persons and relationships come back from the spill files, the rest from memory
+      result.spill();
+      result.addLanguage("en");
+      result.writeDataset(out);
+    } finally {
+      result.close();
+    }
+    assertTrue(result.getSpillCount() > 0);
+
+    Gedcomx dataset = GedcomJacksonModule.createObjectMapper(Ordinance.class).readValue(out.toByteArray(), Gedcomx.class);
+    assertEquals(dataset.getPersons().size(), expected.getPersons().size());
+    assertEquals(dataset.getPersons().get(0).getId(), expected.getPersons().get(0).getId());
+    assertEquals(dataset.getRelationships().size(), expected.getRelationships().size());
+    assertEquals(dataset.getSourceDescriptions().size(), expected.getSourceDescriptions().size());
+    assertEquals(dataset.getAgents().size(), expected.getAgents().size());
+    assertEquals(dataset.getLang(), "en");
+  }
+}
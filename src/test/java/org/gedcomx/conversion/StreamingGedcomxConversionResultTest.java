@@ -0,0 +1,70 @@
+package org.gedcomx.conversion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URL;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.parser.ModelParser;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.conversion.gedcom.dq55.GedcomMapper;
+import org.gedcomx.conversion.gedcom.dq55.MappingConfig;
+import org.gedcomx.rt.json.GedcomJacksonModule;
+import org.testng.annotations.Test;
+
+import org.familysearch.platform.ordinances.Ordinance;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+
+public class StreamingGedcomxConversionResultTest {
+
+  @Test
+  public void testStreamedDatasetMatchesInMemoryConversion() throws Exception {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case009-Family.ged");
+    final Gedcom gedcom = new ModelParser().parseGedcom(new File(gedcomUrl.toURI()));
+    gedcom.createIndexes();
+
+    GedcomxConversionResult expectedResult = new GedcomMapper(new MappingConfig("Case009-Family.ged", false)).toGedcomx(gedcom);
+    Gedcomx expected = expectedResult.getDataset();
+
+    final GedcomMapper mapper = new GedcomMapper(new MappingConfig("Case009-Family.ged", false));
+    StreamingGedcomxConversionResult result = new StreamingGedcomxConversionResult(new LeanJsonSerialization(Ordinance.class), target -> mapper.toGedcomx(gedcom, target));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    result.writeDataset(out);
+
+    Gedcomx dataset = GedcomJacksonModule.createObjectMapper(Ordinance.class).readValue(out.toByteArray(), Gedcomx.class);
+    assertEquals(dataset.getPersons().size(), expected.getPersons().size());
+    for (int i = 0; i < expected.getPersons().size(); i++) {
+      Person person = dataset.getPersons().get(i);
+      assertEquals(person.getId(), expected.getPersons().get(i).getId());
+    }
+    assertEquals(dataset.getRelationships().size(), expected.getRelationships().size());
+    for (int i = 0; i < expected.getRelationships().size(); i++) {
+      Relationship relationship = dataset.getRelationships().get(i);
+      assertEquals(relationship.getId(), expected.getRelationships().get(i).getId());
+      assertEquals(relationship.getPerson1().getResource(), expected.getRelationships().get(i).getPerson1().getResource());
+      // the facts of a couple relationship are mapped after it is added
+      assertEquals(factCount(relationship), factCount(expected.getRelationships().get(i)));
+    }
+    assertEquals(dataset.getSourceDescriptions().size(), expected.getSourceDescriptions().size());
+    assertEquals(dataset.getAgents().size(), expected.getAgents().size());
+    assertEquals(dataset.getLang(), expected.getLang());
+
+    assertNotNull(result.getDatasetContributor());
+    assertEquals(result.getDatasetContributor().getId(), expectedResult.getDatasetContributor().getId());
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testEntitiesCannotBeAddedOutsideOfTheConversion() throws Exception {
+    StreamingGedcomxConversionResult result = new StreamingGedcomxConversionResult(new LeanJsonSerialization(Ordinance.class), target -> { });
+    result.addPerson(new Person());
+  }
+
+  private static int factCount(Relationship relationship) {
+    return relationship.getFacts() == null ? 0 : relationship.getFacts().size();
+  }
+}
@@ -0,0 +1,96 @@
+package org.gedcomx.conversion.gedcom;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.folg.gedcom.parser.ModelParser;
+
+/**
+ * Compares parsing an ANSEL GEDCOM file with the parser's own ANSEL decoding against parsing it through the
+ * table-driven {@link AnselCharset} decoder of {@link AnselReader}. Not a unit test; run its main method on the test
+ * classpath, passing the number of persons to generate.
+ */
+public class AnselCharsetBenchmark {
+
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) throws Exception {
+    int persons = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+    File anselFile = File.createTempFile("ansel-benchmark", ".ged");
+    try {
+      writeAnselGedcom(anselFile, persons);
+      byte[] bytes = Files.readAllBytes(anselFile.toPath());
+      System.out.printf("%d persons, %d bytes%n", persons, bytes.length);
+
+      for (int round = 1; round <= ROUNDS; round++) {
+        long start = System.nanoTime();
+        new ModelParser().parseGedcom(anselFile);
+        long parserDecoding = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        try (Reader reader = new AnselReader(new FileInputStream(anselFile))) {
+          new ModelParser().parseGedcom(reader);
+        }
+        long readerDecoding = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        decode(bytes);
+        long decoding = System.nanoTime() - start;
+
+        System.out.printf("round %d: parser ANSEL %d ms | AnselReader %d ms | raw decode %d ms (%.1f MB/s)%n",
+          round, parserDecoding / 1000000, readerDecoding / 1000000, decoding / 1000000,
+          bytes.length / (decoding / 1e9) / (1024 * 1024));
+      }
+    }
+    finally {
+      anselFile.delete();
+    }
+  }
+
+  private static int decode(byte[] bytes) {
+    CharsetDecoder decoder = new AnselCharset().newDecoder();
+    CharBuffer out = CharBuffer.allocate(65536);
+    ByteBuffer in = ByteBuffer.wrap(bytes);
+    int chars = 0;
+    while (true) {
+      boolean overflow = decoder.decode(in, out, true).isOverflow();
+      chars += out.position();
+      out.clear();
+      if (!overflow) {
+        break;
+      }
+    }
+    decoder.flush(out);
+    return chars + out.position();
+  }
+
+  private static void writeAnselGedcom(File file, int persons) throws IOException {
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      out.write(ascii("0 HEAD\r\n1 GEDC\r\n2 VERS 5.5\r\n2 FORM LINEAGE-LINKED\r\n1 CHAR ANSEL\r\n"));
+      for (int i = 1; i <= persons; i++) {
+        out.write(ascii("0 @I" + i + "@ INDI\r\n1 NAME Jos"));
+        out.write(new byte[]{(byte) 0xE2, 'e', ' ', '/', 'M', (byte) 0xE8, 'u', 'l', 'l', 'e', 'r', '/'});
+        out.write(ascii("\r\n1 BIRT\r\n2 DATE ABT 18" + (i % 100) + "\r\n2 PLAC "));
+        out.write(new byte[]{(byte) 0xA2, 'r', 'e', 's', 'u', 'n', 'd', ',', ' ', 'D', 'e', 'n', 'm', 'a', 'r', 'k'});
+        out.write(ascii("\r\n1 NOTE "));
+        out.write(new byte[]{'K', 'r', (byte) 0xE5, 'a', 'k', 'o', 'w', ' ', (byte) 0xB1, (byte) 0xF1, 'o', 'd', (byte) 0xE2, 'z'});
+        out.write(ascii("\r\n"));
+      }
+      out.write(ascii("0 TRLR\r\n"));
+    }
+  }
+
+  private static byte[] ascii(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,131 @@
+package org.gedcomx.conversion.gedcom;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.parser.ModelParser;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+
+public class AnselCharsetTest {
+
+  private static final byte[] ANSEL_GEDCOM = concat(
+    ascii("0 HEAD\r\n1 GEDC\r\n2 VERS 5.5\r\n1 CHAR ANSEL\r\n0 @I1@ INDI\r\n1 NAME Hans /M"),
+    new byte[]{(byte) 0xE8, 'u', 'l', 'l', 'e', 'r'},
+    ascii("/\r\n0 TRLR\r\n"));
+
+  @Test
+  public void testSpacingCharacters() throws Exception {
+    byte[] bytes = {(byte) 0xA2, (byte) 0xB5, (byte) 0xC3, (byte) 0xCF};
+    assertEquals(new String(bytes, new AnselCharset()), "Øæ©ß");
+  }
+
+  @Test
+  public void testCombiningMarksFollowBaseCharacter() throws Exception {
+    // ANSEL: acute + cedilla + c; Unicode: c + acute + cedilla
+    byte[] bytes = {'a', (byte) 0xE2, (byte) 0xF0, 'c', 'e'};
+    assertEquals(new String(bytes, new AnselCharset()), "ac\u0301\u0327e");
+  }
+
+  @Test
+  public void testCombiningMarksAcrossBufferBoundary() throws Exception {
+    CharsetDecoder decoder = new AnselCharset().newDecoder();
+    CharBuffer out = CharBuffer.allocate(8);
+
+    decoder.decode(ByteBuffer.wrap(new byte[]{'n', (byte) 0xE4}), out, false);
+    decoder.decode(ByteBuffer.wrap(new byte[]{'o'}), out, true);
+    decoder.flush(out);
+    out.flip();
+
+    assertEquals(out.toString(), "no\u0303");
+  }
+
+  @Test
+  public void testTrailingCombiningMarkIsFlushed() throws Exception {
+    byte[] bytes = {'x', (byte) 0xE8};
+    assertEquals(new String(bytes, new AnselCharset()), "x\u0308");
+  }
+
+  @Test
+  public void testCombiningMarkBeforeLineBreakStaysOnItsLine() throws Exception {
+    byte[] bytes = {'x', (byte) 0xE8, '\r', '\n', 'y', (byte) 0xE2, '\n', 'z'};
+    assertEquals(new String(bytes, new AnselCharset()), "x\u0308\r\ny\u0301\nz");
+  }
+
+  @Test
+  public void testUnmappedByteIsReplaced() throws Exception {
+    byte[] bytes = {'a', (byte) 0x90, 'b'};
+    assertEquals(new String(bytes, new AnselCharset()), "a\uFFFDb");
+  }
+
+  @Test
+  public void testCharsetProvider() throws Exception {
+    assertTrue(Charset.isSupported("ANSEL"));
+    assertTrue(Charset.forName("ansel") instanceof AnselCharset);
+  }
+
+  @Test
+  public void testReader() throws Exception {
+    StringBuilder text = new StringBuilder();
+    try (Reader reader = new AnselReader(new ByteArrayInputStream(ANSEL_GEDCOM))) {
+      char[] buffer = new char[16];
+      int read;
+      while ((read = reader.read(buffer)) != -1) {
+        text.append(buffer, 0, read);
+      }
+    }
+
+    assertTrue(text.toString().contains("1 NAME Hans /Mu\u0308ller/\r\n"));
+  }
+
+  @Test
+  public void testAnselFileParsesThroughReader() throws Exception {
+    File anselFile = File.createTempFile("ansel", ".ged");
+    try {
+      try (OutputStream out = new FileOutputStream(anselFile)) {
+        out.write(ANSEL_GEDCOM);
+      }
+      assertTrue(AnselReader.isAnselEncoded(anselFile));
+
+      Gedcom gedcom;
+      try (Reader reader = new AnselReader(new FileInputStream(anselFile))) {
+        gedcom = new ModelParser().parseGedcom(reader);
+      }
+      assertNotNull(gedcom);
+      assertEquals(gedcom.getPeople().size(), 1);
+      String name = gedcom.getPeople().get(0).getNames().get(0).getValue();
+      assertEquals(Normalizer.normalize(name, Normalizer.Form.NFC), "Hans /Müller/");
+    }
+    finally {
+      anselFile.delete();
+    }
+  }
+
+  private static byte[] ascii(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] part : parts) {
+      out.write(part, 0, part.length);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2012 Intellectual Reserve, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gedcomx.conversion.gedcom;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+public class GedcomRecordIndexTest {
+
+  @Test
+  public void testRecordsAndTags() throws Exception {
+    File gedcomFile = new File(getClass().getClassLoader().getResource("Case009-Family.ged").toURI());
+    GedcomRecordIndex index = GedcomRecordIndex.build(gedcomFile);
+
+    assertEquals(index.size(), 36);
+    assertEquals(index.getTag(0), "HEAD");
+    assertEquals(index.getTag(index.size() - 1), "TRLR");
+    assertEquals(index.getOrdinals("INDI").length, 15);
+    assertEquals(index.getOrdinals("FAM").length, 10);
+    assertEquals(index.getOrdinals("SOUR").length, 5);
+    assertEquals(index.getOrdinals("REPO").length, 3);
+    assertEquals(index.getOrdinals("SUBM").length, 1);
+
+    // the byte order mark stays with the header and the records cover the whole file
+    assertEquals(index.getStart(0), 0);
+    long total = 0;
+    for (int i = 0; i < index.size(); i++) {
+      assertEquals(index.getStart(i), total);
+      total += index.getLength(i);
+    }
+    assertEquals(total, gedcomFile.length());
+  }
+
+  @Test
+  public void testRecordByXref() throws Exception {
+    File gedcomFile = new File(getClass().getClassLoader().getResource("Case009-Family.ged").toURI());
+    GedcomRecordIndex index = GedcomRecordIndex.build(gedcomFile);
+
+    int ordinal = index.indexOf("I1");
+    assertEquals(index.getTag(ordinal), "INDI");
+    assertEquals(index.indexOf("NOPE"), -1);
+
+    byte[] record = new byte[(int) index.getLength(ordinal)];
+    try (RandomAccessFile in = new RandomAccessFile(gedcomFile, "r")) {
+      in.seek(index.getStart(ordinal));
+      in.readFully(record);
+    }
+    String text = new String(record, StandardCharsets.UTF_8);
+    assertTrue(text.startsWith("0 @I1@ INDI"));
+    assertTrue(text.contains("1 NAME Petrus Marinus /Louwaert/"));
+    assertTrue(!text.contains("0 @I2@"));
+  }
+
+  @Test
+  public void testTagsIgnoreCase() throws Exception {
+    File gedcomFile = new File(getClass().getClassLoader().getResource("Case003-PersonsName.ged").toURI());
+    GedcomRecordIndex index = GedcomRecordIndex.build(gedcomFile);
+
+    assertEquals(index.getOrdinals("INDI").length, 18);
+    assertEquals(index.getTag(index.indexOf("I000017")), "INDI");
+  }
+}
@@ -0,0 +1,108 @@
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.parser.ModelParser;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.source.SourceDescription;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+
+public class BatchPostProcessorTest {
+  private Gedcom gedcom;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case009-Family.ged");
+    gedcom = new ModelParser().parseGedcom(new File(gedcomUrl.toURI()));
+    gedcom.createIndexes();
+    assertNotNull(gedcom);
+  }
+
+  @Test
+  public void testAllEntityTypesArePostProcessed() throws Exception {
+    TestConversionResult expected = new TestConversionResult();
+    new GedcomMapper(new MappingConfig("Case009-Family.ged", false)).toGedcomx(gedcom, expected);
+
+    CountingPostProcessor postProcessor = new CountingPostProcessor();
+    TestConversionResult result = new TestConversionResult();
+    List<BatchPostProcessor> postProcessors = Arrays.<BatchPostProcessor>asList(postProcessor);
+    new GedcomMapper(new MappingConfig("Case009-Family.ged", false), null, postProcessors, 2).toGedcomx(gedcom, result);
+
+    assertEquals(postProcessor.persons.get(), expected.getPersons().size());
+    assertEquals(postProcessor.relationships.get(), expected.getRelationships().size());
+    assertEquals(postProcessor.sourceDescriptions.get(), expected.getSourceDescriptions().size());
+    assertEquals(postProcessor.agents.get(), expected.getOrganizations().size() + 1);
+
+    // the post-processed entities reach the result in the order they were mapped
+    assertEquals(result.getPersons().size(), expected.getPersons().size());
+    for (int i = 0; i < expected.getPersons().size(); i++) {
+      assertEquals(result.getPersons().get(i).getId(), expected.getPersons().get(i).getId());
+      assertEquals(result.getPersons().get(i).getLang(), "x-post-processed");
+    }
+    assertEquals(result.getRelationships().size(), expected.getRelationships().size());
+    for (int i = 0; i < expected.getRelationships().size(); i++) {
+      assertEquals(result.getRelationships().get(i).getId(), expected.getRelationships().get(i).getId());
+    }
+    assertEquals(result.getContributors().size(), 1);
+  }
+
+  @Test
+  public void testPostProcessingOnTheMappingThread() throws Exception {
+    CountingPostProcessor postProcessor = new CountingPostProcessor();
+    TestConversionResult result = new TestConversionResult();
+    List<BatchPostProcessor> postProcessors = Arrays.<BatchPostProcessor>asList(postProcessor);
+    new GedcomMapper(new MappingConfig("Case009-Family.ged", false), null, postProcessors, 0).toGedcomx(gedcom, result);
+
+    assertEquals(postProcessor.persons.get(), result.getPersons().size());
+    assertTrue(postProcessor.threadsSeen.get() == 0);
+  }
+
+  private static class CountingPostProcessor implements BatchPostProcessor {
+    private final AtomicInteger persons = new AtomicInteger();
+    private final AtomicInteger relationships = new AtomicInteger();
+    private final AtomicInteger sourceDescriptions = new AtomicInteger();
+    private final AtomicInteger agents = new AtomicInteger();
+    private final AtomicInteger threadsSeen = new AtomicInteger();
+    private final Thread creator = Thread.currentThread();
+
+    @Override
+    public void postProcessPersons(List<MappedEntity<Person>> batch) {
+      for (MappedEntity<Person> person : batch) {
+        assertEquals(((org.folg.gedcom.model.Person) person.getRecord()).getId(), person.getEntity().getId());
+        person.getEntity().setLang("x-post-processed");
+      }
+      persons.addAndGet(batch.size());
+      if (Thread.currentThread() != creator) {
+        threadsSeen.incrementAndGet();
+      }
+    }
+
+    @Override
+    public void postProcessRelationships(List<MappedEntity<Relationship>> batch) {
+      relationships.addAndGet(batch.size());
+    }
+
+    @Override
+    public void postProcessSourceDescriptions(List<MappedEntity<SourceDescription>> batch) {
+      sourceDescriptions.addAndGet(batch.size());
+    }
+
+    @Override
+    public void postProcessAgents(List<MappedEntity<Agent>> batch) {
+      agents.addAndGet(batch.size());
+    }
+  }
+}
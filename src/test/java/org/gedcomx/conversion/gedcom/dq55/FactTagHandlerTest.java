@@ -0,0 +1,88 @@
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.folg.gedcom.model.EventFact;
+import org.gedcomx.common.URI;
+import org.gedcomx.conclusion.Fact;
+import org.gedcomx.conversion.GedcomxConversionResult;
+import org.gedcomx.types.FactType;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+
+public class FactTagHandlerTest {
+
+  /**
+   * Added to the config of each test that uses it, so that it does not affect the other tests.
+   */
+  public static class DnaTestHandler implements FactTagHandler {
+    @Override
+    public Set<String> getTags() {
+      return Collections.singleton("_DNA");
+    }
+
+    @Override
+    public boolean toFact(EventFact dqFact, Fact gedxFact, GedcomxConversionResult result) {
+      gedxFact.setType(URI.create("data:,DNA%20test"));
+      return gedxFact.getValue() != null;
+    }
+  }
+
+  @Test
+  public void testCustomTagIsMappedByHandler() throws Exception {
+    EventFact dqFact = new EventFact();
+    dqFact.setTag("_dna");
+    dqFact.setValue("Y-DNA haplogroup R1b");
+    dqFact.setDate("2012");
+
+    MappingConfig mappingConfig = new MappingConfig("test.ged", false);
+    mappingConfig.addFactTagHandler(new DnaTestHandler());
+    Fact gedxFact = FactMapper.toFact(dqFact, mappingConfig, new TestConversionResult());
+    assertNotNull(gedxFact);
+    assertEquals(gedxFact.getType().toString(), "data:,DNA%20test");
+    assertEquals(gedxFact.getValue(), "Y-DNA haplogroup R1b");
+    assertEquals(gedxFact.getDate().getOriginal(), "2012");
+
+    // the handler drops facts without a value
+    dqFact.setValue(null);
+    assertNull(FactMapper.toFact(dqFact, mappingConfig, new TestConversionResult()));
+
+    // without the handler, the tag is ignored
+    dqFact.setValue("Y-DNA haplogroup R1b");
+    assertNull(FactMapper.toFact(dqFact, new MappingConfig("test.ged", false), new TestConversionResult()));
+  }
+
+  @Test
+  public void testDroppedFactAddsNoPlaceDescription() throws Exception {
+    EventFact dqFact = new EventFact();
+    dqFact.setTag("_DNA");
+    dqFact.setPlace("Salt Lake City, Utah");
+
+    MappingConfig mappingConfig = new MappingConfig("test.ged", false);
+    mappingConfig.setPlaceDescriptions(true);
+    mappingConfig.addFactTagHandler(new DnaTestHandler());
+    TestConversionResult result = new TestConversionResult();
+    assertNull(FactMapper.toFact(dqFact, mappingConfig, result));
+    assertEquals(result.getPlaces().size(), 0);
+
+    dqFact.setValue("Y-DNA haplogroup R1b");
+    assertNotNull(FactMapper.toFact(dqFact, mappingConfig, result));
+    assertEquals(result.getPlaces().size(), 1);
+  }
+
+  @Test
+  public void testStandardTagIsCaseInsensitive() throws Exception {
+    EventFact dqFact = new EventFact();
+    dqFact.setTag(" birt ");
+    dqFact.setDate("5 Oct 1794");
+
+    Fact gedxFact = FactMapper.toFact(dqFact, null, new TestConversionResult());
+    assertNotNull(gedxFact);
+    assertEquals(gedxFact.getKnownType(), FactType.Birth);
+  }
+}
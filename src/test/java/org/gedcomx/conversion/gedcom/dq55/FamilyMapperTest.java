@@ -86,6 +86,24 @@ public class FamilyMapperTest {
     assertEquals(result.getRelationships().get(1).getPerson2().getResource().toString(), "#Case009-Family.ged:I2");
   }
 
+  @Test
+  public void testMapRelationshipId_compact() throws Exception {
+    MappingConfig compactConfig = new MappingConfig("Case009-Family.ged", true, true);
+    FamilyMapper mapper = new FamilyMapper(compactConfig);
+
+    Family dqFamily = gedcom.getFamilies().get(0);
+
+    mapper.toRelationship(dqFamily, gedcom, result);
+    assertEquals(result.getRelationships().size(), 5);
+
+    // F1 is assigned first, then the husband I1, the wife I11 and the first child I2
+    assertEquals(result.getRelationships().get(0).getId(), "Case009-Family.ged:1-2-3");
+    assertEquals(result.getRelationships().get(0).getPerson1().getResource().toString(), "#Case009-Family.ged:2");
+    assertEquals(result.getRelationships().get(0).getPerson2().getResource().toString(), "#Case009-Family.ged:3");
+    assertEquals(result.getRelationships().get(1).getId(), "Case009-Family.ged:1-2-4");
+    assertEquals(compactConfig.getOriginalIds().get("4"), "I2");
+  }
+
   @Test
   public void testFamilyF1() throws Exception {
     FamilyMapper mapper = new FamilyMapper(mappingConfig);
@@ -162,6 +180,37 @@ public class FamilyMapperTest {
     assertNotNull(rel);
   }
 
+  @Test
+  public void testFamilyF20_withFilenameAndNoGedcomIndexes() throws Exception {
+    // pedigree facts must be found from the raw xrefs, without Gedcom.createIndexes()
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case009-Family.ged");
+    Gedcom unindexedGedcom = new ModelParser().parseGedcom(new File(gedcomUrl.toURI()));
+    FamilyMapper mapper = new FamilyMapper(new MappingConfig("Case009-Family.ged", true));
+    Family dqFamily = unindexedGedcom.getFamilies().get(3);
+
+    mapper.toRelationship(dqFamily, unindexedGedcom, result);
+    assertEquals(result.getRelationships().size(), 9);
+
+    Relationship rel = result.getRelationships().get(1);
+    assertEquals(rel.getPerson2().getResource().toString(), "#Case009-Family.ged:I1002");
+    testFactExistance(rel, FactType.AdoptiveParent);
+    testFactExistance(result.getRelationships().get(3), FactType.FosterParent);
+    testFactExistance(result.getRelationships().get(5), FactType.BiologicalParent);
+    assertNull(result.getRelationships().get(7).getFacts());
+  }
+
+  @Test
+  public void testFamilyMembershipIndex() throws Exception {
+    FamilyMembershipIndex index = new FamilyMembershipIndex(gedcom);
+    assertTrue(index.containsPerson("I1002"));
+    assertEquals(index.getPedigree("I1002", "F20"), "adopted");
+    assertEquals(index.getPedigree("I1005", "F20"), "sealed");
+    assertEquals(index.getPedigree("I1005", "F21"), "__unknown__");
+    assertNull(index.getPedigree("I1002", "F21"));
+    assertNull(index.getPedigree("I1000", "F20"));
+    assertNull(index.getPedigree("I9999", "F20"));
+  }
+
   @Test
   public void testFamilyF25() throws Exception {
     // Test couple facts
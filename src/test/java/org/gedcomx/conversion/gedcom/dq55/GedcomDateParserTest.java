@@ -0,0 +1,89 @@
+package org.gedcomx.conversion.gedcom.dq55;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+
+
+public class GedcomDateParserTest {
+
+  @Test
+  public void testSimpleDates() throws Exception {
+    GedcomDateParser parser = new GedcomDateParser(100);
+    assertEquals(parser.toFormal("10 May 2012"), "+2012-05-10");
+    assertEquals(parser.toFormal("JUN 1890"), "+1890-06");
+    assertEquals(parser.toFormal("1881"), "+1881");
+    assertEquals(parser.toFormal("  5 jan 850 "), "+0850-01-05");
+    assertEquals(parser.toFormal("29 FEB 2000"), "+2000-02-29");
+    assertEquals(parser.toFormal("@#DGREGORIAN@ 1 JAN 1900"), "+1900-01-01");
+    assertEquals(parser.toFormal("1750/51"), "+1751");
+    assertEquals(parser.toFormal("INT 5 JAN 1900 (the fifth of January)"), "+1900-01-05");
+  }
+
+  @Test
+  public void testApproximateDatesAndRanges() throws Exception {
+    GedcomDateParser parser = new GedcomDateParser(100);
+    assertEquals(parser.toFormal("ABT 1850"), "A+1850");
+    assertEquals(parser.toFormal("Abt. Jun 1890"), "A+1890-06");
+    assertEquals(parser.toFormal("EST 1700"), "A+1700");
+    assertEquals(parser.toFormal("Bef. 7 Aug 1880"), "/+1880-08-07");
+    assertEquals(parser.toFormal("AFT 3 MAR 1870"), "+1870-03-03/");
+    assertEquals(parser.toFormal("BET 1 JAN 1900 AND 1905"), "+1900-01-01/+1905");
+    assertEquals(parser.toFormal("FROM 1796 TO 1900"), "+1796/+1900");
+    assertEquals(parser.toFormal("FROM 1796"), "+1796/");
+    assertEquals(parser.toFormal("TO 1900"), "/+1900");
+  }
+
+  @Test
+  public void testJulianDates() throws Exception {
+    GedcomDateParser parser = new GedcomDateParser(100);
+    assertEquals(parser.toFormal("@#DJULIAN@ 4 OCT 1582"), "+1582-10-14");
+    assertEquals(parser.toFormal("@#DJULIAN@ 29 FEB 1700"), "+1700-03-11");
+    // without a day, the Gregorian date is not known
+    assertNull(parser.toFormal("@#DJULIAN@ 1700"));
+  }
+
+  @Test
+  public void testValuesWithoutFormalDate() throws Exception {
+    GedcomDateParser parser = new GedcomDateParser(100);
+    assertNull(parser.toFormal(null));
+    assertNull(parser.toFormal(""));
+    assertNull(parser.toFormal("(in the spring)"));
+    assertNull(parser.toFormal("44 B.C."));
+    assertNull(parser.toFormal("@#DHEBREW@ 1 TSH 5000"));
+    assertNull(parser.toFormal("31 APR 1900"));
+    assertNull(parser.toFormal("29 FEB 1900"));
+    assertNull(parser.toFormal("0"));
+    assertNull(parser.toFormal("BET 1900"));
+    assertNull(parser.toFormal("1750/53"));
+    assertNull(parser.toFormal("Easter 1900"));
+  }
+
+  @Test
+  public void testCacheIsBounded() throws Exception {
+    GedcomDateParser parser = new GedcomDateParser(2);
+    assertEquals(parser.toFormal("1900"), "+1900");
+    assertNull(parser.toFormal("unknown"));
+    assertEquals(parser.cacheSize(), 2);
+
+    // once the cache is full, values are still parsed
+    assertEquals(parser.toFormal("1901"), "+1901");
+    assertEquals(parser.cacheSize(), 2);
+    assertEquals(parser.toFormal("1900"), "+1900");
+    assertNull(parser.toFormal("unknown"));
+  }
+
+  @Test
+  public void testEachConversionHasItsOwnCache() throws Exception {
+    MappingConfig mappingConfig = new MappingConfig("test.ged", false);
+    GedcomDateParser parser = mappingConfig.getDateParser();
+    assertEquals(parser.toFormal("1900"), "+1900");
+    assertEquals(parser.cacheSize(), 1);
+
+    mappingConfig.startConversion();
+    assertNotSame(mappingConfig.getDateParser(), parser);
+    assertEquals(mappingConfig.getDateParser().cacheSize(), 0);
+  }
+}
@@ -0,0 +1,115 @@
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.io.File;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.familysearch.platform.ordinances.Ordinance;
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.parser.ModelParser;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.conversion.gedcom.GedcomRecordIndex;
+import org.gedcomx.rt.json.GedcomJacksonModule;
+import org.gedcomx.source.SourceDescription;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class GedcomMapperTest {
+
+  @Test
+  public void testLowMemoryConversionMatchesInMemoryConversion() throws Exception {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case009-Family.ged");
+    File gedcomFile = new File(gedcomUrl.toURI());
+
+    Gedcom gedcom = new ModelParser().parseGedcom(gedcomFile);
+    gedcom.createIndexes();
+    TestConversionResult expected = new TestConversionResult();
+    new GedcomMapper(new MappingConfig("Case009-Family.ged", false)).toGedcomx(gedcom, expected);
+
+    // a small chunk size so that families and their children end up in different chunks
+    TestConversionResult result = new TestConversionResult();
+    new GedcomMapper(new MappingConfig("Case009-Family.ged", false)).toGedcomx(GedcomRecordIndex.build(gedcomFile), 4, result);
+
+    assertEquals(result.getPersons().size(), expected.getPersons().size());
+    for (int i = 0; i < expected.getPersons().size(); i++) {
+      assertEquals(result.getPersons().get(i).getId(), expected.getPersons().get(i).getId());
+    }
+
+    assertEquals(result.getRelationships().size(), expected.getRelationships().size());
+    for (int i = 0; i < expected.getRelationships().size(); i++) {
+      assertEquals(result.getRelationships().get(i).getId(), expected.getRelationships().get(i).getId());
+      assertEquals(size(result.getRelationships().get(i).getFacts()), size(expected.getRelationships().get(i).getFacts()));
+    }
+
+    assertEquals(result.getSourceDescriptions().size(), expected.getSourceDescriptions().size());
+    assertEquals(result.getOrganizations().size(), expected.getOrganizations().size());
+    assertEquals(result.getContributors().size(), 1);
+    assertEquals(result.getContributors().get(0).getId(), expected.getContributors().get(0).getId());
+    assertEquals(result.getLang(), expected.getLang());
+  }
+
+  @Test
+  public void testEntityStreamIsLazyAndMatchesConversion() throws Exception {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case009-Family.ged");
+    File gedcomFile = new File(gedcomUrl.toURI());
+    Gedcom gedcom = new ModelParser().parseGedcom(gedcomFile);
+    gedcom.createIndexes();
+
+    TestConversionResult expected = new TestConversionResult();
+    new GedcomMapper(new MappingConfig("Case009-Family.ged", false)).toGedcomx(gedcom, expected);
+
+    final AtomicInteger mappedPersons = new AtomicInteger();
+    GedcomMapper mapper = new GedcomMapper(new MappingConfig("Case009-Family.ged", false), (dqPerson, gedxPerson) -> mappedPersons.incrementAndGet());
+    Object first = mapper.toEntities(gedcom).findFirst().get();
+    assertEquals(((Person) first).getId(), expected.getPersons().get(0).getId());
+    assertEquals(mappedPersons.get(), 1);
+
+    List<Object> entities;
+    try (Stream<Object> stream = mapper.toEntities(GedcomRecordIndex.build(gedcomFile))) {
+      entities = stream.collect(Collectors.toList());
+    }
+    List<Person> persons = entities.stream().filter(Person.class::isInstance).map(Person.class::cast).collect(Collectors.toList());
+    List<Relationship> relationships = entities.stream().filter(Relationship.class::isInstance).map(Relationship.class::cast).collect(Collectors.toList());
+    assertEquals(persons.size(), expected.getPersons().size());
+    assertEquals(relationships.size(), expected.getRelationships().size());
+    for (int i = 0; i < relationships.size(); i++) {
+      assertEquals(relationships.get(i).getId(), expected.getRelationships().get(i).getId());
+    }
+    assertEquals(entities.stream().filter(SourceDescription.class::isInstance).count(), expected.getSourceDescriptions().size());
+    // organizations and the contributor
+    assertEquals(entities.stream().filter(Agent.class::isInstance).count(), expected.getOrganizations().size() + 1);
+  }
+
+  @Test
+  public void testFastProfileMapsTheSameData() throws Exception {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case006-PersonsFacts.ged");
+    Gedcom gedcom = new ModelParser().parseGedcom(new File(gedcomUrl.toURI()));
+    gedcom.createIndexes();
+
+    // content-addressed citations, so that the source description ids do not depend on the mapping order
+    TestConversionResult expected = new TestConversionResult();
+    new GedcomMapper(new MappingConfig("Case006-PersonsFacts.ged", false, false, true)).toGedcomx(gedcom, expected);
+
+    MappingConfig fastConfig = new MappingConfig("Case006-PersonsFacts.ged", false, false, true);
+    fastConfig.setProfile(MappingProfile.FAST);
+    TestConversionResult result = new TestConversionResult();
+    new GedcomMapper(fastConfig).toGedcomx(gedcom, result);
+
+    ObjectMapper objectMapper = GedcomJacksonModule.createObjectMapper(Ordinance.class);
+    assertEquals(objectMapper.writeValueAsString(result.getPersons()), objectMapper.writeValueAsString(expected.getPersons()));
+    assertEquals(objectMapper.writeValueAsString(result.getRelationships()), objectMapper.writeValueAsString(expected.getRelationships()));
+    assertEquals(objectMapper.writeValueAsString(result.getSourceDescriptions()), objectMapper.writeValueAsString(expected.getSourceDescriptions()));
+  }
+
+  private static int size(List<?> list) {
+    return list == null ? 0 : list.size();
+  }
+}
@@ -0,0 +1,148 @@
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.parser.ModelParser;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Document;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.conversion.GedcomxConversionResult;
+import org.gedcomx.source.SourceDescription;
+
+/**
+ * Compares mapping with the {@link MappingProfile#DEFAULT} and {@link MappingProfile#FAST} profiles on a generated
+ * file whose records carry the kinds of data that are not mapped (notes, RIN, UID, contact details, extension tags).
+ * Not a unit test; run its main method on the test classpath, passing the number of persons to generate. The
+ * converter's logging configuration applies, so run it with the level the conversions would use. The first round
+ * warms up the JIT and is left out of the summary, which gives the median time of each profile over the other rounds.
+ */
+public class MappingProfileBenchmark {
+
+  private static final int WARM_UP_ROUNDS = 1;
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) throws Exception {
+    int persons = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+    File gedcomFile = File.createTempFile("profile-benchmark", ".ged");
+    try {
+      writeGedcom(gedcomFile, persons);
+      Gedcom gedcom = new ModelParser().parseGedcom(gedcomFile);
+      gedcom.createIndexes();
+      System.out.printf("%d persons, %d families%n", gedcom.getPeople().size(), gedcom.getFamilies().size());
+
+      long[] defaultTimes = new long[ROUNDS];
+      long[] fastTimes = new long[ROUNDS];
+      for (int round = 1 - WARM_UP_ROUNDS; round <= ROUNDS; round++) {
+        long defaultProfile = map(gedcom, MappingProfile.DEFAULT);
+        long fastProfile = map(gedcom, MappingProfile.FAST);
+        System.out.printf("%s %d: default %d ms | fast %d ms (%.0f%% less)%n", round < 1 ? "warm-up" : "round",
+          round < 1 ? round + WARM_UP_ROUNDS : round, defaultProfile / 1000000, fastProfile / 1000000, 100.0 * (defaultProfile - fastProfile) / defaultProfile);
+        if (round >= 1) {
+          defaultTimes[round - 1] = defaultProfile;
+          fastTimes[round - 1] = fastProfile;
+        }
+      }
+
+      long defaultMedian = median(defaultTimes);
+      long fastMedian = median(fastTimes);
+      System.out.printf("DEFAULT vs FAST, median of %d rounds (Java %s, %d MB max heap): %d ms vs %d ms (%.0f%% less)%n",
+        ROUNDS, System.getProperty("java.version"), Runtime.getRuntime().maxMemory() / (1024 * 1024),
+        defaultMedian / 1000000, fastMedian / 1000000, 100.0 * (defaultMedian - fastMedian) / defaultMedian);
+    }
+    finally {
+      gedcomFile.delete();
+    }
+  }
+
+  private static long map(Gedcom gedcom, MappingProfile profile) throws IOException {
+    MappingConfig mappingConfig = new MappingConfig("profile-benchmark.ged", false);
+    mappingConfig.setProfile(profile);
+    long start = System.nanoTime();
+    new GedcomMapper(mappingConfig).toGedcomx(gedcom, new DiscardingResult());
+    return System.nanoTime() - start;
+  }
+
+  private static long median(long[] times) {
+    long[] sorted = times.clone();
+    Arrays.sort(sorted);
+    return sorted.length % 2 == 1 ? sorted[sorted.length / 2] : (sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2;
+  }
+
+  private static void writeGedcom(File file, int persons) throws IOException {
+    try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+      out.write("0 HEAD\n1 GEDC\n2 VERS 5.5\n2 FORM LINEAGE-LINKED\n1 CHAR UTF-8\n");
+      out.write("0 @S1@ SOUR\n1 TITL Parish register\n1 RIN 1\n1 NOTE Filmed 1981\n");
+      for (int i = 1; i <= persons; i++) {
+        out.write("0 @I" + i + "@ INDI\n1 NAME John /Smith" + (i % 500) + "/\n2 NOTE Spelling varies\n2 _MARNM Smyth\n");
+        out.write("1 SEX M\n1 BIRT\n2 DATE " + (1 + i % 28) + " MAR 18" + (i % 100) + "\n2 PLAC Boston, Suffolk, Massachusetts\n");
+        out.write("2 SOUR @S1@\n3 PAGE p. " + (i % 300) + "\n3 NOTE Hard to read\n2 NOTE Baptized the same day\n2 _PRIM Y\n");
+        out.write("1 OCCU Farmer\n2 RIN " + i + "\n1 RIN " + i + "\n1 _UID 9A3F" + i + "\n1 EMAIL john" + i + "@example.org\n");
+        out.write("1 NOTE Lived on the family farm\n1 _FSFTID KW" + i + "\n1 CHAN\n2 DATE 12 JAN 2001\n3 TIME 10:11:12\n");
+        if (i % 3 == 0) {
+          out.write("1 FAMC @F" + (i / 3) + "@\n");
+        }
+      }
+      for (int i = 1; i <= persons / 3; i++) {
+        out.write("0 @F" + i + "@ FAM\n1 HUSB @I" + (3 * i - 2) + "@\n1 WIFE @I" + (3 * i - 1) + "@\n1 CHIL @I" + (3 * i) + "@\n");
+        out.write("1 MARR\n2 DATE 18" + (i % 100) + "\n2 NOTE Banns read three times\n1 RIN " + i + "\n1 _UID 7C2E" + i + "\n");
+        out.write("1 NOTE Married in the parish church\n1 CHAN\n2 DATE 12 JAN 2001\n");
+      }
+      out.write("0 TRLR\n");
+    }
+  }
+
+  private static class DiscardingResult implements GedcomxConversionResult {
+    @Override
+    public Gedcomx getDataset() {
+      return null;
+    }
+
+    @Override
+    public Agent getDatasetContributor() {
+      return null;
+    }
+
+    @Override
+    public void setDatasetContributor(Agent person) {
+    }
+
+    @Override
+    public void addPerson(Person person) {
+    }
+
+    @Override
+    public void addRelationship(Relationship relationship) {
+    }
+
+    @Override
+    public void addSourceDescription(SourceDescription description) {
+    }
+
+    @Override
+    public void addOrganization(Agent organization) {
+    }
+
+    @Override
+    public void addPlaceDescription(PlaceDescription place) {
+    }
+
+    @Override
+    public void addDocument(Document document) {
+    }
+
+    @Override
+    public void addLanguage(String langCode) {
+    }
+  }
+}
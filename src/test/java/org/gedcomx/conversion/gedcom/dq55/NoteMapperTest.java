@@ -0,0 +1,166 @@
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.io.File;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.parser.ModelParser;
+import org.gedcomx.common.Note;
+import org.gedcomx.conclusion.Conclusion;
+import org.gedcomx.conclusion.Document;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.Relationship;
+import org.gedcomx.conversion.gedcom.GedcomRecordIndex;
+import org.gedcomx.types.RelationshipType;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+
+public class NoteMapperTest {
+  private File gedcomFile;
+  private Gedcom gedcom;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case013-Notes.ged");
+    gedcomFile = new File(gedcomUrl.toURI());
+    gedcom = new ModelParser().parseGedcom(gedcomFile);
+    gedcom.createIndexes();
+    assertEquals(gedcom.getNotes().size(), 2);
+  }
+
+  @Test
+  public void testSharedNotesAreWrittenOnce() throws Exception {
+    TestConversionResult result = new TestConversionResult();
+    new GedcomMapper(notesConfig()).toGedcomx(gedcom, result);
+
+    // the two NOTE records and the two distinct inline notes
+    Map<String, Document> documents = toDocumentsByReference(result.getDocuments());
+    assertEquals(documents.size(), 4);
+    assertTrue(documents.get("#N1").getText().contains("Smith family society"));
+    assertTrue(documents.get("#N1").getText().contains("parish registers of Dover"));
+    assertEquals(documents.get("#N2").getText(), "Unconfirmed.");
+
+    Person john = result.getPersons().get(0);
+    Person mary = result.getPersons().get(1);
+    Person william = result.getPersons().get(2);
+    assertEquals(toReferences(john), toReferences(mary));
+    assertEquals(toReferences(john).get(0), "#N1");
+    assertEquals(documents.get(toReferences(john).get(1)).getText(), "Emigrated from Kent.");
+    assertEquals(toReferences(william).size(), 2);
+    assertEquals(toReferences(william).get(0), "#N1");
+    assertEquals(toReferences(william).get(1), "#N2");
+
+    // each note has the first line of its text
+    assertEquals(toTexts(john), Arrays.asList("Research by the Smith family society,", "Emigrated from Kent."));
+    assertEquals(toTexts(william), Arrays.asList("Research by the Smith family society,", "Unconfirmed."));
+    assertEquals(toTexts(john.getFacts().get(0)), Arrays.asList("Born during the great storm."));
+
+    List<String> birthReferences = toReferences(john.getFacts().get(0));
+    assertEquals(birthReferences.size(), 1);
+    assertEquals(documents.get(birthReferences.get(0)).getText(), "Born during the great storm.");
+
+    Relationship couple = null;
+    for (Relationship relationship : result.getRelationships()) {
+      if (relationship.getKnownType() == RelationshipType.Couple) {
+        couple = relationship;
+      }
+    }
+    assertNotNull(couple);
+    assertEquals(toReferences(couple), toReferences(john).subList(1, 2));
+  }
+
+  @Test
+  public void testLowMemoryConversionWritesTheSameDocuments() throws Exception {
+    TestConversionResult expected = new TestConversionResult();
+    new GedcomMapper(notesConfig()).toGedcomx(gedcom, expected);
+
+    TestConversionResult result = new TestConversionResult();
+    new GedcomMapper(notesConfig()).toGedcomx(GedcomRecordIndex.build(gedcomFile), 2, result);
+
+    assertEquals(toDocumentsByReference(result.getDocuments()).keySet(), toDocumentsByReference(expected.getDocuments()).keySet());
+    for (int i = 0; i < expected.getPersons().size(); i++) {
+      assertEquals(toReferences(result.getPersons().get(i)), toReferences(expected.getPersons().get(i)));
+      assertEquals(toTexts(result.getPersons().get(i)), toTexts(expected.getPersons().get(i)));
+    }
+  }
+
+  @Test
+  public void testReusedConfigWritesTheDocumentsAgain() throws Exception {
+    MappingConfig mappingConfig = notesConfig();
+    TestConversionResult first = new TestConversionResult();
+    new GedcomMapper(mappingConfig).toGedcomx(gedcom, first);
+
+    TestConversionResult second = new TestConversionResult();
+    new GedcomMapper(mappingConfig).toGedcomx(gedcom, second);
+
+    assertEquals(second.getDocuments().size(), 4);
+    assertEquals(toDocumentsByReference(second.getDocuments()).keySet(), toDocumentsByReference(first.getDocuments()).keySet());
+  }
+
+  @Test
+  public void testNotesAreNotMappedByDefault() throws Exception {
+    TestConversionResult result = new TestConversionResult();
+    new GedcomMapper(new MappingConfig("Case013-Notes.ged", false)).toGedcomx(gedcom, result);
+
+    assertEquals(result.getDocuments().size(), 0);
+    for (Person person : result.getPersons()) {
+      assertNull(person.getNotes());
+    }
+  }
+
+  @Test
+  public void testReferenceToMissingNoteIsSkipped() throws Exception {
+    String text = "0 HEAD\n1 CHAR UTF-8\n0 @I1@ INDI\n1 NAME John /Smith/\n1 NOTE @N9@\n1 NOTE Emigrated from Kent.\n0 TRLR\n";
+    Gedcom dqGedcom = new ModelParser().parseGedcom(new StringReader(text));
+    dqGedcom.createIndexes();
+
+    TestConversionResult result = new TestConversionResult();
+    new GedcomMapper(notesConfig()).toGedcomx(dqGedcom, result);
+
+    assertEquals(result.getDocuments().size(), 1);
+    assertEquals(toTexts(result.getPersons().get(0)), Arrays.asList("Emigrated from Kent."));
+  }
+
+  private static MappingConfig notesConfig() {
+    MappingConfig mappingConfig = new MappingConfig("Case013-Notes.ged", false);
+    mappingConfig.setNotes(true);
+    return mappingConfig;
+  }
+
+  private static Map<String, Document> toDocumentsByReference(List<Document> documents) {
+    Map<String, Document> documentsByReference = new HashMap<String, Document>();
+    for (Document document : documents) {
+      assertNull(documentsByReference.put(CommonMapper.getDocumentReference(document.getId()), document), document.getId());
+    }
+    return documentsByReference;
+  }
+
+  private static List<String> toReferences(Conclusion conclusion) {
+    List<String> references = new ArrayList<String>();
+    for (Note note : conclusion.getNotes()) {
+      assertEquals(note.getLinks().get(0).getRel(), NoteMapper.DOCUMENT_REL);
+      references.add(note.getLinks().get(0).getHref().toString());
+    }
+    return references;
+  }
+
+  private static List<String> toTexts(Conclusion conclusion) {
+    List<String> texts = new ArrayList<String>();
+    for (Note note : conclusion.getNotes()) {
+      texts.add(note.getText());
+    }
+    return texts;
+  }
+}
@@ -2,12 +2,17 @@ package org.gedcomx.conversion.gedcom.dq55;
 
 import java.io.File;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.folg.gedcom.model.Gedcom;
 import org.folg.gedcom.model.Person;
 import org.folg.gedcom.parser.ModelParser;
 import org.gedcomx.conclusion.Fact;
+import org.gedcomx.conclusion.PlaceDescription;
 import org.gedcomx.types.FactType;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
@@ -51,6 +56,7 @@ public class PersonsFactsTest {
     for(Fact fact : gedxPerson.getFacts()) {
       if(fact.getKnownType().equals(FactType.Birth)) {
         assertEquals(fact.getDate().getOriginal(), "3 May 1875");
+        assertEquals(fact.getDate().getFormal(), "+1875-05-03");
         assertEquals(fact.getPlace().getOriginal(), "Gent, Oost-Vlaanderen, Belgium");
         assertNull(fact.getValue());
         birthFound = true;
@@ -395,4 +401,39 @@ public class PersonsFactsTest {
     }
     assertTrue(found);
   }
+
+  @Test
+  public void testPlaceDescriptions() throws Exception {
+    MappingConfig placeConfig = new MappingConfig("intputFile.ged", true);
+    placeConfig.setPlaceDescriptions(true);
+    TestConversionResult result = new TestConversionResult();
+    PersonMapper mapper = new PersonMapper(placeConfig);
+    for (Person dqPerson : gedcom.getPeople()) {
+      mapper.toPerson(dqPerson, result);
+    }
+
+    Map<String, PlaceDescription> places = new HashMap<String, PlaceDescription>();
+    for (PlaceDescription place : result.getPlaces()) {
+      assertNull(places.put("#" + place.getId(), place), place.getId());
+    }
+
+    // every place is described once and every fact refers to the description of its place
+    Set<String> distinctPlaces = new HashSet<String>();
+    int placeCount = 0;
+    for (org.gedcomx.conclusion.Person gedxPerson : result.getPersons()) {
+      for (Fact fact : gedxPerson.getFacts()) {
+        if (fact.getPlace() != null) {
+          placeCount++;
+          String original = fact.getPlace().getOriginal();
+          distinctPlaces.add(CommonMapper.normalizePlace(original).toLowerCase());
+          PlaceDescription place = places.get(fact.getPlace().getDescriptionRef().toString());
+          assertNotNull(place, original);
+          assertEquals(place.getNames().get(0).getValue().toLowerCase(), CommonMapper.normalizePlace(original).toLowerCase());
+        }
+      }
+    }
+    assertEquals(places.size(), distinctPlaces.size());
+    assertTrue(placeCount > places.size());
+    assertEquals(CommonMapper.normalizePlace(" Gent ,Oost-Vlaanderen,  Belgium "), "Gent, Oost-Vlaanderen, Belgium");
+  }
 }
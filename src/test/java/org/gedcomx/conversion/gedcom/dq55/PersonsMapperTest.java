@@ -9,11 +9,15 @@ import java.util.List;
 import org.folg.gedcom.model.Gedcom;
 import org.folg.gedcom.model.Person;
 import org.folg.gedcom.parser.ModelParser;
+import org.familysearch.platform.ordinances.Ordinance;
+import org.familysearch.platform.ordinances.OrdinanceStatus;
+import org.familysearch.platform.ordinances.OrdinanceType;
 import org.testng.annotations.Test;
 import org.xml.sax.SAXParseException;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 
 /**
  * Created on 9/19/17
@@ -49,6 +53,40 @@ public class PersonsMapperTest {
     assertEquals(gedxPersons.get(0).getId(), "inputFile.ged:P101");
   }
 
+  @Test
+  public void testMapPersonId_compact() throws Exception {
+    TestConversionResult result = new TestConversionResult();
+    MappingConfig mappingConfig = new MappingConfig("inputFile.ged", false, true);
+    PersonMapper mapper = new PersonMapper(mappingConfig);
+
+    for (int i = 101; i <= 136; i++) {
+      Person gedcomPerson = new Person();
+      gedcomPerson.setId("P" + i);
+      mapper.toPerson(gedcomPerson, result);
+    }
+    List<org.gedcomx.conclusion.Person> gedxPersons = result.getPersons();
+
+    assertEquals(gedxPersons.get(0).getId(), "1");
+    assertEquals(gedxPersons.get(9).getId(), "a");
+    assertEquals(gedxPersons.get(35).getId(), "10");
+    assertEquals(mappingConfig.createId("P110"), "a");
+    assertEquals(mappingConfig.getOriginalIds().size(), 36);
+    assertEquals(mappingConfig.getOriginalIds().get("10"), "P136");
+  }
+
+  @Test
+  public void testMapPersonId_compactWithFilename() throws Exception {
+    TestConversionResult result = new TestConversionResult();
+
+    Person gedcomPerson = new Person();
+    gedcomPerson.setId("P101");
+
+    PersonMapper mapper = new PersonMapper(new MappingConfig("inputFile.ged", true, true));
+    mapper.toPerson(gedcomPerson, result);
+
+    assertEquals(result.getPersons().get(0).getId(), "inputFile.ged:1");
+  }
+
   @Test
   public void testPostProcessor() throws URISyntaxException, SAXParseException, IOException {
     URL gedcomUrl = this.getClass().getClassLoader().getResource("Case003-PersonsName.ged");
@@ -69,6 +107,30 @@ public class PersonsMapperTest {
     assertEquals(postProcessor.personCount, 1);
   }
 
+  @Test
+  public void testOrdinances() throws URISyntaxException, SAXParseException, IOException {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case010-PersonOrdinances.ged");
+    Gedcom gedcom = new ModelParser().parseGedcom(new File(gedcomUrl.toURI()));
+    TestConversionResult result = new TestConversionResult();
+
+    new PersonMapper(new MappingConfig("Case010-PersonOrdinances.ged", false)).toPerson(gedcom.getPeople().get(0), result);
+    List<Ordinance> ordinances = result.getPersons().get(0).findExtensionsOfType(Ordinance.class);
+
+    assertEquals(ordinances.size(), 5);
+    assertEquals(ordinances.get(0).getType(), OrdinanceType.Baptism.toQNameURI());
+    assertEquals(ordinances.get(0).getCompleteDate().getOriginal(), "16 Feb 1985");
+    assertEquals(ordinances.get(0).getTempleCode(), "TOKYO");
+    assertEquals(ordinances.get(0).getStatus(), OrdinanceStatus.Completed.toQNameURI());
+    assertEquals(ordinances.get(2).getType(), OrdinanceType.Initiatory.toQNameURI());
+    assertEquals(ordinances.get(2).getTempleCode(), "ABA");
+
+    // a sealing to parents without a date or temple is still mapped, with a warning
+    assertEquals(ordinances.get(4).getType(), OrdinanceType.SealingChildToParents.toQNameURI());
+    assertNull(ordinances.get(4).getCompleteDate());
+    assertNull(ordinances.get(4).getTempleCode());
+    assertEquals(ordinances.get(4).getStatus(), OrdinanceStatus.Completed.toQNameURI());
+  }
+
   private static final class PersonCountingPostProcessor implements PostProcessor {
     private int personCount = 0;
     @Override
@@ -0,0 +1,145 @@
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.parser.ModelParser;
+import org.gedcomx.Gedcomx;
+import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Person;
+import org.gedcomx.conversion.LeanJsonSerialization;
+import org.gedcomx.conversion.gedcom.GedcomRecordIndex;
+import org.gedcomx.rt.json.GedcomJacksonModule;
+import org.testng.annotations.Test;
+
+import org.familysearch.platform.ordinances.Ordinance;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+
+public class PipelinedGedcomMapperTest {
+
+  @Test
+  public void testPipelinedConversionMatchesInMemoryConversion() throws Exception {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case009-Family.ged");
+    File gedcomFile = new File(gedcomUrl.toURI());
+
+    Gedcom gedcom = new ModelParser().parseGedcom(gedcomFile);
+    gedcom.createIndexes();
+    TestConversionResult expected = new TestConversionResult();
+    new GedcomMapper(new MappingConfig("Case009-Family.ged", false)).toGedcomx(gedcom, expected);
+
+    // small chunks and two mapper threads, so that chunks can finish out of order
+    PipelinedGedcomMapper pipeline = new PipelinedGedcomMapper(new MappingConfig("Case009-Family.ged", false), 2, 3, Ordinance.class);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Agent contributor;
+    try {
+      contributor = pipeline.start(GedcomRecordIndex.build(gedcomFile));
+      pipeline.writeDataset(out);
+    } finally {
+      pipeline.close();
+    }
+
+    assertNotNull(contributor);
+    assertEquals(contributor.getId(), expected.getContributors().get(0).getId());
+
+    Gedcomx dataset = GedcomJacksonModule.createObjectMapper(Ordinance.class).readValue(out.toByteArray(), Gedcomx.class);
+    assertEquals(dataset.getPersons().size(), expected.getPersons().size());
+    for (int i = 0; i < expected.getPersons().size(); i++) {
+      assertEquals(dataset.getPersons().get(i).getId(), expected.getPersons().get(i).getId());
+    }
+    assertEquals(dataset.getRelationships().size(), expected.getRelationships().size());
+    for (int i = 0; i < expected.getRelationships().size(); i++) {
+      assertEquals(dataset.getRelationships().get(i).getId(), expected.getRelationships().get(i).getId());
+    }
+    assertEquals(dataset.getSourceDescriptions().size(), expected.getSourceDescriptions().size());
+    assertEquals(dataset.getAgents().size(), expected.getOrganizations().size());
+    assertEquals(dataset.getLang(), expected.getLang());
+  }
+
+  @Test
+  public void testCompactIdsDoNotDependOnMapperThreads() throws Exception {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case009-Family.ged");
+    File gedcomFile = new File(gedcomUrl.toURI());
+    GedcomRecordIndex recordIndex = GedcomRecordIndex.build(gedcomFile);
+
+    MappingConfig singleThreadConfig = new MappingConfig("Case009-Family.ged", false, true);
+    Gedcomx singleThread = convertPipelined(recordIndex, singleThreadConfig, 1);
+    MappingConfig multiThreadConfig = new MappingConfig("Case009-Family.ged", false, true);
+    Gedcomx multiThread = convertPipelined(recordIndex, multiThreadConfig, 4);
+
+    // numbered by record position: I1 follows the header and the submitter
+    assertEquals(singleThreadConfig.getOriginalIds().get(Long.toString(recordIndex.indexOf("I1") + 1, Character.MAX_RADIX)), "I1");
+    assertEquals(multiThreadConfig.getOriginalIds(), singleThreadConfig.getOriginalIds());
+    assertEquals(multiThread.getPersons().size(), singleThread.getPersons().size());
+    for (int i = 0; i < singleThread.getPersons().size(); i++) {
+      assertEquals(multiThread.getPersons().get(i).getId(), singleThread.getPersons().get(i).getId());
+    }
+    for (int i = 0; i < singleThread.getRelationships().size(); i++) {
+      assertEquals(multiThread.getRelationships().get(i).getId(), singleThread.getRelationships().get(i).getId());
+    }
+  }
+
+  private static Gedcomx convertPipelined(GedcomRecordIndex recordIndex, MappingConfig mappingConfig, int mapperThreads) throws Exception {
+    PipelinedGedcomMapper pipeline = new PipelinedGedcomMapper(mappingConfig, mapperThreads, 1, Ordinance.class);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      pipeline.start(recordIndex);
+      pipeline.writeDataset(out);
+    } finally {
+      pipeline.close();
+    }
+    return GedcomJacksonModule.createObjectMapper(Ordinance.class).readValue(out.toByteArray(), Gedcomx.class);
+  }
+
+  @Test
+  public void testLeanJsonAndPostProcessors() throws Exception {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case009-Family.ged");
+    File gedcomFile = new File(gedcomUrl.toURI());
+    final AtomicInteger postProcessedPersons = new AtomicInteger();
+    BatchPostProcessor postProcessor = new BatchPostProcessor() {
+      @Override
+      public void postProcessPersons(List<MappedEntity<Person>> persons) {
+        postProcessedPersons.addAndGet(persons.size());
+      }
+    };
+
+    PipelinedGedcomMapper pipeline = new PipelinedGedcomMapper(new MappingConfig("Case009-Family.ged", false), 2, 3,
+      Collections.singletonList(postProcessor), new LeanJsonSerialization(Ordinance.class), Ordinance.class);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      pipeline.start(GedcomRecordIndex.build(gedcomFile));
+      pipeline.writeDataset(out);
+    } finally {
+      pipeline.close();
+    }
+
+    Gedcomx dataset = GedcomJacksonModule.createObjectMapper(Ordinance.class).readValue(out.toByteArray(), Gedcomx.class);
+    assertEquals(dataset.getPersons().size(), 15);
+    assertEquals(postProcessedPersons.get(), 15);
+  }
+
+  @Test
+  public void testChunksMappedAheadAreBounded() throws Exception {
+    URL gedcomUrl = this.getClass().getClassLoader().getResource("Case009-Family.ged");
+    File gedcomFile = new File(gedcomUrl.toURI());
+
+    // one record per chunk, so that there are many more chunks than may be in flight
+    PipelinedGedcomMapper pipeline = new PipelinedGedcomMapper(new MappingConfig("Case009-Family.ged", false), 3, 1, Ordinance.class);
+    try {
+      pipeline.start(GedcomRecordIndex.build(gedcomFile));
+      pipeline.writeDataset(new ByteArrayOutputStream());
+    } finally {
+      pipeline.close();
+    }
+
+    assertTrue(pipeline.getMaxEarlyChunks() < 3 * 2, String.valueOf(pipeline.getMaxEarlyChunks()));
+  }
+}
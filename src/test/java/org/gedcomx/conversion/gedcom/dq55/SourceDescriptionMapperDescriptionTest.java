@@ -213,4 +213,29 @@ public class SourceDescriptionMapperDescriptionTest {
     assertNull(gedxSourceDescription.getExtensionElements());
     // result of the CHAN tag
   }
+
+  @Test
+  public void testToSourceDescriptionWithCustomCitationTemplate() throws Exception {
+    CitationTemplate template = new CitationTemplate("test:template", "author", "title", "publication-facts", "call-number") {
+      @Override
+      protected void appendValue(StringBuilder text, String field, String value) {
+        if (text.length() > 0) {
+          text.append("; ");
+        }
+        text.append(field).append(": ").append(value);
+      }
+    };
+    TestConversionResult result = new TestConversionResult();
+    SourceDescriptionMapper mapper = new SourceDescriptionMapper(template);
+
+    mapper.toSourceDescription(gedcom.getSources().get(0), result);
+    mapper.toSourceDescription(gedcom.getSources().get(0), result);
+    SourceDescription gedxSourceDescription = result.getSourceDescriptions().get(0);
+    assertEquals(gedxSourceDescription.getCitation().getCitationTemplate().getResource().toString(), "test:template");
+    assertTrue(gedxSourceDescription.getCitation().getValue().startsWith("author: Brugge (West Vlaanderen). Burgerlijke Stand; title: Registers"));
+    assertTrue(gedxSourceDescription.getCitation().getValue().endsWith("."));
+    assertEquals(gedxSourceDescription.getCitation().getFields().get(0).getName().toURI().toString(), "test:template/author");
+    // the field names are shared, not created per citation
+    assertSame(result.getSourceDescriptions().get(1).getCitation().getFields().get(0).getName(), gedxSourceDescription.getCitation().getFields().get(0).getName());
+  }
 }
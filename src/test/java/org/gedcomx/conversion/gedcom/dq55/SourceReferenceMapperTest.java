@@ -17,6 +17,7 @@ package org.gedcomx.conversion.gedcom.dq55;
 
 import java.io.File;
 import java.net.URL;
+import java.util.Arrays;
 
 import org.folg.gedcom.model.Family;
 import org.folg.gedcom.model.Gedcom;
@@ -31,6 +32,7 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
@@ -275,4 +277,60 @@ public class SourceReferenceMapperTest {
     assertNotNull(result.getSourceDescriptions());
     assertEquals(result.getSourceDescriptions().size(), 0);
   }
+
+  @Test
+  public void testContentAddressedCitations() throws Exception {
+    MappingConfig contentConfig = new MappingConfig("intputFile.ged", true, false, true);
+    TestConversionResult result = new TestConversionResult();
+
+    // the same family twice, then a person citing the same source with a different page
+    new FamilyMapper(contentConfig).toRelationship(gedcom.getFamilies().get(0), null, result);
+    new FamilyMapper(contentConfig).toRelationship(gedcom.getFamilies().get(0), null, result);
+    new PersonMapper(contentConfig).toPerson(gedcom.getPeople().get(4), result);
+
+    assertEquals(result.getSourceDescriptions().size(), 2);
+    String familyCitationId = result.getSourceDescriptions().get(0).getId();
+    String personCitationId = result.getSourceDescriptions().get(1).getId();
+    assertTrue(familyCitationId.startsWith("SOUR1-"));
+    assertTrue(personCitationId.startsWith("SOUR1-"));
+    assertFalse(familyCitationId.equals(personCitationId));
+
+    for (Relationship gedxRelationship : result.getRelationships()) {
+      if (gedxRelationship.getKnownType() == RelationshipType.Couple) {
+        assertEquals(gedxRelationship.getFacts().get(0).getSources().get(0).getDescriptionRef().toString(), "#" + familyCitationId);
+      }
+    }
+
+    // the ids do not depend on the order or the number of earlier conversions
+    TestConversionResult rerun = new TestConversionResult();
+    new PersonMapper(new MappingConfig("intputFile.ged", true, false, true)).toPerson(gedcom.getPeople().get(4), rerun);
+    assertEquals(rerun.getSourceDescriptions().get(0).getId(), personCitationId);
+  }
+
+  @Test
+  public void testCollidingCitationGetsSequentialId() throws Exception {
+    MappingConfig contentConfig = new MappingConfig("intputFile.ged", true, false, true);
+
+    SourceDescription first = new SourceDescription();
+    first.setId("SOUR1-abc");
+    assertTrue(contentConfig.addCitationDescription(first, Arrays.asList("SOUR1", "p. 1", null, null)));
+    assertEquals(first.getId(), "SOUR1-abc");
+
+    // the same content keeps the id and is not added again
+    SourceDescription same = new SourceDescription();
+    same.setId("SOUR1-abc");
+    assertFalse(contentConfig.addCitationDescription(same, Arrays.asList("SOUR1", "p. 1", null, null)));
+    assertEquals(same.getId(), "SOUR1-abc");
+
+    // different content with the same hash gets a sequential id, shared by later citations with that content
+    SourceDescription collided = new SourceDescription();
+    collided.setId("SOUR1-abc");
+    assertTrue(contentConfig.addCitationDescription(collided, Arrays.asList("SOUR1", "p. 2", null, null)));
+    assertTrue(collided.getId().startsWith("SOUR1-abc-"));
+
+    SourceDescription collidedAgain = new SourceDescription();
+    collidedAgain.setId("SOUR1-abc");
+    assertFalse(contentConfig.addCitationDescription(collidedAgain, Arrays.asList("SOUR1", "p. 2", null, null)));
+    assertEquals(collidedAgain.getId(), collided.getId());
+  }
 }
@@ -0,0 +1,47 @@
+package org.gedcomx.conversion.gedcom.dq55;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+
+public class TagTableTest {
+
+  @Test
+  public void testCaseAndWhitespaceInsensitiveLookup() throws Exception {
+    Map<String, Integer> entries = new HashMap<String, Integer>();
+    entries.put("BIRT", 1);
+    entries.put("BIRTH", 2);
+    entries.put("_MILT", 3);
+    TagTable<Integer> table = new TagTable<Integer>(entries);
+
+    assertEquals(table.get("BIRT"), Integer.valueOf(1));
+    assertEquals(table.get("birt"), Integer.valueOf(1));
+    assertEquals(table.get(" Birt\t"), Integer.valueOf(1));
+    assertEquals(table.get("birth"), Integer.valueOf(2));
+    assertEquals(table.get("_milt"), Integer.valueOf(3));
+    assertNull(table.get("BIR"));
+    assertNull(table.get("BIRTHS"));
+    assertNull(table.get(""));
+    assertNull(table.get("   "));
+    assertNull(table.get(null));
+  }
+
+  @Test
+  public void testManyEntries() throws Exception {
+    Map<String, Integer> entries = new HashMap<String, Integer>();
+    for (int i = 0; i < 500; i++) {
+      entries.put("_TAG" + i, i);
+    }
+    TagTable<Integer> table = new TagTable<Integer>(entries);
+
+    for (int i = 0; i < 500; i++) {
+      assertEquals(table.get("_tag" + i), Integer.valueOf(i));
+    }
+    assertNull(table.get("_TAG500"));
+  }
+}
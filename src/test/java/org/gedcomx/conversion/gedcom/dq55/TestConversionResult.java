@@ -5,7 +5,9 @@ package org.gedcomx.conversion.gedcom.dq55;
 
 import org.gedcomx.Gedcomx;
 import org.gedcomx.agent.Agent;
+import org.gedcomx.conclusion.Document;
 import org.gedcomx.conclusion.Person;
+import org.gedcomx.conclusion.PlaceDescription;
 import org.gedcomx.conclusion.Relationship;
 import org.gedcomx.conversion.GedcomxConversionResult;
 import org.gedcomx.source.SourceDescription;
@@ -25,6 +27,8 @@ public class TestConversionResult implements GedcomxConversionResult {
   private List<SourceDescription> descriptions = new ArrayList<SourceDescription>();
   private List<org.gedcomx.agent.Agent> contributors = new ArrayList<org.gedcomx.agent.Agent>();
   private List<Agent> organizations = new ArrayList<Agent>();
+  private List<PlaceDescription> places = new ArrayList<PlaceDescription>();
+  private List<Document> documents = new ArrayList<Document>();
   private String langCode = null;
 
   @Override
@@ -82,6 +86,24 @@ public class TestConversionResult implements GedcomxConversionResult {
     this.organizations.add(organization);
   }
 
+  public List<PlaceDescription> getPlaces() {
+    return places;
+  }
+
+  @Override
+  public void addPlaceDescription(PlaceDescription place) throws IOException {
+    this.places.add(place);
+  }
+
+  public List<Document> getDocuments() {
+    return documents;
+  }
+
+  @Override
+  public void addDocument(Document document) throws IOException {
+    this.documents.add(document);
+  }
+
   public String getLang() {
     return this.langCode;
   }